@@ -2,14 +2,32 @@
 package dataanalysis;
 
 import dataanalysis.logging.LogFileWriter;
+import dataanalysis.logging.QueryTrace;
+import dataanalysis.processor.DatasetCatalog;
+import dataanalysis.processor.DatasetQueries;
+import dataanalysis.processor.DatasetReloader;
+import dataanalysis.processor.DistributedProcessor;
+import dataanalysis.processor.LoadOptions;
+import dataanalysis.processor.PersistentQueryCache;
 import dataanalysis.processor.Processor;
+import dataanalysis.processor.ScalarAggregationKernel;
+import dataanalysis.processor.ShardWorker;
+import dataanalysis.processor.StorageMode;
+import dataanalysis.processor.StringDictionary;
+import dataanalysis.processor.ZipRange;
+import dataanalysis.replay.SessionLog;
+import dataanalysis.replay.SessionReplay;
 import dataanalysis.ui.UserInterface;
 import dataanalysis.datamanagement.*;
 
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -21,6 +39,25 @@ public class Main {
         String populationFile = null;
         String propertyFile = null;
         String logFile = null;
+        String averagesMode = null;
+        String quantilesMode = null;
+        String kernelMode = null;
+        StorageMode storageMode = StorageMode.HEAP;
+        boolean lazyLoading = false;
+        String cacheDirectory = null;
+        boolean reloadWatch = false;
+        String reloadSignal = null;
+        boolean pipelinedIngest = false;
+        long slowQueryMillis = -1;
+        int workers = 0;
+        double sampleFraction = 0;
+        ZipRange shard = null;
+        String replayFile = null;
+        String convertDirectory = null;
+        double replaySpeed = 1;
+        int replayUsers = 1;
+        String catalogFile = null;
+        long memoryBudgetMb = 0;
 
         Set<String> seenArgs = new HashSet<>();
         Pattern pattern = Pattern.compile("^--(?<name>.+?)=(?<value>.+)$");
@@ -36,7 +73,7 @@ public class Main {
             String name = matcher.group("name").toLowerCase();
             String value = matcher.group("value");
 
-            if (!Set.of("covid", "population", "properties", "log").contains(name)) {
+            if (!Set.of("covid", "population", "properties", "log", "averages", "quantiles", "kernel", "storage", "load", "cache", "reload", "reload-signal", "ingest", "slow-query-ms", "workers", "shard", "approximate", "replay", "replay-speed", "replay-users", "convert", "catalog", "memory-budget-mb").contains(name)) {
                 System.out.println("Error: Unknown argument name --" + name);
                 return;
             }
@@ -59,9 +96,250 @@ public class Main {
                 case "log":
                     logFile = value;
                     break;
+                case "averages":
+                    // legacy averages missing property values in as zeros, as earlier releases did
+                    averagesMode = value.toLowerCase();
+                    if (!Set.of("legacy", "standard").contains(averagesMode)) {
+                        System.out.println("Error: Unknown averages mode '" + value + "'. Expected legacy or standard.");
+                        return;
+                    }
+                    break;
+                case "quantiles":
+                    // sketch answers percentiles from per-ZIP sketches, exact uses quickselect
+                    quantilesMode = value.toLowerCase();
+                    if (!Set.of("sketch", "exact").contains(quantilesMode)) {
+                        System.out.println("Error: Unknown quantiles mode '" + value + "'. Expected sketch or exact.");
+                        return;
+                    }
+                    break;
+                case "kernel":
+                    // auto uses the Vector API kernel when jdk.incubator.vector is present, scalar never does
+                    kernelMode = value.toLowerCase();
+                    if (!Set.of("auto", "scalar").contains(kernelMode)) {
+                        System.out.println("Error: Unknown kernel '" + value + "'. Expected auto or scalar.");
+                        return;
+                    }
+                    break;
+                case "storage":
+                    // offheap keeps covid and property columns in native memory, mapped in mapped temp files,
+                    // streaming keeps only per-ZIP property totals, compressed keeps covid records encoded
+                    switch (value.toLowerCase()) {
+                        case "heap":
+                            storageMode = StorageMode.HEAP;
+                            break;
+                        case "offheap":
+                            storageMode = StorageMode.OFF_HEAP;
+                            break;
+                        case "mapped":
+                            storageMode = StorageMode.MAPPED;
+                            break;
+                        case "streaming":
+                            storageMode = StorageMode.STREAMING;
+                            break;
+                        case "compressed":
+                            storageMode = StorageMode.COMPRESSED;
+                            break;
+                        default:
+                            System.out.println("Error: Unknown storage '" + value + "'. Expected heap, offheap, mapped, streaming or compressed.");
+                            return;
+                    }
+                    break;
+                case "load":
+                    // lazy reads covid data per queried date and property data per queried ZIP, through
+                    // partitions or sidecar indexes, instead of at startup
+                    if (!Set.of("eager", "lazy").contains(value.toLowerCase())) {
+                        System.out.println("Error: Unknown load mode '" + value + "'. Expected eager or lazy.");
+                        return;
+                    }
+                    lazyLoading = value.equalsIgnoreCase("lazy");
+                    break;
+                case "cache":
+                    // per-date results are kept in this directory and reused while the inputs are unchanged
+                    cacheDirectory = value;
+                    break;
+                case "reload":
+                    // watch reloads the data when an input file changes; manual only reloads on request
+                    if (!Set.of("manual", "watch").contains(value.toLowerCase())) {
+                        System.out.println("Error: Unknown reload mode '" + value + "'. Expected manual or watch.");
+                        return;
+                    }
+                    reloadWatch = value.equalsIgnoreCase("watch");
+                    break;
+                case "reload-signal":
+                    // creating or touching this file reloads the data
+                    reloadSignal = value;
+                    break;
+                case "ingest":
+                    // pipelined overlaps tokenizing, converting and indexing CSV rows and reports each stage's throughput
+                    if (!Set.of("sequential", "pipelined").contains(value.toLowerCase())) {
+                        System.out.println("Error: Unknown ingest mode '" + value + "'. Expected sequential or pipelined.");
+                        return;
+                    }
+                    pipelinedIngest = value.equalsIgnoreCase("pipelined");
+                    break;
+                case "slow-query-ms":
+                    // traces each action by phase and logs those taking at least this long; 0 logs every action
+                    try {
+                        slowQueryMillis = Long.parseLong(value);
+                    } catch (NumberFormatException e) {
+                        slowQueryMillis = -1;
+                    }
+                    if (slowQueryMillis < 0) {
+                        System.out.println("Error: Invalid slow query threshold '" + value + "'. Expected milliseconds >= 0.");
+                        return;
+                    }
+                    break;
+                case "workers":
+                    // loads the data in this many worker JVMs, each holding one ZIP range, and merges their answers
+                    try {
+                        workers = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        workers = 0;
+                    }
+                    if (workers < 1) {
+                        System.out.println("Error: Invalid worker count '" + value + "'. Expected a number >= 1.");
+                        return;
+                    }
+                    break;
+                case "approximate":
+                    // reads only this share of the property file at startup and estimates options 4 to 6 from it
+                    try {
+                        sampleFraction = Double.parseDouble(value);
+                    } catch (NumberFormatException e) {
+                        sampleFraction = 0;
+                    }
+                    if (!(sampleFraction > 0 && sampleFraction <= 1)) {
+                        System.out.println("Error: Invalid sample fraction '" + value + "'. Expected a number in (0, 1].");
+                        return;
+                    }
+                    break;
+                case "convert":
+                    // writes each input as a columnar file into this directory instead of showing the menu
+                    convertDirectory = value;
+                    break;
+                case "replay":
+                    // replays the sessions of this log against the input files and reports latencies instead of the menu
+                    replayFile = value;
+                    break;
+                case "replay-speed":
+                    // how many times faster than logged the replay runs; 0 runs the actions back to back
+                    try {
+                        replaySpeed = Double.parseDouble(value);
+                    } catch (NumberFormatException e) {
+                        replaySpeed = -1;
+                    }
+                    if (!(replaySpeed >= 0) || Double.isInfinite(replaySpeed)) {
+                        System.out.println("Error: Invalid replay speed '" + value + "'. Expected a number >= 0.");
+                        return;
+                    }
+                    break;
+                case "replay-users":
+                    // replays the whole log this many times concurrently
+                    try {
+                        replayUsers = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        replayUsers = 0;
+                    }
+                    if (replayUsers < 1) {
+                        System.out.println("Error: Invalid replay user count '" + value + "'. Expected a number >= 1.");
+                        return;
+                    }
+                    break;
+                case "catalog":
+                    // serves the named datasets of this file, each with its own input files, and asks which one each action queries
+                    catalogFile = value;
+                    break;
+                case "memory-budget-mb":
+                    // unloads the least recently used catalog datasets to keep the loaded ones within this many MB
+                    try {
+                        memoryBudgetMb = Long.parseLong(value);
+                    } catch (NumberFormatException e) {
+                        memoryBudgetMb = 0;
+                    }
+                    if (memoryBudgetMb < 1) {
+                        System.out.println("Error: Invalid memory budget '" + value + "'. Expected a number of MB >= 1.");
+                        return;
+                    }
+                    break;
+                case "shard":
+                    // set by the coordinator when it starts a worker; serves this ZIP range instead of the menu
+                    try {
+                        shard = ZipRange.parse(value);
+                    } catch (IllegalArgumentException e) {
+                        System.out.println("Error: " + e.getMessage());
+                        return;
+                    }
+                    break;
+            }
+        }
+
+        // streaming storage does not keep the property values that exact percentiles select from,
+        // or that the approximate mode sketches once the exact data is loaded
+        if (!storageMode.retainsPropertyValues() && "exact".equals(quantilesMode)) {
+            System.out.println("Error: --quantiles=exact is not available with --storage=" + storageArgument(storageMode));
+            return;
+        }
+        if (!storageMode.retainsPropertyValues() && sampleFraction > 0) {
+            System.out.println("Error: --approximate is not available with --storage=" + storageArgument(storageMode));
+            return;
+        }
+
+        if (workers > 0 && shard != null) {
+            System.out.println("Error: --workers and --shard cannot be combined");
+            return;
+        }
+        if (workers > 0 && sampleFraction > 0) {
+            System.out.println("Error: --approximate is not available with --workers");
+            return;
+        }
+
+        if (memoryBudgetMb > 0 && catalogFile == null) {
+            System.out.println("Error: --memory-budget-mb needs --catalog");
+            return;
+        }
+        if (catalogFile != null) {
+            // the catalog names the input files of each dataset, and its datasets are loaded in this process
+            for (String excluded : List.of("covid", "population", "properties", "workers", "shard", "approximate",
+                    "reload", "reload-signal", "replay", "convert")) {
+                if (seenArgs.contains(excluded)) {
+                    System.out.println("Error: --" + excluded + " is not available with --catalog");
+                    return;
+                }
             }
         }
 
+        InputSettings inputs = new InputSettings();
+        inputs.covidFile = covidFile;
+        inputs.populationFile = populationFile;
+        inputs.propertyFile = propertyFile;
+        inputs.storageMode = storageMode;
+        inputs.lazyLoading = lazyLoading;
+        inputs.averagesMode = averagesMode;
+        inputs.quantilesMode = quantilesMode;
+        inputs.kernelMode = kernelMode;
+        inputs.cacheDirectory = cacheDirectory;
+        inputs.pipelinedIngest = pipelinedIngest;
+        inputs.workers = workers;
+        inputs.sampleFraction = sampleFraction;
+        inputs.shard = shard;
+
+        // a worker answers its coordinator over a socket; it neither logs nor shows the menu
+        if (shard != null) {
+            serveShard(inputs);
+            return;
+        }
+
+        if (convertDirectory != null) {
+            convertInputs(inputs, convertDirectory);
+            return;
+        }
+
+        // a replay prints its report and logs nothing, so it never appends to the log it reads
+        if (replayFile != null) {
+            replaySessions(inputs, replayFile, replaySpeed, replayUsers);
+            return;
+        }
+
         // init the logger and create a writer based on the LogFilePath argument
         // if null, writes to err
         LogFileWriter logger = LogFileWriter.getInstance();
@@ -76,53 +354,406 @@ public class Main {
         if (args.length > 0) {
             logger.log(String.join(" ", args));
         }
+        if (slowQueryMillis >= 0) {
+            QueryTrace.enable(slowQueryMillis);
+        }
 
-        Reader covidReader = null;
-        if (covidFile != null) {
+        if (catalogFile != null) {
+            DatasetCatalog catalog;
             try {
-                checkFileReadable(covidFile);
-                if (covidFile.toLowerCase().endsWith(".csv")) {
-                    covidReader = new CSVCovidDataReader(new CSVFileReader(new CharacterReader(covidFile)));
-                } else if (covidFile.toLowerCase().endsWith(".json")) {
-                    covidReader = new JSONCovidDataReader(covidFile);
-                } else {
-                    System.out.println("Error: Unknown COVID file format.");
-                    return;
-                }
-                logger.log(covidFile);
-            } catch (Exception e) {
-                System.out.println("Error opening COVID file: " + e.getMessage());
+                catalog = readCatalog(catalogFile, inputs, memoryBudgetMb * 1024 * 1024);
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
                 return;
             }
+            new UserInterface(catalog).run();
+            catalog.close();
+            return;
         }
 
-        PopulationReader populationReader = null;
-        if (populationFile != null) {
-            try {
-                checkFileReadable(populationFile);
-                populationReader = new PopulationReader(new CSVFileReader(new CharacterReader(populationFile)));
-                logger.log(populationFile);
-            } catch (Exception e) {
-                System.out.println("Error opening population file: " + e.getMessage());
-                return;
-            }
+        DatasetQueries processor;
+        try {
+            processor = loadProcessor(inputs);
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+            return;
         }
+        if (covidFile != null) logger.log(covidFile);
+        if (populationFile != null) logger.log(populationFile);
+        if (propertyFile != null) logger.log(propertyFile);
 
-        PropertyReader propertyReader = null;
-        if (propertyFile != null) {
+        // reloads reopen the same input files and swap the new dataset in once it is loaded
+        DatasetReloader reloader = new DatasetReloader(() -> loadProcessor(inputs), processor);
+        if (reloadWatch || reloadSignal != null) {
             try {
-                checkFileReadable(propertyFile);
-                propertyReader = new PropertyReader(new CSVFileReader(new CharacterReader(propertyFile)));
-                logger.log(propertyFile);
-            } catch (Exception e) {
-                System.out.println("Error opening property file: " + e.getMessage());
+                reloader.watch(reloadWatch ? watchedFiles(inputs) : List.of(),
+                        reloadSignal != null ? Path.of(reloadSignal) : null, 1000);
+            } catch (IOException e) {
+                System.out.println("Error watching input files: " + e.getMessage());
                 return;
             }
         }
 
-        Processor processor = new Processor(covidReader, populationReader, propertyReader);
-        UserInterface ui = new UserInterface(processor);
+        UserInterface ui = new UserInterface(reloader);
         ui.run();
+        reloader.close();
+    }
+
+    /**
+     * Opens the input files and loads them into a new processor with the configured settings.
+     * Called at startup and again for every reload.
+     *
+     * @throws Exception with a message ready to show the user if a file cannot be opened
+     */
+    private static DatasetQueries loadProcessor(InputSettings inputs) throws Exception {
+        if (inputs.workers > 0) {
+            return startWorkers(inputs);
+        }
+        return loadLocalProcessor(inputs);
+    }
+
+    /**
+     * Loads the input files, or the shard of them a worker serves, into a processor in this JVM.
+     */
+    private static Processor loadLocalProcessor(InputSettings inputs) throws Exception {
+        List<Path> covidPaths = new ArrayList<>();
+        Reader covidReader = null;
+        PopulationSource populationReader = null;
+        PropertySource propertyReader = null;
+        try {
+            covidReader = openCovidReader(inputs, covidPaths);
+            populationReader = openPopulationReader(inputs);
+            propertyReader = openPropertyReader(inputs);
+            // the sampled blocks are read by seeking into the file
+            if (propertyReader != null && inputs.sampleFraction > 0 && !propertyReader.canReadByZip()) {
+                throw new IllegalArgumentException("Error: --approximate needs an uncompressed property file");
+            }
+
+            // the query cache is opened per load so that changed inputs are fingerprinted again
+            PersistentQueryCache queryCache = null;
+            if (inputs.cacheDirectory != null) {
+                try {
+                    queryCache = new PersistentQueryCache(Path.of(inputs.cacheDirectory));
+                    if (!covidPaths.isEmpty()) queryCache.addSource("covid", covidPaths);
+                    if (inputs.populationFile != null) queryCache.addSource("population", List.of(Path.of(inputs.populationFile)));
+                    if (inputs.propertyFile != null) queryCache.addSource("properties", List.of(Path.of(inputs.propertyFile)));
+                } catch (IOException e) {
+                    throw new IOException("Error opening cache directory: " + e.getMessage(), e);
+                }
+            }
+
+            LoadOptions options = new LoadOptions();
+            options.setStorageMode(inputs.storageMode);
+            options.setLazy(inputs.lazyLoading);
+            options.setShard(inputs.shard);
+            options.setPropertySampleFraction(inputs.sampleFraction);
+            options.setDictionary(inputs.dictionary);
+            Processor processor = new Processor(covidReader, populationReader, propertyReader, options);
+            processor.setLegacyAverages("legacy".equals(inputs.averagesMode));
+            processor.setExactQuantiles("exact".equals(inputs.quantilesMode));
+            if ("scalar".equals(inputs.kernelMode)) {
+                processor.setAggregationKernel(new ScalarAggregationKernel());
+            }
+            if (queryCache != null) {
+                processor.setQueryCache(queryCache);
+            }
+            return processor;
+        } catch (Exception e) {
+            // a converted input keeps its file open until closed
+            if (covidReader != null) covidReader.close();
+            if (populationReader != null) populationReader.close();
+            if (propertyReader != null) propertyReader.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the COVID input with the reader its format needs, and adds the files it reads to covidPaths.
+     *
+     * @return the reader, or null without a COVID input
+     */
+    private static Reader openCovidReader(InputSettings inputs, List<Path> covidPaths) throws Exception {
+        if (inputs.covidFile == null) return null;
+        String covidFile = inputs.covidFile;
+        try {
+            // a directory or glob selects several partition files, e.g. one per day
+            List<Path> partitions = PartitionedCovidDataReader.resolvePartitions(covidFile);
+            if (partitions != null) {
+                if (partitions.isEmpty()) {
+                    throw new IllegalArgumentException("Error: No COVID files found for " + covidFile);
+                }
+                for (Path partition : partitions) checkFileReadable(partition.toString());
+                covidPaths.addAll(partitions);
+                return new PartitionedCovidDataReader(partitions);
+            }
+
+            checkFileReadable(covidFile);
+            covidPaths.add(Path.of(covidFile));
+            // a converted columnar file is recognized by its content, whatever its name
+            if (ColumnarFile.isColumnarFile(covidFile)) {
+                return new ColumnarCovidDataReader(covidFile);
+            }
+            // the format comes from the name without any .gz suffix; compression itself is detected on open
+            String covidFormat = CompressedInput.stripCompressionExtension(covidFile).toLowerCase();
+            if (covidFormat.endsWith(".csv") && inputs.lazyLoading && !CompressedInput.isCompressed(covidFile)) {
+                // lazy queries seek into the file through a date index kept next to it
+                return new IndexedCSVCovidDataReader(covidFile);
+            } else if (covidFormat.endsWith(".csv")) {
+                CSVCovidDataReader csvReader = new CSVCovidDataReader(new CSVFileReader(new CharacterReader(covidFile)));
+                csvReader.setPipelined(inputs.pipelinedIngest);
+                return csvReader;
+            } else if (covidFormat.endsWith(".json")) {
+                return new JSONCovidDataReader(covidFile);
+            } else if (covidFormat.endsWith(".jsonl") || covidFormat.endsWith(".ndjson")) {
+                // JSON Lines files are parsed in parallel chunks
+                return new NDJSONCovidDataReader(covidFile);
+            } else {
+                throw new IllegalArgumentException("Error: Unknown COVID file format.");
+            }
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Error opening COVID file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the reader of the population input, or null without one
+     */
+    private static PopulationSource openPopulationReader(InputSettings inputs) throws IOException {
+        if (inputs.populationFile == null) return null;
+        try {
+            checkFileReadable(inputs.populationFile);
+            if (ColumnarFile.isColumnarFile(inputs.populationFile)) {
+                return new ColumnarPopulationReader(inputs.populationFile);
+            }
+            return new PopulationReader(new CSVFileReader(new CharacterReader(inputs.populationFile)));
+        } catch (Exception e) {
+            throw new IOException("Error opening population file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the reader of the property input, or null without one
+     */
+    private static PropertySource openPropertyReader(InputSettings inputs) throws IOException {
+        if (inputs.propertyFile == null) return null;
+        try {
+            checkFileReadable(inputs.propertyFile);
+            if (ColumnarFile.isColumnarFile(inputs.propertyFile)) {
+                return new ColumnarPropertyReader(inputs.propertyFile);
+            }
+            PropertyReader propertyReader = new PropertyReader(inputs.propertyFile);
+            propertyReader.setPipelined(inputs.pipelinedIngest);
+            return propertyReader;
+        } catch (Exception e) {
+            throw new IOException("Error opening property file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads a catalog file and registers its datasets, which are loaded when first queried.
+     * Each line holds a dataset name followed by its input files, e.g.
+     * {@code philly-2021 --covid=covid.csv --population=population.csv --properties=properties.csv};
+     * blank lines and lines starting with # are skipped. The datasets share the other settings
+     * and one string dictionary.
+     *
+     * @throws IOException with a message ready to show the user if the file cannot be read or a line is invalid
+     */
+    private static DatasetCatalog readCatalog(String catalogFile, InputSettings settings, long memoryBudget)
+            throws IOException {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(Path.of(catalogFile));
+        } catch (IOException e) {
+            throw new IOException("Error reading catalog file: " + e.getMessage(), e);
+        }
+
+        DatasetCatalog catalog = new DatasetCatalog(memoryBudget);
+        StringDictionary dictionary = new StringDictionary();
+        Pattern pattern = Pattern.compile("^--(?<name>covid|population|properties)=(?<value>.+)$");
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            String[] fields = line.split("\\s+");
+            String name = fields[0];
+            InputSettings inputs = settings.copy();
+            inputs.dictionary = dictionary;
+            for (int f = 1; f < fields.length; f++) {
+                Matcher matcher = pattern.matcher(fields[f]);
+                if (!matcher.matches()) {
+                    throw new IOException("Error: Invalid catalog line " + (i + 1) + ": unexpected '" + fields[f] + "'");
+                }
+                switch (matcher.group("name")) {
+                    case "covid":
+                        inputs.covidFile = matcher.group("value");
+                        break;
+                    case "population":
+                        inputs.populationFile = matcher.group("value");
+                        break;
+                    case "properties":
+                        inputs.propertyFile = matcher.group("value");
+                        break;
+                }
+            }
+            if (name.startsWith("--") || catalog.getNames().contains(name)) {
+                throw new IOException("Error: Invalid catalog line " + (i + 1) + ": missing or duplicate dataset name");
+            }
+            catalog.register(name, () -> loadProcessor(inputs));
+        }
+        if (catalog.getNames().isEmpty()) {
+            throw new IOException("Error: The catalog file names no datasets");
+        }
+        return catalog;
+    }
+
+    /**
+     * Converts each input file into a columnar file in the directory, named after the input,
+     * e.g. covid.csv.gz to covid.col. Later runs can pass the converted files as their inputs.
+     */
+    private static void convertInputs(InputSettings inputs, String directory) {
+        try {
+            Files.createDirectories(Path.of(directory));
+            Reader covidReader = openCovidReader(inputs, new ArrayList<>());
+            if (covidReader != null) {
+                String target = columnarFileName(directory, inputs.covidFile);
+                try {
+                    printConverted(target, ColumnarCovidDataReader.write(covidReader, target));
+                } finally {
+                    covidReader.close();
+                }
+            }
+            PopulationSource populationReader = openPopulationReader(inputs);
+            if (populationReader != null) {
+                String target = columnarFileName(directory, inputs.populationFile);
+                try {
+                    printConverted(target, ColumnarPopulationReader.write(populationReader, target));
+                } finally {
+                    populationReader.close();
+                }
+            }
+            PropertySource propertyReader = openPropertyReader(inputs);
+            if (propertyReader != null) {
+                String target = columnarFileName(directory, inputs.propertyFile);
+                try {
+                    printConverted(target, ColumnarPropertyReader.write(propertyReader, target));
+                } finally {
+                    propertyReader.close();
+                }
+            }
+        } catch (Exception e) {
+            String message = String.valueOf(e.getMessage());
+            System.out.println(message.startsWith("Error") ? message : "Error converting: " + message);
+        }
+    }
+
+    private static String columnarFileName(String directory, String inputFile) {
+        String name = Path.of(CompressedInput.stripCompressionExtension(inputFile)).getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) name = name.substring(0, dot);
+        return Path.of(directory, name + ColumnarFile.EXTENSION).toString();
+    }
+
+    private static void printConverted(String target, int rows) {
+        long bytes = new File(target).length();
+        int groups = (rows + ColumnarFile.ROW_GROUP_SIZE - 1) / ColumnarFile.ROW_GROUP_SIZE;
+        System.out.println("Wrote " + target + ": " + rows + " rows in " + groups + " row groups, " + bytes + " bytes");
+    }
+
+    /**
+     * Starts the worker JVMs of a distributed load. The ZIP ranges are cut so that each holds
+     * about the same number of the population file's ZIP codes; without one the ZIP space is split evenly.
+     * Percentile, kernel and ingest settings apply in the workers, averages in the coordinator.
+     * The query cache and lazy loading are not used with workers.
+     */
+    private static DistributedProcessor startWorkers(InputSettings inputs) throws IOException {
+        List<String> sample = new ArrayList<>();
+        if (inputs.populationFile != null && new File(inputs.populationFile).canRead()) {
+            PopulationSource populationReader = openPopulationReader(inputs);
+            populationReader.readPopulationData(population -> sample.add(population.getZipCode()));
+            populationReader.close();
+        }
+
+        List<String> arguments = new ArrayList<>();
+        if (inputs.covidFile != null) arguments.add("--covid=" + inputs.covidFile);
+        if (inputs.populationFile != null) arguments.add("--population=" + inputs.populationFile);
+        if (inputs.propertyFile != null) arguments.add("--properties=" + inputs.propertyFile);
+        arguments.add("--storage=" + storageArgument(inputs.storageMode));
+        if (inputs.quantilesMode != null) arguments.add("--quantiles=" + inputs.quantilesMode);
+        if (inputs.kernelMode != null) arguments.add("--kernel=" + inputs.kernelMode);
+        if (inputs.pipelinedIngest) arguments.add("--ingest=pipelined");
+
+        DistributedProcessor processor = DistributedProcessor.start(arguments, ZipRange.split(sample, inputs.workers));
+        processor.setLegacyAverages("legacy".equals(inputs.averagesMode));
+        return processor;
+    }
+
+    /**
+     * Loads one ZIP range as a worker and answers the coordinator until it is done.
+     * A load error is printed to stdout, where the coordinator reads it.
+     */
+    private static void serveShard(InputSettings inputs) {
+        Processor processor;
+        try {
+            processor = loadLocalProcessor(inputs);
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        try {
+            ShardWorker.serve(processor);
+        } catch (IOException e) {
+            System.err.println("Error serving shard " + inputs.shard + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replays the sessions of a log against the input files, each session with a newly loaded
+     * processor, and prints the latencies of the loads and actions.
+     */
+    private static void replaySessions(InputSettings inputs, String logFile, double speed, int users) {
+        SessionLog log;
+        try {
+            log = SessionLog.read(Path.of(logFile));
+        } catch (IOException e) {
+            System.out.println("Error reading log file: " + e.getMessage());
+            return;
+        }
+        System.out.println("Replaying " + log.getSessions().size() + " sessions with " + log.getActionCount()
+                + " actions (" + log.getSkippedLines() + " log lines skipped) for " + users + " user(s)");
+
+        try {
+            new SessionReplay(() -> loadProcessor(inputs), speed, users).run(log).print(System.out);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the input files whose changes trigger a reload; a partition directory is watched for new files too
+     */
+    private static List<Path> watchedFiles(InputSettings inputs) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (inputs.covidFile != null) {
+            List<Path> partitions = PartitionedCovidDataReader.resolvePartitions(inputs.covidFile);
+            if (partitions != null) {
+                files.addAll(partitions);
+                if (Files.isDirectory(Path.of(inputs.covidFile))) files.add(Path.of(inputs.covidFile));
+            } else {
+                files.add(Path.of(inputs.covidFile));
+            }
+        }
+        if (inputs.populationFile != null) files.add(Path.of(inputs.populationFile));
+        if (inputs.propertyFile != null) files.add(Path.of(inputs.propertyFile));
+        return files;
+    }
+
+    /**
+     * @return the --storage value that selects the mode
+     */
+    private static String storageArgument(StorageMode storageMode) {
+        return storageMode.name().toLowerCase().replace("_", "");
     }
 
     private static void checkFileReadable(String filename) throws IOException {
@@ -130,4 +761,46 @@ public class Main {
         if (!file.exists()) throw new IOException("File does not exist: " + filename);
         if (!file.canRead()) throw new IOException("File not readable: " + filename);
     }
-}
\ No newline at end of file
+
+    /**
+     * The input files and load settings from the command line, kept for reloads.
+     */
+    private static class InputSettings {
+        String covidFile;
+        String populationFile;
+        String propertyFile;
+        StorageMode storageMode;
+        boolean lazyLoading;
+        String averagesMode;
+        String quantilesMode;
+        String kernelMode;
+        String cacheDirectory;
+        boolean pipelinedIngest;
+        int workers;
+        ZipRange shard;
+        double sampleFraction;
+        StringDictionary dictionary;
+
+        /**
+         * @return a copy with the same files and settings
+         */
+        InputSettings copy() {
+            InputSettings copy = new InputSettings();
+            copy.covidFile = covidFile;
+            copy.populationFile = populationFile;
+            copy.propertyFile = propertyFile;
+            copy.storageMode = storageMode;
+            copy.lazyLoading = lazyLoading;
+            copy.averagesMode = averagesMode;
+            copy.quantilesMode = quantilesMode;
+            copy.kernelMode = kernelMode;
+            copy.cacheDirectory = cacheDirectory;
+            copy.pipelinedIngest = pipelinedIngest;
+            copy.workers = workers;
+            copy.shard = shard;
+            copy.sampleFraction = sampleFraction;
+            copy.dictionary = dictionary;
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package dataanalysis.benchmark;
+
+import dataanalysis.processor.AggregationKernel;
+import dataanalysis.processor.PropertyColumns;
+import dataanalysis.processor.ScalarAggregationKernel;
+import dataanalysis.util.Property;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the boxed property loop, the scalar kernel and the vectorized kernel
+ * on synthetic property data grouped by ZIP.
+ *
+ * Run with: java --add-modules jdk.incubator.vector dataanalysis.benchmark.AggregationKernelBenchmark [rows]
+ * Without the module, the "auto" kernel is the scalar one.
+ */
+public class AggregationKernelBenchmark {
+
+    private static final int ZIP_COUNT = 50;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 50;
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        // synthetic rows spread over the ZIPs, with about 5% missing market values
+        Random random = new Random(42);
+        List<List<Property>> propertiesByZip = new ArrayList<>();
+        for (int z = 0; z < ZIP_COUNT; z++) propertiesByZip.add(new ArrayList<>());
+        for (int i = 0; i < rows; i++) {
+            int z = random.nextInt(ZIP_COUNT);
+            Integer marketValue = random.nextInt(100) < 5 ? null : 10_000 + random.nextInt(900_000);
+            Integer livableArea = random.nextInt(100) < 7 ? null : 300 + random.nextInt(4_700);
+            propertiesByZip.get(z).add(new Property(String.valueOf(19100 + z), marketValue, livableArea));
+        }
+
+        List<PropertyColumns> columnsByZip = new ArrayList<>();
+        for (List<Property> properties : propertiesByZip) columnsByZip.add(PropertyColumns.of(properties));
+
+        AggregationKernel scalar = new ScalarAggregationKernel();
+        AggregationKernel auto = AggregationKernel.create();
+
+        System.out.println("rows=" + rows + " zips=" + ZIP_COUNT + " auto kernel=" + auto.getClass().getSimpleName());
+
+        long boxed = time(() -> sumBoxed(propertiesByZip));
+        long scalarTime = time(() -> sumColumns(scalar, columnsByZip));
+        long autoTime = time(() -> sumColumns(auto, columnsByZip));
+
+        System.out.printf("boxed list loop   %8.3f ms%n", boxed / 1e6);
+        System.out.printf("scalar kernel     %8.3f ms (%.2fx vs boxed)%n", scalarTime / 1e6, (double) boxed / scalarTime);
+        System.out.printf("auto kernel       %8.3f ms (%.2fx vs boxed, %.2fx vs scalar)%n",
+                autoTime / 1e6, (double) boxed / autoTime, (double) scalarTime / autoTime);
+    }
+
+    /**
+     * Returns the median time in nanoseconds of one full pass, after warmup.
+     */
+    private static long time(java.util.function.LongSupplier pass) {
+        long sink = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) sink += pass.getAsLong();
+
+        long[] times = new long[MEASURED_ROUNDS];
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            sink += pass.getAsLong();
+            times[i] = System.nanoTime() - start;
+        }
+        if (sink == 42) System.out.println();   // keeps the results alive
+        java.util.Arrays.sort(times);
+        return times[MEASURED_ROUNDS / 2];
+    }
+
+    /**
+     * Sums and counts both fields the way Processor did before the kernel: one boxed value at a time.
+     */
+    private static long sumBoxed(List<List<Property>> propertiesByZip) {
+        long total = 0;
+        for (List<Property> properties : propertiesByZip) {
+            for (Property p : properties) {
+                if (p.getMarketValue() != null) total += p.getMarketValue() + 1;
+                if (p.getTotalLivableArea() != null) total += p.getTotalLivableArea() + 1;
+            }
+        }
+        return total;
+    }
+
+    private static long sumColumns(AggregationKernel kernel, List<PropertyColumns> columnsByZip) {
+        long total = 0;
+        for (PropertyColumns columns : columnsByZip) {
+            for (PropertyColumns.Field field : PropertyColumns.Field.values()) {
+                total += kernel.maskedSum(columns.getValues(field), columns.getPresent(field), columns.size());
+                total += kernel.countPresent(columns.getPresent(field), columns.size());
+            }
+        }
+        return total;
+    }
+}
@@ -4,6 +4,7 @@ import dataanalysis.util.CovidRecord;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 /**
@@ -12,6 +13,7 @@ import java.util.regex.Pattern;
 public class CSVCovidDataReader implements Reader {
 
     private final CSVFileReader reader;
+    private boolean pipelined;
 
     // Regex pattern to validate timestamp format: "YYYY-MM-DD hh:mm:ss"
     private static final Pattern TIMESTAMP_PATTERN = Pattern.compile("^\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}$");
@@ -26,76 +28,163 @@ public class CSVCovidDataReader implements Reader {
     @Override
     public List<CovidRecord> getCovidData() {
         List<CovidRecord> covidData = new ArrayList<>();
-        Map<String, Integer> headerMap = new HashMap<>();
+        readCovidData(covidData::add);
+        return covidData;
+    }
 
+    /**
+     * Reads and parses the COVID data CSV, passing each valid record to the sink
+     * as soon as its row is parsed. When pipelined, rows are tokenized, converted and
+     * passed on by overlapping stages.
+     */
+    @Override
+    public void readCovidData(Consumer<CovidRecord> sink) {
+        if (!pipelined) {
+            covidSpliterator().forEachRemaining(sink);
+            return;
+        }
         try {
+            Columns columns = readHeader();
+            IngestPipeline.run("covid", reader, columns::convert, sink);
+        } catch (IOException e) {
+            System.err.println("Error reading CSV: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
 
-            // Read and validate header row
-            String[] header = reader.readRow();
-            if (header == null) {
-                throw new IOException("CSV file is empty or missing header.");
+    /**
+     * Returns the valid records of the CSV, each parsed only when it is requested.
+     */
+    @Override
+    public Spliterator<CovidRecord> covidSpliterator() {
+        return new RecordSpliterator<>() {
+
+            private boolean started;
+            private Columns columns;
+
+            @Override
+            protected CovidRecord readNext() {
+                try {
+                    if (!started) {
+                        started = true;
+                        columns = readHeader();
+                    }
+                    if (columns == null) return null;
+
+                    String[] row;
+                    // Process each row in the CSV file until a valid one is found
+                    while ((row = reader.readRow()) != null) {
+                        CovidRecord record = columns.convert(row);
+                        if (record != null) return record;
+                    }
+
+                } catch (IOException e) {
+                    columns = null;     // end the stream
+                    System.err.println("Error reading CSV: " + e.getMessage());
+                    e.printStackTrace();
+                }
+                return null;
             }
+        };
+    }
 
-            // Map column names to their indices (case-insensitive)
-            for (int i = 0; i < header.length; i++) {
-                headerMap.put(header[i].trim().toLowerCase(), i);
-            }
+    /**
+     * Enables the pipelined ingest of {@link #readCovidData(Consumer)}.
+     */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
 
-            // Get column indices for required fields
-            Integer zipIndex = headerMap.get("zip_code");
-            Integer partialIndex = headerMap.get("partially_vaccinated");
-            Integer fullIndex = headerMap.get("fully_vaccinated");
-            Integer timestampIndex = headerMap.get("etl_timestamp");
+    /**
+     * Reads the header row and locates the columns used here.
+     */
+    private Columns readHeader() throws IOException {
+        Map<String, Integer> headerMap = new HashMap<>();
 
-            // Ensure required fields exist in the header
-            if (zipIndex == null || timestampIndex == null) {
-                throw new IOException("Missing required headers: zip_code and/or etl_timestamp");
-            }
+        // Read and validate header row
+        String[] header = reader.readRow();
+        if (header == null) {
+            throw new IOException("CSV file is empty or missing header.");
+        }
 
-            String[] row;
-            // Process each row in the CSV file
-            while ((row = reader.readRow()) != null) {
+        // Map column names to their indices (case-insensitive)
+        for (int i = 0; i < header.length; i++) {
+            headerMap.put(header[i].trim().toLowerCase(), i);
+        }
 
-                // Skip rows that are too short to contain all required fields
-                int maxIndex = Math.max(Math.max(zipIndex, timestampIndex),
-                        Math.max(partialIndex != null ? partialIndex : 0,
-                                fullIndex != null ? fullIndex : 0));
-                if (row.length <= maxIndex) continue;
+        // Get column indices for required fields
+        Integer zipIndex = headerMap.get("zip_code");
+        Integer partialIndex = headerMap.get("partially_vaccinated");
+        Integer fullIndex = headerMap.get("fully_vaccinated");
+        Integer timestampIndex = headerMap.get("etl_timestamp");
 
-                // Validate and extract ZIP code
-                String zip = row[zipIndex].trim();
-                if (zip.isEmpty() || !zip.matches("\\d{5}")) {
-                    continue;
-                }
+        // Ensure required fields exist in the header
+        if (zipIndex == null || timestampIndex == null) {
+            throw new IOException("Missing required headers: zip_code and/or etl_timestamp");
+        }
 
-                // Validate and extract timestamp
-                String etlTimestampStr = row[timestampIndex].trim();
-                if (!TIMESTAMP_PATTERN.matcher(etlTimestampStr).matches()) {
-                    continue;
-                }
+        // Only materialize the columns used here; the rest are skipped by the tokenizer
+        reader.setProjection(zipIndex, timestampIndex,
+                partialIndex != null ? partialIndex : -1,
+                fullIndex != null ? fullIndex : -1);
 
-                // Parse vaccination numbers; use 0 if missing
-                int partiallyVaccinated = partialIndex != null ? parseIntOrZero(row[partialIndex]) : 0;
-                int fullyVaccinated = fullIndex != null ? parseIntOrZero(row[fullIndex]) : 0;
+        return new Columns(zipIndex, partialIndex, fullIndex, timestampIndex);
+    }
 
-                // Create CovidRecord object and add to the list
-                CovidRecord record = new CovidRecord(zip, etlTimestampStr, partiallyVaccinated, fullyVaccinated);
-                covidData.add(record);
+    /**
+     * The column positions of the fields used here; converts rows on any thread.
+     */
+    private static class Columns {
+
+        private final int zipIndex;
+        private final Integer partialIndex;
+        private final Integer fullIndex;
+        private final int timestampIndex;
+        private final int maxIndex;
+
+        Columns(int zipIndex, Integer partialIndex, Integer fullIndex, int timestampIndex) {
+            this.zipIndex = zipIndex;
+            this.partialIndex = partialIndex;
+            this.fullIndex = fullIndex;
+            this.timestampIndex = timestampIndex;
+            this.maxIndex = Math.max(Math.max(zipIndex, timestampIndex),
+                    Math.max(partialIndex != null ? partialIndex : 0,
+                            fullIndex != null ? fullIndex : 0));
+        }
+
+        /**
+         * @return the record of a row, or null if the row is invalid
+         */
+        CovidRecord convert(String[] row) {
+            // Skip rows that are too short to contain all required fields
+            if (row.length <= maxIndex) return null;
+
+            // Validate and extract ZIP code
+            String zip = row[zipIndex].trim();
+            if (zip.isEmpty() || !zip.matches("\\d{5}")) {
+                return null;
             }
 
-        } catch (IOException e) {
-            System.err.println("Error reading CSV: " + e.getMessage());
-            e.printStackTrace();
-        }
+            // Validate and extract timestamp
+            String etlTimestampStr = row[timestampIndex].trim();
+            if (!TIMESTAMP_PATTERN.matcher(etlTimestampStr).matches()) {
+                return null;
+            }
 
-        return covidData;
+            // Parse vaccination numbers; use 0 if missing
+            int partiallyVaccinated = partialIndex != null ? parseIntOrZero(row[partialIndex]) : 0;
+            int fullyVaccinated = fullIndex != null ? parseIntOrZero(row[fullIndex]) : 0;
+
+            // Create the CovidRecord object for this row
+            return new CovidRecord(zip, etlTimestampStr, partiallyVaccinated, fullyVaccinated);
+        }
     }
 
     /**
      * Helper function to parse a string to an integer.
      * Returns 0 if the string is empty or cannot be parsed.
      */
-    private int parseIntOrZero(String s) {
+    private static int parseIntOrZero(String s) {
         if (s == null || s.trim().isEmpty()) return 0;
         try {
             return Integer.parseInt(s.trim());
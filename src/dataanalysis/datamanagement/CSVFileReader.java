@@ -4,23 +4,63 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-public class CSVFileReader {
+public class CSVFileReader implements AutoCloseable {
 
     private final CharacterReader reader;
 
+    // Columns to materialize; null means every column
+    private boolean[] projection;
+
+    // Reused across rows to avoid per-row allocation
+    private final StringBuilder resultString = new StringBuilder();
+    private final List<String> result = new ArrayList<>();
+
     public CSVFileReader(CharacterReader reader) {
         this.reader = reader;
     }
 
+    /**
+     * Closes the underlying character stream.
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Restricts the following rows to the given column indices. Other columns are
+     * still scanned (quoting is honoured) but their characters are not copied, and
+     * they appear as null in the returned rows. Typically set right after the header.
+     *
+     * @param columns the indices of the columns to materialize
+     */
+    public void setProjection(int... columns) {
+        int max = -1;
+        for (int column : columns) max = Math.max(max, column);
+
+        projection = new boolean[max + 1];
+        for (int column : columns) {
+            if (column >= 0) projection[column] = true;
+        }
+    }
+
+    /**
+     * Removes any projection so that every column is materialized again.
+     */
+    public void clearProjection() {
+        projection = null;
+    }
+
     public String[] readRow() throws IOException {
-        StringBuilder resultString = new StringBuilder();
-        List<String> result = new ArrayList<>();
+        resultString.setLength(0);
+        result.clear();
 
         int ch;
         int line = 1, column = 0, row = 0, field = 0;
 
         State state = State.START_FIELD;
         boolean isCR = false;
+        boolean keep = isProjected(field);
 
         while ((ch = reader.read()) != -1) {
             char c = (char) ch;
@@ -29,11 +69,11 @@ public class CSVFileReader {
             if (isCR) {
                 if (state != State.IN_QUOTED_FIELD) {
                     if (c == '\n') {
-                        result.add(resultString.toString());
+                        result.add(keep ? resultString.toString() : null);
                         return result.toArray(new String[0]);
                     }
                 } else {
-                    resultString.append('\r');
+                    if (keep) resultString.append('\r');
                     isCR = false;
                 }
             }
@@ -42,8 +82,9 @@ public class CSVFileReader {
                 case START_FIELD:
                     switch (c) {
                         case ',':
-                            result.add("");
+                            result.add(keep ? "" : null);
                             field++;
+                            keep = isProjected(field);
                             break;
                         case '"':
                             state = State.IN_QUOTED_FIELD;
@@ -52,10 +93,10 @@ public class CSVFileReader {
                             isCR = true;
                             break;
                         case '\n':
-                            result.add("");
+                            result.add(keep ? "" : null);
                             return result.toArray(new String[0]);
                         default:
-                            resultString.append(c);
+                            if (keep) resultString.append(c);
                             state = State.IN_FIELD;
                             break;
                     }
@@ -64,9 +105,10 @@ public class CSVFileReader {
                 case IN_FIELD:
                     switch (c) {
                         case ',':
-                            result.add(resultString.toString());
+                            result.add(keep ? resultString.toString() : null);
                             resultString.setLength(0);
                             field++;
+                            keep = isProjected(field);
                             state = State.START_FIELD;
                             break;
                         case '"':
@@ -75,10 +117,10 @@ public class CSVFileReader {
                             isCR = true;
                             break;
                         case '\n':
-                            result.add(resultString.toString());
+                            result.add(keep ? resultString.toString() : null);
                             return result.toArray(new String[0]);
                         default:
-                            resultString.append(c);
+                            if (keep) resultString.append(c);
                             break;
                     }
                     break;
@@ -89,7 +131,7 @@ public class CSVFileReader {
                             state = State.AFTER_QUOTE;
                             break;
                         default:
-                            resultString.append(c);
+                            if (keep) resultString.append(c);
                             break;
                     }
                     break;
@@ -97,20 +139,21 @@ public class CSVFileReader {
                 case AFTER_QUOTE:
                     switch (c) {
                         case '"':
-                            resultString.append('"');
+                            if (keep) resultString.append('"');
                             state = State.IN_QUOTED_FIELD;
                             break;
                         case ',':
-                            result.add(resultString.toString());
+                            result.add(keep ? resultString.toString() : null);
                             resultString.setLength(0);
                             field++;
+                            keep = isProjected(field);
                             state = State.START_FIELD;
                             break;
                         case '\r':
                             isCR = true;
                             break;
                         case '\n':
-                            result.add(resultString.toString());
+                            result.add(keep ? resultString.toString() : null);
                             row++;
                             field = 0;
                             return result.toArray(new String[0]);
@@ -130,7 +173,7 @@ public class CSVFileReader {
         }
 
         if (state == State.IN_FIELD || state == State.AFTER_QUOTE || resultString.length() > 0 || !result.isEmpty()) {
-            result.add(resultString.toString());
+            result.add(keep ? resultString.toString() : null);
             row++;
             field = 0;
             return result.toArray(new String[0]);
@@ -139,6 +182,10 @@ public class CSVFileReader {
         return null;
     }
 
+    private boolean isProjected(int field) {
+        return projection == null || (field < projection.length && projection[field]);
+    }
+
     private static String errorMessage(String message, int line, int column, int row, int field) {
         return String.format("%s at line %d, column %d, row %d, field %d", message, line, column, row, field);
     }
@@ -0,0 +1,293 @@
+package dataanalysis.datamanagement;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Sparse index from the key of each row (e.g. its date or ZIP code) to the byte
+ * ranges of a CSV file holding the rows with that key. Consecutive rows with the
+ * same key share one range, so a file sorted by the key has a single range per key
+ * and an unsorted one a short list.
+ *
+ * <p>The index is stored in a sidecar file next to the CSV along with the CSV's size
+ * and modification time; it is rebuilt when either changes.
+ */
+public class CSVRangeIndex {
+
+    private static final int MAGIC = 0x52494458;    // "RIDX"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_KEY_FIELD_LENGTH = 64;
+
+    private final String column;
+    private final long fileSize;
+    private final long lastModified;
+    private final long headerEnd;                           // byte offset just after the header row
+    private final int rowCount;                             // rows with a valid key
+    private final Map<String, List<long[]>> rangesByKey;    // key -> list of {start, end}
+
+    private CSVRangeIndex(String column, long fileSize, long lastModified, long headerEnd, int rowCount,
+                          Map<String, List<long[]>> rangesByKey) {
+        this.column = column;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.headerEnd = headerEnd;
+        this.rowCount = rowCount;
+        this.rangesByKey = rangesByKey;
+    }
+
+    /**
+     * Loads the sidecar index of the CSV if it is still valid, otherwise builds it
+     * with one byte-level pass over the file and tries to save it. Failing to save
+     * is not an error; the index is then rebuilt on the next run.
+     *
+     * @param csvFile the CSV file to index
+     * @param column the header name of the key column
+     * @param sidecarExtension appended to the CSV file name to name the sidecar
+     * @param keyFunction maps the trimmed raw key field to its key, or to null for rows to leave out
+     */
+    public static CSVRangeIndex loadOrBuild(String csvFile, String column, String sidecarExtension,
+                                            Function<String, String> keyFunction) throws IOException {
+        File csv = new File(csvFile);
+        File sidecar = new File(csvFile + sidecarExtension);
+
+        if (sidecar.exists()) {
+            try {
+                CSVRangeIndex index = load(sidecar);
+                if (index.column.equals(column) && index.fileSize == csv.length()
+                        && index.lastModified == csv.lastModified()) {
+                    return index;
+                }
+            } catch (IOException e) {
+                // unreadable or outdated sidecar, rebuild below
+            }
+        }
+
+        CSVRangeIndex index = build(csv, column, keyFunction);
+        try {
+            index.save(sidecar);
+        } catch (IOException e) {
+            System.err.println("Warning: could not write index " + sidecar + ": " + e.getMessage());
+        }
+        return index;
+    }
+
+    /**
+     * @return the number of indexed rows, i.e. rows with a valid key
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the keys that have at least one row
+     */
+    public Set<String> getKeys() {
+        return Collections.unmodifiableSet(rangesByKey.keySet());
+    }
+
+    /**
+     * @return the {start, end} byte ranges holding the rows of the key, empty if there are none
+     */
+    public List<long[]> getRanges(String key) {
+        return rangesByKey.getOrDefault(key, Collections.emptyList());
+    }
+
+    /**
+     * Opens a reader over the header row followed by the rows of the key, read by seeking into the CSV.
+     *
+     * @return the reader, or null if no row has the key
+     */
+    public CharacterReader openRows(String csvFile, String key) throws IOException {
+        List<long[]> ranges = getRanges(key);
+        if (ranges.isEmpty()) return null;
+
+        List<InputStream> parts = new ArrayList<>();
+        try (RandomAccessFile file = new RandomAccessFile(csvFile, "r")) {
+            parts.add(new ByteArrayInputStream(readRange(file, 0, headerEnd)));
+            for (long[] range : ranges) {
+                parts.add(new ByteArrayInputStream(readRange(file, range[0], range[1])));
+            }
+        }
+
+        InputStream rows = new SequenceInputStream(Collections.enumeration(parts));
+        return new CharacterReader(new InputStreamReader(rows, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the bytes in [start, end), adding a line break if the range does not end with one
+     * (the last row of a file), so consecutive ranges never run together.
+     *
+     * @throws IOException if the range is too large for one array, e.g. a single key spanning 2 GB of rows
+     */
+    private static byte[] readRange(RandomAccessFile file, long start, long end) throws IOException {
+        if (end - start > Integer.MAX_VALUE - 1) {
+            throw new IOException("Indexed range of " + (end - start) + " bytes at offset " + start
+                    + " is too large to read at once");
+        }
+        int length = (int) (end - start);
+        byte[] bytes = new byte[length + 1];
+        file.seek(start);
+        file.readFully(bytes, 0, length);
+        if (length > 0 && bytes[length - 1] == '\n') {
+            return Arrays.copyOf(bytes, length);
+        }
+        bytes[length] = '\n';
+        return bytes;
+    }
+
+    /**
+     * Scans the file byte by byte, honouring quotes, and records the range of each run of rows with the same key.
+     */
+    private static CSVRangeIndex build(File csv, String column, Function<String, String> keyFunction)
+            throws IOException {
+        long fileSize = csv.length();
+        long lastModified = csv.lastModified();
+        Map<String, List<long[]>> rangesByKey = new HashMap<>();
+        int rowCount = 0;
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(csv), BUFFER_SIZE)) {
+            ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+            long offset = 0;
+            boolean inQuotes = false;
+            int b;
+
+            // header row
+            while ((b = in.read()) != -1) {
+                offset++;
+                if (b == '"') inQuotes = !inQuotes;
+                if (b == '\n' && !inQuotes) break;
+                headerBytes.write(b);
+            }
+            long headerEnd = offset;
+            int keyIndex = findColumn(headerBytes.toString(StandardCharsets.UTF_8), column);
+
+            String runKey = null;
+            long runStart = headerEnd;
+            long rowStart = headerEnd;
+            int field = 0;
+            ByteArrayOutputStream keyBytes = new ByteArrayOutputStream();
+            inQuotes = false;
+
+            while (true) {
+                b = in.read();
+                boolean endOfRow = b == -1 || (b == '\n' && !inQuotes);
+
+                if (b != -1) {
+                    offset++;
+                    if (b == '"') {
+                        inQuotes = !inQuotes;
+                    } else if (b == ',' && !inQuotes) {
+                        field++;
+                    } else if (field == keyIndex && !endOfRow && keyBytes.size() < MAX_KEY_FIELD_LENGTH) {
+                        keyBytes.write(b);
+                    }
+                }
+
+                if (endOfRow) {
+                    if (offset > rowStart) {
+                        String key = keyFunction.apply(keyBytes.toString(StandardCharsets.UTF_8).trim());
+                        if (key != null) rowCount++;
+                        if (!Objects.equals(key, runKey)) {
+                            addRange(rangesByKey, runKey, runStart, rowStart);
+                            runKey = key;
+                            runStart = rowStart;
+                        }
+                    }
+                    rowStart = offset;
+                    field = 0;
+                    keyBytes.reset();
+                }
+                if (b == -1) break;
+            }
+            addRange(rangesByKey, runKey, runStart, offset);
+
+            return new CSVRangeIndex(column, fileSize, lastModified, headerEnd, rowCount, rangesByKey);
+        }
+    }
+
+    private static int findColumn(String headerLine, String column) throws IOException {
+        if (headerLine.endsWith("\r")) headerLine = headerLine.substring(0, headerLine.length() - 1);
+        CSVFileReader reader = new CSVFileReader(new CharacterReader(new StringReader(headerLine)));
+        String[] header = reader.readRow();
+        if (header != null) {
+            for (int i = 0; i < header.length; i++) {
+                if (header[i].trim().equalsIgnoreCase(column)) return i;
+            }
+        }
+        throw new IOException("Missing required header: " + column);
+    }
+
+    private static void addRange(Map<String, List<long[]>> rangesByKey, String key, long start, long end) {
+        if (key == null || end <= start) return;
+        rangesByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(new long[]{start, end});
+    }
+
+    private static CSVRangeIndex load(File sidecar) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) throw new IOException("Not a range index");
+
+            String column = in.readUTF();
+            long fileSize = in.readLong();
+            long lastModified = in.readLong();
+            long headerEnd = in.readLong();
+            int rowCount = in.readInt();
+            int keys = in.readInt();
+            Map<String, List<long[]>> rangesByKey = new HashMap<>();
+            for (int i = 0; i < keys; i++) {
+                String key = in.readUTF();
+                int count = in.readInt();
+                List<long[]> ranges = new ArrayList<>(count);
+                for (int r = 0; r < count; r++) {
+                    ranges.add(new long[]{in.readLong(), in.readLong()});
+                }
+                rangesByKey.put(key, ranges);
+            }
+            return new CSVRangeIndex(column, fileSize, lastModified, headerEnd, rowCount, rangesByKey);
+        }
+    }
+
+    private void save(File sidecar) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(sidecar)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(column);
+            out.writeLong(fileSize);
+            out.writeLong(lastModified);
+            out.writeLong(headerEnd);
+            out.writeInt(rowCount);
+            out.writeInt(rangesByKey.size());
+            for (Map.Entry<String, List<long[]>> entry : rangesByKey.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (long[] range : entry.getValue()) {
+                    out.writeLong(range[0]);
+                    out.writeLong(range[1]);
+                }
+            }
+        }
+    }
+}
@@ -5,6 +5,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 
@@ -21,10 +22,18 @@ import java.nio.file.Paths;
  */
 public class CharacterReader implements AutoCloseable {
 
+    private static final int BUFFER_SIZE = 1 << 16;
+
     private final BufferedReader reader;
 
     public CharacterReader(String filename) throws IOException {
-        this.reader = Files.newBufferedReader(Paths.get(filename));
+        // gzip-compressed files are decompressed on the fly
+        if (CompressedInput.isCompressed(filename)) {
+            this.reader = new BufferedReader(
+                    new InputStreamReader(CompressedInput.open(filename), StandardCharsets.UTF_8), BUFFER_SIZE);
+        } else {
+            this.reader = Files.newBufferedReader(Paths.get(filename));
+        }
     }
 
     public CharacterReader(Reader reader) {
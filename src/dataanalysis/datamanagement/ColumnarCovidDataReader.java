@@ -0,0 +1,112 @@
+package dataanalysis.datamanagement;
+
+import dataanalysis.util.CovidRecord;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads COVID records from a {@link ColumnarFile}. The rows are written ordered by date and ZIP,
+ * so reading one date only decodes the few row groups whose timestamp range covers it.
+ */
+public class ColumnarCovidDataReader implements DateSelectiveReader {
+
+    public static final String KIND = "covid";
+
+    private static final List<String> COLUMNS =
+            List.of("zip_code", "etl_timestamp", "partially_vaccinated", "fully_vaccinated");
+
+    private final ColumnarFile file;
+
+    public ColumnarCovidDataReader(String fileName) throws IOException {
+        this.file = ColumnarFile.open(fileName, KIND);
+        if (!file.hasColumn("zip_code", ColumnarFile.DICTIONARY) || !file.hasColumn("etl_timestamp", ColumnarFile.DICTIONARY)
+                || !file.hasColumn("partially_vaccinated", ColumnarFile.INTEGER)
+                || !file.hasColumn("fully_vaccinated", ColumnarFile.INTEGER)) {
+            throw new IOException("Missing required columns: " + String.join(", ", COLUMNS));
+        }
+    }
+
+    /**
+     * Converts the records of another reader into a columnar file, ordered by date and then ZIP.
+     *
+     * @return the number of records written
+     */
+    public static int write(Reader source, String fileName) throws IOException {
+        List<CovidRecord> records = new ArrayList<>();
+        source.readCovidData(records::add);
+        // a stable sort, so records of the same date and ZIP keep their order
+        records.sort(Comparator.comparing((CovidRecord record) -> datePart(record.getEtlTimestamp()))
+                .thenComparing(CovidRecord::getZipCode));
+
+        try (ColumnarFile.Writer writer = new ColumnarFile.Writer(fileName, KIND, COLUMNS, new byte[]{
+                ColumnarFile.DICTIONARY, ColumnarFile.DICTIONARY, ColumnarFile.INTEGER, ColumnarFile.INTEGER})) {
+            for (CovidRecord record : records) {
+                writer.addRow(record.getZipCode(), record.getEtlTimestamp(),
+                        record.getPartiallyVaccinated(), record.getFullyVaccinated());
+            }
+        }
+        return records.size();
+    }
+
+    @Override
+    public List<CovidRecord> getCovidData() {
+        List<CovidRecord> covidData = new ArrayList<>();
+        readCovidData(covidData::add);
+        return covidData;
+    }
+
+    @Override
+    public void readCovidData(Consumer<CovidRecord> sink) {
+        try {
+            for (int group = 0; group < file.getRowGroupCount(); group++) {
+                readRowGroup(group, sink);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading columnar file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the row groups whose timestamps may fall on the date and skips the rest.
+     */
+    @Override
+    public void readCovidData(String date, Consumer<CovidRecord> sink) {
+        try {
+            for (int group = 0; group < file.getRowGroupCount(); group++) {
+                if (file.mayContain(group, "etl_timestamp", date)) readRowGroup(group, sink);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading columnar file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the number of row groups, of which date reads skip those outside the date
+     */
+    public int getRowGroupCount() {
+        return file.getRowGroupCount();
+    }
+
+    @Override
+    public void close() {
+        file.close();
+    }
+
+    private void readRowGroup(int group, Consumer<CovidRecord> sink) throws IOException {
+        String[] zips = file.readStrings(group, "zip_code");
+        String[] timestamps = file.readStrings(group, "etl_timestamp");
+        ColumnarFile.IntColumn partial = file.readIntegers(group, "partially_vaccinated");
+        ColumnarFile.IntColumn full = file.readIntegers(group, "fully_vaccinated");
+        for (int row = 0; row < zips.length; row++) {
+            sink.accept(new CovidRecord(zips[row], timestamps[row], partial.get(row), full.get(row)));
+        }
+    }
+
+    private static String datePart(String timestamp) {
+        return timestamp.length() < 10 ? timestamp : timestamp.substring(0, 10);
+    }
+}
@@ -0,0 +1,486 @@
+package dataanalysis.datamanagement;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A self-describing columnar file holding one converted input, which later runs read
+ * instead of parsing the CSV or JSON it came from.
+ *
+ * <p>Layout:
+ * <pre>
+ * header  magic, kind (covid, population or properties), then each column's name and encoding
+ * groups  for each row group one chunk per column
+ * footer  for each row group its row count, each chunk's offset and length, and the minimum and
+ *         maximum of each dictionary column; then the footer's offset and the magic again
+ * </pre>
+ * A dictionary column, e.g. ZIP codes or timestamps, stores the distinct values of a group once,
+ * followed by the rows as run-length encoded indexes into them. An integer column stores a presence
+ * bitmap when a value is missing, followed by the present values as zigzag varints.
+ *
+ * <p>The minimum and maximum of a dictionary column are the group's zone map: a reader looking for
+ * one ZIP or date skips the groups whose range excludes it, and only reads the chunks of the columns
+ * it needs.
+ *
+ * <p>An opened file keeps one channel open until it is closed, and reads each chunk at its offset
+ * without moving a shared file position, so several threads may read row groups at once.
+ */
+public final class ColumnarFile implements Closeable {
+
+    public static final String EXTENSION = ".col";
+
+    // rows per group; small enough that a ZIP or date spans few groups once the rows are clustered
+    public static final int ROW_GROUP_SIZE = 8192;
+
+    public static final byte DICTIONARY = 0;
+    public static final byte INTEGER = 1;
+
+    private static final byte[] MAGIC = "DACOLS01".getBytes(StandardCharsets.US_ASCII);
+
+    private final String fileName;
+    private final String kind;
+    private final FileChannel channel;
+    private final List<String> columnNames = new ArrayList<>();
+    private final List<Byte> encodings = new ArrayList<>();
+    private final List<GroupInfo> groups = new ArrayList<>();
+    private int rowCount;
+
+    private ColumnarFile(String fileName, String kind, FileChannel channel) {
+        this.fileName = fileName;
+        this.kind = kind;
+        this.channel = channel;
+    }
+
+    /**
+     * @return true if the file starts like a columnar file, whatever its name
+     */
+    public static boolean isColumnarFile(String fileName) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r")) {
+            if (file.length() < MAGIC.length) return false;
+            byte[] magic = new byte[MAGIC.length];
+            file.readFully(magic);
+            return Arrays.equals(magic, MAGIC);
+        }
+    }
+
+    /**
+     * Reads the header and footer of a columnar file; the row groups are read on request, until
+     * the file is closed.
+     *
+     * @param expectedKind the kind of data the caller reads
+     * @throws IOException if the file is not a columnar file of that kind
+     */
+    public static ColumnarFile open(String fileName, String expectedKind) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(fileName, "r");
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            if (file.length() < 2L * MAGIC.length + Long.BYTES) throw new IOException("Not a columnar file: " + fileName);
+            file.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) throw new IOException("Not a columnar file: " + fileName);
+
+            String kind = file.readUTF();
+            if (!kind.equals(expectedKind)) {
+                throw new IOException("Columnar file " + fileName + " holds " + kind + " data, not " + expectedKind + " data");
+            }
+            ColumnarFile columnar = new ColumnarFile(fileName, kind, file.getChannel());
+            int columns = file.readInt();
+            for (int i = 0; i < columns; i++) {
+                columnar.columnNames.add(file.readUTF());
+                columnar.encodings.add(file.readByte());
+            }
+
+            // the trailer: footer offset, then the magic again, which a truncated file lacks
+            long trailer = file.length() - Long.BYTES - MAGIC.length;
+            file.seek(trailer);
+            long footerOffset = file.readLong();
+            file.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || footerOffset < 0 || footerOffset > trailer) {
+                throw new IOException("Columnar file " + fileName + " is incomplete");
+            }
+            byte[] footerBytes = new byte[(int) (trailer - footerOffset)];
+            file.seek(footerOffset);
+            file.readFully(footerBytes);
+
+            DataInputStream footer = new DataInputStream(new ByteArrayInputStream(footerBytes));
+            int groupCount = footer.readInt();
+            for (int g = 0; g < groupCount; g++) {
+                GroupInfo group = new GroupInfo(columns);
+                group.rows = footer.readInt();
+                for (int c = 0; c < columns; c++) {
+                    group.offsets[c] = footer.readLong();
+                    group.lengths[c] = footer.readInt();
+                    if (columnar.encodings.get(c) == DICTIONARY) {
+                        group.minimums[c] = footer.readUTF();
+                        group.maximums[c] = footer.readUTF();
+                    }
+                }
+                columnar.groups.add(group);
+                columnar.rowCount += group.rows;
+            }
+            return columnar;
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    /**
+     * @return true if the file has a column of this name and encoding
+     */
+    public boolean hasColumn(String column, byte encoding) {
+        int index = columnNames.indexOf(column);
+        return index >= 0 && encodings.get(index) == encoding;
+    }
+
+    public int getRowGroupCount() {
+        return groups.size();
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Checks the zone map of a dictionary column: whether a row group may hold a value starting
+     * with the prefix, e.g. a timestamp on a date.
+     *
+     * @return false if no value of the column in the group can start with the prefix
+     */
+    public boolean mayContain(int group, String column, String prefix) {
+        int index = columnIndex(column, DICTIONARY);
+        GroupInfo info = groups.get(group);
+        String min = info.minimums[index];
+        String max = info.maximums[index];
+        // cutting the bounds to the prefix's length keeps their order
+        return min.substring(0, Math.min(min.length(), prefix.length())).compareTo(prefix) <= 0
+                && max.substring(0, Math.min(max.length(), prefix.length())).compareTo(prefix) >= 0;
+    }
+
+    /**
+     * @return the distinct values of a dictionary column in a row group, without decoding its rows
+     */
+    public String[] readDictionary(int group, String column) throws IOException {
+        ByteBuffer chunk = readChunk(group, columnIndex(column, DICTIONARY));
+        return readDictionary(chunk);
+    }
+
+    /**
+     * @return the values of a dictionary column in a row group, one per row; equal values share one String
+     */
+    public String[] readStrings(int group, String column) throws IOException {
+        ByteBuffer chunk = readChunk(group, columnIndex(column, DICTIONARY));
+        String[] dictionary = readDictionary(chunk);
+        String[] values = new String[groups.get(group).rows];
+        int row = 0;
+        while (row < values.length) {
+            String value = dictionary[readVarint(chunk)];
+            int run = readVarint(chunk);
+            Arrays.fill(values, row, row + run, value);
+            row += run;
+        }
+        return values;
+    }
+
+    /**
+     * @return the values of an integer column in a row group, one per row
+     */
+    public IntColumn readIntegers(int group, String column) throws IOException {
+        ByteBuffer chunk = readChunk(group, columnIndex(column, INTEGER));
+        int rows = groups.get(group).rows;
+        boolean[] present = null;
+        if (chunk.get() != 0) {
+            present = new boolean[rows];
+            byte[] bitmap = new byte[(rows + 7) / 8];
+            chunk.get(bitmap);
+            for (int row = 0; row < rows; row++) {
+                present[row] = (bitmap[row >>> 3] & (1 << (row & 7))) != 0;
+            }
+        }
+        int[] values = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            if (present == null || present[row]) {
+                int zigzag = readVarint(chunk);
+                values[row] = (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        return new IntColumn(values, present);
+    }
+
+    /**
+     * Releases the file. Reads afterwards, or still running, fail with an IOException.
+     */
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing was written, so nothing is lost
+        }
+    }
+
+    private ByteBuffer readChunk(int group, int column) throws IOException {
+        GroupInfo info = groups.get(group);
+        ByteBuffer chunk = ByteBuffer.allocate(info.lengths[column]);
+        try {
+            while (chunk.hasRemaining()) {
+                if (channel.read(chunk, info.offsets[column] + chunk.position()) < 0) {
+                    throw new EOFException("Columnar file " + fileName + " is truncated");
+                }
+            }
+        } catch (ClosedChannelException e) {
+            throw new IOException("Columnar file " + fileName + " is closed", e);
+        }
+        return chunk.flip();
+    }
+
+    private int columnIndex(String column, byte encoding) {
+        int index = columnNames.indexOf(column);
+        if (index < 0 || encodings.get(index) != encoding) {
+            throw new IllegalArgumentException("No such column in " + fileName + ": " + column);
+        }
+        return index;
+    }
+
+    private static String[] readDictionary(ByteBuffer chunk) {
+        String[] dictionary = new String[readVarint(chunk)];
+        for (int i = 0; i < dictionary.length; i++) {
+            int length = readVarint(chunk);
+            dictionary[i] = new String(chunk.array(), chunk.position(), length, StandardCharsets.UTF_8);
+            chunk.position(chunk.position() + length);
+        }
+        return dictionary;
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * The values of an integer column in one row group, where values can be missing.
+     */
+    public static final class IntColumn {
+        private final int[] values;
+        private final boolean[] present;    // null if every value is present
+
+        IntColumn(int[] values, boolean[] present) {
+            this.values = values;
+            this.present = present;
+        }
+
+        /**
+         * @return the value of the row, or 0 if it is missing
+         */
+        public int get(int row) {
+            return values[row];
+        }
+
+        /**
+         * @return the value of the row, or null if it is missing
+         */
+        public Integer getNullable(int row) {
+            return present == null || present[row] ? values[row] : null;
+        }
+    }
+
+    /**
+     * The footer entry of one row group.
+     */
+    private static final class GroupInfo {
+        int rows;
+        final long[] offsets;
+        final int[] lengths;
+        final String[] minimums;
+        final String[] maximums;
+
+        GroupInfo(int columns) {
+            offsets = new long[columns];
+            lengths = new int[columns];
+            minimums = new String[columns];
+            maximums = new String[columns];
+        }
+    }
+
+    /**
+     * Writes a columnar file row by row, one row group at a time.
+     */
+    public static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final List<String> columnNames;
+        private final byte[] encodings;
+        private final List<GroupInfo> groups = new ArrayList<>();
+        private final Object[][] buffered;
+        private int bufferedRows;
+        private long position;
+
+        /**
+         * Creates the file, replacing an existing one, and writes its header.
+         *
+         * @param kind the kind of data, which readers check
+         * @param columnNames the column names
+         * @param encodings the encoding of each column, {@link #DICTIONARY} or {@link #INTEGER}
+         */
+        public Writer(String fileName, String kind, List<String> columnNames, byte[] encodings) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16));
+            this.columnNames = columnNames;
+            this.encodings = encodings;
+            this.buffered = new Object[columnNames.size()][ROW_GROUP_SIZE];
+
+            out.write(MAGIC);
+            out.writeUTF(kind);
+            out.writeInt(columnNames.size());
+            for (int c = 0; c < columnNames.size(); c++) {
+                out.writeUTF(columnNames.get(c));
+                out.writeByte(encodings[c]);
+            }
+            position = out.size();
+        }
+
+        /**
+         * Adds a row: a String for each dictionary column and an Integer, or null if missing,
+         * for each integer column.
+         */
+        public void addRow(Object... values) throws IOException {
+            for (int c = 0; c < values.length; c++) {
+                buffered[c][bufferedRows] = values[c];
+            }
+            if (++bufferedRows == ROW_GROUP_SIZE) writeGroup();
+        }
+
+        /**
+         * Writes the last row group and the footer.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                if (bufferedRows > 0) writeGroup();
+
+                long footerOffset = position;
+                out.writeInt(groups.size());
+                for (GroupInfo group : groups) {
+                    out.writeInt(group.rows);
+                    for (int c = 0; c < encodings.length; c++) {
+                        out.writeLong(group.offsets[c]);
+                        out.writeInt(group.lengths[c]);
+                        if (encodings[c] == DICTIONARY) {
+                            out.writeUTF(group.minimums[c]);
+                            out.writeUTF(group.maximums[c]);
+                        }
+                    }
+                }
+                out.writeLong(footerOffset);
+                out.write(MAGIC);
+            } finally {
+                out.close();
+            }
+        }
+
+        private void writeGroup() throws IOException {
+            GroupInfo group = new GroupInfo(encodings.length);
+            group.rows = bufferedRows;
+            for (int c = 0; c < encodings.length; c++) {
+                ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+                if (encodings[c] == DICTIONARY) {
+                    encodeDictionary(buffered[c], group, c, chunk);
+                } else {
+                    encodeIntegers(buffered[c], chunk);
+                }
+                group.offsets[c] = position;
+                group.lengths[c] = chunk.size();
+                chunk.writeTo(out);
+                position += chunk.size();
+            }
+            groups.add(group);
+            for (Object[] column : buffered) Arrays.fill(column, 0, bufferedRows, null);
+            bufferedRows = 0;
+        }
+
+        private void encodeDictionary(Object[] values, GroupInfo group, int column, ByteArrayOutputStream chunk) {
+            Map<String, Integer> indexes = new HashMap<>();
+            List<String> dictionary = new ArrayList<>();
+            int[] rows = new int[bufferedRows];
+            String min = null;
+            String max = null;
+            for (int row = 0; row < bufferedRows; row++) {
+                String value = (String) values[row];
+                Integer index = indexes.get(value);
+                if (index == null) {
+                    index = dictionary.size();
+                    indexes.put(value, index);
+                    dictionary.add(value);
+                    if (min == null || value.compareTo(min) < 0) min = value;
+                    if (max == null || value.compareTo(max) > 0) max = value;
+                }
+                rows[row] = index;
+            }
+            group.minimums[column] = min;
+            group.maximums[column] = max;
+
+            writeVarint(chunk, dictionary.size());
+            for (String value : dictionary) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                writeVarint(chunk, bytes.length);
+                chunk.writeBytes(bytes);
+            }
+            for (int row = 0; row < rows.length; ) {
+                int run = 1;
+                while (row + run < rows.length && rows[row + run] == rows[row]) run++;
+                writeVarint(chunk, rows[row]);
+                writeVarint(chunk, run);
+                row += run;
+            }
+        }
+
+        private void encodeIntegers(Object[] values, ByteArrayOutputStream chunk) {
+            byte[] bitmap = new byte[(bufferedRows + 7) / 8];
+            boolean missing = false;
+            for (int row = 0; row < bufferedRows; row++) {
+                if (values[row] != null) bitmap[row >>> 3] |= (byte) (1 << (row & 7));
+                else missing = true;
+            }
+            chunk.write(missing ? 1 : 0);
+            if (missing) chunk.writeBytes(bitmap);
+            for (int row = 0; row < bufferedRows; row++) {
+                if (values[row] == null) continue;
+                int value = (Integer) values[row];
+                writeVarint(chunk, (value << 1) ^ (value >> 31));
+            }
+        }
+    }
+}
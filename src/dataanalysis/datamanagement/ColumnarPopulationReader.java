@@ -0,0 +1,105 @@
+package dataanalysis.datamanagement;
+
+import dataanalysis.util.Population;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Reads population records from a {@link ColumnarFile} instead of a CSV.
+ */
+public class ColumnarPopulationReader implements PopulationSource {
+
+    public static final String KIND = "population";
+
+    private static final List<String> COLUMNS = List.of("zip_code", "population");
+
+    private final ColumnarFile file;
+
+    public ColumnarPopulationReader(String fileName) throws IOException {
+        this.file = ColumnarFile.open(fileName, KIND);
+        if (!file.hasColumn("zip_code", ColumnarFile.DICTIONARY) || !file.hasColumn("population", ColumnarFile.INTEGER)) {
+            throw new IOException("Missing required columns: zip_code and/or population");
+        }
+    }
+
+    /**
+     * Converts the records of another reader into a columnar file, ordered by ZIP.
+     *
+     * @return the number of records written
+     */
+    public static int write(PopulationSource source, String fileName) throws IOException {
+        List<Population> records = new ArrayList<>();
+        source.readPopulationData(records::add);
+        // a stable sort, so a repeated ZIP keeps its last value
+        records.sort(Comparator.comparing(Population::getZipCode));
+
+        try (ColumnarFile.Writer writer = new ColumnarFile.Writer(fileName, KIND, COLUMNS,
+                new byte[]{ColumnarFile.DICTIONARY, ColumnarFile.INTEGER})) {
+            for (Population population : records) {
+                writer.addRow(population.getZipCode(), population.getPopulation());
+            }
+        }
+        return records.size();
+    }
+
+    @Override
+    public void readPopulationData(Consumer<Population> sink) {
+        try {
+            for (int group = 0; group < file.getRowGroupCount(); group++) {
+                readRowGroup(group, sink);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading columnar file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the records one row group at a time: a group is decoded when its first record is requested.
+     */
+    @Override
+    public Spliterator<Population> populationSpliterator() {
+        return new RecordSpliterator<>() {
+
+            private final List<Population> rowGroup = new ArrayList<>();
+            private int nextGroup;
+            private int nextRow;
+
+            @Override
+            protected Population readNext() {
+                try {
+                    while (nextRow == rowGroup.size()) {
+                        if (nextGroup == file.getRowGroupCount()) return null;
+                        rowGroup.clear();
+                        nextRow = 0;
+                        readRowGroup(nextGroup++, rowGroup::add);
+                    }
+                    return rowGroup.get(nextRow++);
+                } catch (IOException e) {
+                    System.err.println("Error reading columnar file: " + e.getMessage());
+                    nextGroup = file.getRowGroupCount();
+                    rowGroup.clear();
+                    nextRow = 0;
+                    return null;
+                }
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        file.close();
+    }
+
+    private void readRowGroup(int group, Consumer<Population> sink) throws IOException {
+        String[] zips = file.readStrings(group, "zip_code");
+        ColumnarFile.IntColumn populations = file.readIntegers(group, "population");
+        for (int row = 0; row < zips.length; row++) {
+            sink.accept(new Population(zips[row], populations.get(row)));
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package dataanalysis.datamanagement;
+
+import dataanalysis.util.Property;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Reads properties from a {@link ColumnarFile} instead of a CSV. The rows are written ordered by
+ * ZIP, so reading one ZIP only decodes the row groups whose ZIP range covers it; this takes the
+ * place of the per-ZIP index of a CSV, and lazy loading and sampling work without one.
+ */
+public class ColumnarPropertyReader implements PropertySource {
+
+    public static final String KIND = "properties";
+
+    private static final List<String> COLUMNS = List.of("zip_code", "market_value", "total_livable_area");
+
+    private final ColumnarFile file;
+    private Set<String> zipCodes;
+
+    public ColumnarPropertyReader(String fileName) throws IOException {
+        this.file = ColumnarFile.open(fileName, KIND);
+        if (!file.hasColumn("zip_code", ColumnarFile.DICTIONARY) || !file.hasColumn("market_value", ColumnarFile.INTEGER)
+                || !file.hasColumn("total_livable_area", ColumnarFile.INTEGER)) {
+            throw new IOException("Missing required columns: zip_code, market_value, total_livable_area");
+        }
+    }
+
+    /**
+     * Converts the properties of another reader into a columnar file, ordered by ZIP.
+     *
+     * @return the number of properties written
+     */
+    public static int write(PropertySource source, String fileName) throws IOException {
+        List<Property> properties = new ArrayList<>();
+        source.readPropertyData(properties::add);
+        // a stable sort, so the properties of a ZIP keep their order
+        properties.sort(Comparator.comparing(Property::getZipCode));
+
+        try (ColumnarFile.Writer writer = new ColumnarFile.Writer(fileName, KIND, COLUMNS,
+                new byte[]{ColumnarFile.DICTIONARY, ColumnarFile.INTEGER, ColumnarFile.INTEGER})) {
+            for (Property property : properties) {
+                writer.addRow(property.getZipCode(), property.getMarketValue(), property.getTotalLivableArea());
+            }
+        }
+        return properties.size();
+    }
+
+    @Override
+    public void readPropertyData(Consumer<Property> sink) {
+        try {
+            for (int group = 0; group < file.getRowGroupCount(); group++) {
+                readRowGroup(group, null, sink);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading columnar file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the row groups whose ZIP range covers the ZIP and skips the rest.
+     */
+    @Override
+    public void readPropertyData(String zip, Consumer<Property> sink) {
+        try {
+            for (int group = 0; group < file.getRowGroupCount(); group++) {
+                if (file.mayContain(group, "zip_code", zip)) readRowGroup(group, zip, sink);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading columnar file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Samples whole row groups as the blocks. Since the rows are ordered by ZIP, a ZIP's
+     * properties are concentrated in few blocks and its estimates have wider intervals than
+     * those of a CSV sample of the same size.
+     */
+    @Override
+    public int readPropertyBlocks(double fraction, Random random, Consumer<List<Property>> blockSink)
+            throws IOException {
+        int blocks = Math.max(1, file.getRowGroupCount());
+        int sampled = (int) Math.min(file.getRowGroupCount(), Math.max(2, Math.round(fraction * blocks)));
+        for (int group : PropertyReader.chooseBlocks(file.getRowGroupCount(), sampled, random)) {
+            List<Property> properties = new ArrayList<>();
+            readRowGroup(group, null, properties::add);
+            blockSink.accept(properties);
+        }
+        return blocks;
+    }
+
+    @Override
+    public boolean canReadByZip() {
+        return true;
+    }
+
+    /**
+     * @return the number of properties; only valid rows are written to the file
+     */
+    @Override
+    public int getIndexedRowCount() {
+        return file.getRowCount();
+    }
+
+    /**
+     * @return the ZIP codes of the file, taken from the dictionaries of its row groups
+     */
+    @Override
+    public Set<String> getIndexedZipCodes() throws IOException {
+        if (zipCodes == null) {
+            Set<String> zips = new HashSet<>();
+            for (int group = 0; group < file.getRowGroupCount(); group++) {
+                Collections.addAll(zips, file.readDictionary(group, "zip_code"));
+            }
+            zipCodes = zips;
+        }
+        return zipCodes;
+    }
+
+    /**
+     * Returns the properties one row group at a time: a group is decoded when its first property is requested.
+     */
+    @Override
+    public Spliterator<Property> propertySpliterator() {
+        return new RecordSpliterator<>() {
+
+            private final List<Property> rowGroup = new ArrayList<>();
+            private int nextGroup;
+            private int nextRow;
+
+            @Override
+            protected Property readNext() {
+                try {
+                    while (nextRow == rowGroup.size()) {
+                        if (nextGroup == file.getRowGroupCount()) return null;
+                        rowGroup.clear();
+                        nextRow = 0;
+                        readRowGroup(nextGroup++, null, rowGroup::add);
+                    }
+                    return rowGroup.get(nextRow++);
+                } catch (IOException e) {
+                    System.err.println("Error reading columnar file: " + e.getMessage());
+                    nextGroup = file.getRowGroupCount();
+                    rowGroup.clear();
+                    nextRow = 0;
+                    return null;
+                }
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        file.close();
+    }
+
+    /**
+     * Passes the properties of a row group to the sink, only those of one ZIP unless zip is null.
+     */
+    private void readRowGroup(int group, String zip, Consumer<Property> sink) throws IOException {
+        String[] zips = file.readStrings(group, "zip_code");
+        ColumnarFile.IntColumn marketValues = file.readIntegers(group, "market_value");
+        ColumnarFile.IntColumn livableAreas = file.readIntegers(group, "total_livable_area");
+        for (int row = 0; row < zips.length; row++) {
+            if (zip != null && !zip.equals(zips[row])) continue;
+            sink.accept(new Property(zips[row], marketValues.getNullable(row), livableAreas.getNullable(row)));
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package dataanalysis.datamanagement;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens input files that may be gzip-compressed. Compression is detected from the
+ * gzip magic bytes, so a renamed file is still read correctly. Compressed files are
+ * decompressed on a background thread into a bounded queue of chunks, so inflating
+ * overlaps with parsing and nothing is written to disk.
+ */
+public class CompressedInput {
+
+    private static final String GZIP_EXTENSION = ".gz";
+    private static final int GZIP_MAGIC_1 = 0x1f;
+    private static final int GZIP_MAGIC_2 = 0x8b;
+
+    private static final int INFLATER_BUFFER_SIZE = 1 << 16;
+    private static final int CHUNK_SIZE = 1 << 18;
+    private static final int QUEUED_CHUNKS = 8;
+
+    private CompressedInput() {
+    }
+
+    /**
+     * Checks the first two bytes of the file for the gzip magic number.
+     */
+    public static boolean isCompressed(String filename) throws IOException {
+        try (InputStream in = new FileInputStream(filename)) {
+            return in.read() == GZIP_MAGIC_1 && in.read() == GZIP_MAGIC_2;
+        }
+    }
+
+    /**
+     * Returns the file name without a trailing ".gz", so "covid.csv.gz" is treated as a CSV file.
+     */
+    public static String stripCompressionExtension(String filename) {
+        if (filename.toLowerCase().endsWith(GZIP_EXTENSION)) {
+            return filename.substring(0, filename.length() - GZIP_EXTENSION.length());
+        }
+        return filename;
+    }
+
+    /**
+     * Opens the file for reading, decompressing it on a background thread if it is gzip-compressed.
+     */
+    public static InputStream open(String filename) throws IOException {
+        if (!isCompressed(filename)) {
+            return new BufferedInputStream(new FileInputStream(filename), INFLATER_BUFFER_SIZE);
+        }
+        GZIPInputStream gzip = new GZIPInputStream(new FileInputStream(filename), INFLATER_BUFFER_SIZE);
+        return new ReadAheadInputStream(gzip, filename);
+    }
+
+    /**
+     * Reads a source stream ahead on a daemon thread and hands the data over in chunks.
+     * Errors from the source are rethrown to the reader.
+     */
+    private static class ReadAheadInputStream extends InputStream {
+
+        private static final byte[] END = new byte[0];
+
+        private final InputStream source;
+        private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(QUEUED_CHUNKS);
+        private final Thread producer;
+        private volatile IOException failure;
+
+        private byte[] current = new byte[0];
+        private int position;
+        private boolean finished;
+
+        ReadAheadInputStream(InputStream source, String name) {
+            this.source = source;
+            this.producer = new Thread(this::produce, "decompress-" + name);
+            this.producer.setDaemon(true);
+            this.producer.start();
+        }
+
+        private void produce() {
+            try {
+                while (true) {
+                    byte[] buffer = new byte[CHUNK_SIZE];
+                    int filled = 0;
+                    int n;
+                    while (filled < CHUNK_SIZE && (n = source.read(buffer, filled, CHUNK_SIZE - filled)) != -1) {
+                        filled += n;
+                    }
+                    if (filled > 0) {
+                        chunks.put(filled == CHUNK_SIZE ? buffer : Arrays.copyOf(buffer, filled));
+                    }
+                    if (filled < CHUNK_SIZE) break;
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                return;     // the reader closed the stream
+            }
+
+            try {
+                chunks.put(END);
+            } catch (InterruptedException e) {
+                // the reader closed the stream
+            }
+        }
+
+        /**
+         * Makes sure the current chunk has unread data.
+         *
+         * @return false at the end of the stream
+         */
+        private boolean fill() throws IOException {
+            while (position == current.length) {
+                if (finished) return false;
+                try {
+                    current = chunks.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for decompressed data", e);
+                }
+                position = 0;
+                if (current == END) {
+                    finished = true;
+                    if (failure != null) throw failure;
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) return -1;
+            return current[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!fill()) return -1;
+            int n = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            finished = true;
+            producer.interrupt();
+            source.close();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package dataanalysis.datamanagement;
+
+import dataanalysis.util.CovidRecord;
+
+import java.util.function.Consumer;
+
+/**
+ * A COVID reader that can read the records of a single date without parsing the whole input.
+ */
+public interface DateSelectiveReader extends Reader {
+
+    /**
+     * Passes the records that may fall on the given date to the sink. Records of
+     * other dates can be included (e.g. when a partition spans several dates), so
+     * callers still filter by date.
+     *
+     * @param date the date in format YYYY-MM-DD
+     * @param sink receives the records
+     */
+    void readCovidData(String date, Consumer<CovidRecord> sink);
+}
@@ -0,0 +1,69 @@
+package dataanalysis.datamanagement;
+
+import dataanalysis.util.CovidRecord;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Reads a plain (uncompressed) COVID CSV file, using a {@link CSVRangeIndex} over the
+ * etl_timestamp dates to read the rows of a single date without parsing the rest of
+ * the file. The index is built on the first date query and persisted next to the
+ * file as covid.csv.dateidx, in the same format as the property file's ZIP index.
+ * A sidecar in any other format fails the index's magic check and is rebuilt.
+ */
+public class IndexedCSVCovidDataReader implements DateSelectiveReader {
+
+    public static final String SIDECAR_EXTENSION = ".dateidx";
+
+    private static final Pattern TIMESTAMP_PATTERN = Pattern.compile("^\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}$");
+
+    private final String fileName;
+    private CSVRangeIndex index;
+
+    public IndexedCSVCovidDataReader(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * Reads the whole file, exactly like {@link CSVCovidDataReader}.
+     */
+    @Override
+    public List<CovidRecord> getCovidData() {
+        List<CovidRecord> covidData = new ArrayList<>();
+        readCovidData(covidData::add);
+        return covidData;
+    }
+
+    @Override
+    public void readCovidData(Consumer<CovidRecord> sink) {
+        try {
+            new CSVCovidDataReader(new CSVFileReader(new CharacterReader(fileName))).readCovidData(sink);
+        } catch (IOException e) {
+            System.err.println("Error reading CSV: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Seeks to the byte ranges of the date and parses only those rows, behind a copy of the header row.
+     */
+    @Override
+    public void readCovidData(String date, Consumer<CovidRecord> sink) {
+        try {
+            if (index == null) {
+                // rows with an invalid timestamp are skipped by the CSV reader, so they are not indexed
+                index = CSVRangeIndex.loadOrBuild(fileName, "etl_timestamp", SIDECAR_EXTENSION,
+                        timestamp -> TIMESTAMP_PATTERN.matcher(timestamp).matches() ? timestamp.substring(0, 10) : null);
+            }
+
+            CharacterReader rows = index.openRows(fileName, date);
+            if (rows == null) return;
+            new CSVCovidDataReader(new CSVFileReader(rows)).readCovidData(sink);
+        } catch (IOException e) {
+            System.err.println("Error reading CSV: " + e.getMessage());
+        }
+    }
+}
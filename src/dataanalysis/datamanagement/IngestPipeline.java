@@ -0,0 +1,154 @@
+package dataanalysis.datamanagement;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Reads the rows of a CSV in three overlapping stages:
+ * <ol>
+ *   <li>tokenize: one thread splits the file into batches of rows,</li>
+ *   <li>convert: a pool validates the rows of each batch and converts them into records,</li>
+ *   <li>index: the calling thread passes the records to the sink in file order.</li>
+ * </ol>
+ * At most a fixed number of batches are between the first and last stage at any time,
+ * so memory use does not depend on the file size. The time each stage spends working
+ * is reported to stderr when the file is done, which shows which stage bounds the ingest.
+ */
+final class IngestPipeline {
+
+    private static final int BATCH_ROWS = 4096;
+
+    /**
+     * Validates and converts one row; called concurrently from the convert pool.
+     */
+    interface RowConverter<T> {
+        /**
+         * @return the record, or null if the row is invalid
+         */
+        T convert(String[] row);
+    }
+
+    // marks the end of the tokenized batches
+    private static final Future<List<Object>> END = CompletableFuture.completedFuture(null);
+
+    private IngestPipeline() {
+    }
+
+    /**
+     * Runs the pipeline over the remaining rows of the reader; the header must already have been read.
+     *
+     * @param label names the input in the throughput report
+     */
+    @SuppressWarnings("unchecked")
+    static <T> void run(String label, CSVFileReader reader, RowConverter<T> converter, Consumer<T> sink)
+            throws IOException {
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        ExecutorService convertPool = Executors.newFixedThreadPool(threads);
+        BlockingQueue<Future<List<Object>>> batches = new ArrayBlockingQueue<>(threads * 2);
+
+        AtomicLong tokenizeNanos = new AtomicLong();
+        AtomicLong convertNanos = new AtomicLong();
+        long indexNanos = 0;
+        long rows = 0;
+        long records = 0;
+        long start = System.nanoTime();
+
+        Thread tokenizer = new Thread(() -> {
+            try {
+                while (true) {
+                    long batchStart = System.nanoTime();
+                    List<String[]> batch = new ArrayList<>(BATCH_ROWS);
+                    String[] row;
+                    while (batch.size() < BATCH_ROWS && (row = reader.readRow()) != null) {
+                        batch.add(row);
+                    }
+                    tokenizeNanos.addAndGet(System.nanoTime() - batchStart);
+                    if (batch.isEmpty()) break;
+
+                    // blocks while the queue is full, which caps the batches in flight
+                    batches.put(convertPool.submit(() -> convert(batch, converter, convertNanos)));
+                }
+                batches.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable e) {
+                // anything the tokenizer throws ends the batches, or the consumer would wait forever
+                putQuietly(batches, CompletableFuture.failedFuture(e));
+            }
+        }, "ingest-tokenize");
+        tokenizer.setDaemon(true);
+        tokenizer.start();
+
+        try {
+            while (true) {
+                Future<List<Object>> batch = batches.take();
+                if (batch == END) break;
+
+                List<Object> converted = batch.get();
+                long indexStart = System.nanoTime();
+                for (Object record : converted) {
+                    if (record != null) {
+                        sink.accept((T) record);
+                        records++;
+                    }
+                }
+                rows += converted.size();
+                indexNanos += System.nanoTime() - indexStart;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + label, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("Failed to read " + label + " rows: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            tokenizer.interrupt();
+            convertPool.shutdownNow();
+        }
+
+        long elapsed = System.nanoTime() - start;
+        System.err.printf("Ingest %s: %d rows, %d records in %d ms; tokenize %s, convert %s (%d threads), index %s%n",
+                label, rows, records, elapsed / 1_000_000,
+                rate(rows, tokenizeNanos.get()), rate(rows, convertNanos.get() / threads), threads,
+                rate(rows, indexNanos));
+    }
+
+    /**
+     * Converts a batch; invalid rows are kept as nulls so the row count stays exact.
+     */
+    private static <T> List<Object> convert(List<String[]> batch, RowConverter<T> converter, AtomicLong busyNanos) {
+        long start = System.nanoTime();
+        List<Object> converted = new ArrayList<>(batch.size());
+        for (String[] row : batch) {
+            converted.add(converter.convert(row));
+        }
+        busyNanos.addAndGet(System.nanoTime() - start);
+        return converted;
+    }
+
+    /**
+     * @return the rows per second a stage would sustain on its own, given the time it was busy
+     */
+    private static String rate(long rows, long busyNanos) {
+        if (busyNanos <= 0) return "n/a";
+        return String.format("%.0f rows/s", rows * 1e9 / busyNanos);
+    }
+
+    private static void putQuietly(BlockingQueue<Future<List<Object>>> queue, Future<List<Object>> item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -4,19 +4,24 @@ import dataanalysis.util.CovidRecord;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
+import org.json.simple.parser.ContentHandler;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
-import java.io.FileReader;
+import java.io.InputStreamReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * This class reads COVID data from a JSON file and converts it into a list of CovidRecord objects.
  */
 public class JSONCovidDataReader implements Reader {
 
+    // Regex to validate timestamp format: YYYY-MM-DD HH:MM:SS
+    private static final String TIMESTAMP_REGEX = "^\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}$";
+
     private final String fileName;
 
     public JSONCovidDataReader(String fileName) {
@@ -29,52 +34,144 @@ public class JSONCovidDataReader implements Reader {
     @Override
     public List<CovidRecord> getCovidData() {
         List<CovidRecord> covidData = new ArrayList<>();
+        readCovidData(covidData::add);
+        return covidData;
+    }
+
+    /**
+     * Parses the JSON file as a stream of tokens, passing each valid record to the sink
+     * as soon as its object has been read, so the whole array is never held in memory.
+     */
+    @Override
+    public void readCovidData(Consumer<CovidRecord> sink) {
         JSONParser parser = new JSONParser();
 
-        // Regex to validate timestamp format: YYYY-MM-DD HH:MM:SS
-        String timestampRegex = "^\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}$";
+        // gzip-compressed files are decompressed on the fly
+        try (InputStreamReader reader = new InputStreamReader(CompressedInput.open(fileName))) {
+            parser.parse(reader, new RecordHandler(sink));
+        } catch (IOException | ParseException e) {
+            throw new RuntimeException("Failed to read JSON file: " + fileName, e);
+        }
+    }
 
-        try (FileReader reader = new FileReader(fileName)) {
+    /**
+     * Validates one JSON object and converts it into a CovidRecord.
+     * Shared with the JSON Lines reader so both formats accept the same records.
+     *
+     * @return the record, or null if the object is not a valid record
+     */
+    static CovidRecord toCovidRecord(JSONObject covidObj) {
+        try {
+            // Extract and validate ZIP code
+            String zipCode = String.valueOf(covidObj.get("zip_code"));
+            if (!zipCode.matches("\\d{5}")) return null;
+
+            // Extract and validate timestamp
+            String etlTimestampStr = (String) covidObj.get("etl_timestamp");
+            if (etlTimestampStr == null || !etlTimestampStr.matches(TIMESTAMP_REGEX)) return null;
+
+            // Extract vaccinated count (default to 0 if missing)
+            int partiallyVaccinated = covidObj.get("partially_vaccinated") != null
+                    ? ((Long) covidObj.get("partially_vaccinated")).intValue()
+                    : 0;
+
+            int fullyVaccinated = covidObj.get("fully_vaccinated") != null
+                    ? ((Long) covidObj.get("fully_vaccinated")).intValue()
+                    : 0;
+
+            return new CovidRecord(zipCode, etlTimestampStr, partiallyVaccinated, fullyVaccinated);
+
+        } catch (Exception e) {
+            // skip invalid record
+            return null;
+        }
+    }
 
-            // Parse the JSON file into an array of objects
-            JSONArray jsonArray = (JSONArray) parser.parse(reader);
+    /**
+     * Rebuilds each object of the top-level array from the parser's events and converts it.
+     * Nested values inside a record are kept only as empty placeholders, which fail validation
+     * just as the full values would.
+     */
+    private static class RecordHandler implements ContentHandler {
 
-            // Iterate over each object in the array
-            for (Object obj : jsonArray) {
-                if (obj instanceof JSONObject) {
-                    JSONObject covidObj = (JSONObject) obj;
+        private final Consumer<CovidRecord> sink;
+        private int depth;              // 1 inside the top-level array, 2 inside one of its elements
+        private JSONObject current;     // the record being read, or null inside other elements
+        private String key;
+
+        RecordHandler(Consumer<CovidRecord> sink) {
+            this.sink = sink;
+        }
 
-                    try {
-                        // Extract and validate ZIP code
-                        String zipCode = String.valueOf(covidObj.get("zip_code"));
-                        if (!zipCode.matches("\\d{5}")) continue;
+        @Override
+        public void startJSON() {
+        }
 
-                        // Extract and validate timestamp
-                        String etlTimestampStr = (String) covidObj.get("etl_timestamp");
-                        if (etlTimestampStr == null || !etlTimestampStr.matches(timestampRegex)) continue;
+        @Override
+        public void endJSON() {
+        }
 
-                        // Extract vaccinated count (default to 0 if missing)
-                        int partiallyVaccinated = covidObj.get("partially_vaccinated") != null
-                                ? ((Long) covidObj.get("partially_vaccinated")).intValue()
-                                : 0;
+        @Override
+        public boolean startArray() throws ParseException {
+            if (depth == 0) {
+                depth = 1;
+                return true;
+            }
+            return startNested(new JSONArray());
+        }
 
-                        int fullyVaccinated = covidObj.get("fully_vaccinated") != null
-                                ? ((Long) covidObj.get("fully_vaccinated")).intValue()
-                                : 0;
+        @Override
+        public boolean endArray() {
+            depth--;
+            return true;
+        }
 
-                        // Create and store the valid CovidRecord
-                        CovidRecord record = new CovidRecord(zipCode, etlTimestampStr, partiallyVaccinated, fullyVaccinated);
-                        covidData.add(record);
+        @Override
+        public boolean startObject() throws ParseException {
+            if (depth == 1) {
+                current = new JSONObject();
+                depth = 2;
+                return true;
+            }
+            return startNested(new JSONObject());
+        }
 
-                    } catch (Exception e) {
-                        // skip invalid record
-                    }
-                }
+        @Override
+        public boolean endObject() {
+            if (depth == 2 && current != null) {
+                CovidRecord record = toCovidRecord(current);
+                if (record != null) sink.accept(record);
+                current = null;
             }
-        } catch (IOException | ParseException e) {
-            throw new RuntimeException("Failed to read JSON file: " + fileName, e);
+            depth--;
+            return true;
+        }
+
+        @Override
+        public boolean startObjectEntry(String key) {
+            if (depth == 2) this.key = key;
+            return true;
+        }
+
+        @Override
+        public boolean endObjectEntry() {
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean primitive(Object value) throws ParseException {
+            if (depth == 0) throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN);
+            if (depth == 2 && current != null) current.put(key, value);
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        private boolean startNested(Object placeholder) throws ParseException {
+            if (depth == 0) throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN);
+            if (depth == 2 && current != null) current.put(key, placeholder);
+            depth++;
+            return true;
         }
-        return covidData;
     }
 }
-
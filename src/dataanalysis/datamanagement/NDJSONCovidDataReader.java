@@ -0,0 +1,131 @@
+package dataanalysis.datamanagement;
+
+import dataanalysis.util.CovidRecord;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Reads COVID data from a JSON Lines file (.jsonl or .ndjson): one JSON object per line.
+ * The file is cut into chunks on line boundaries and the chunks are parsed in parallel,
+ * one thread per core, while this thread keeps reading. Records are validated exactly
+ * as by {@link JSONCovidDataReader} and are passed on in file order.
+ */
+public class NDJSONCovidDataReader implements Reader {
+
+    private static final int CHUNK_BYTES = 1 << 22;
+
+    private final String fileName;
+
+    public NDJSONCovidDataReader(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * Parses the JSON Lines file and returns a list of valid CovidRecord entries.
+     */
+    @Override
+    public List<CovidRecord> getCovidData() {
+        List<CovidRecord> covidData = new ArrayList<>();
+        readCovidData(covidData::add);
+        return covidData;
+    }
+
+    @Override
+    public void readCovidData(Consumer<CovidRecord> sink) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Deque<Future<List<CovidRecord>>> pending = new ArrayDeque<>();
+
+        // gzip-compressed files are decompressed on the fly
+        try (InputStream in = CompressedInput.open(fileName)) {
+            byte[] carry = new byte[0];
+            while (true) {
+                // each chunk continues with the partial line left over from the previous one
+                byte[] buffer = Arrays.copyOf(carry, carry.length + CHUNK_BYTES);
+                int length = carry.length + in.readNBytes(buffer, carry.length, CHUNK_BYTES);
+                boolean last = length < buffer.length;
+
+                int end = last ? length : lastLineEnd(buffer, length);
+                if (end < 0) {
+                    // a single line longer than a chunk; keep reading until it ends
+                    carry = buffer;
+                    continue;
+                }
+                carry = Arrays.copyOfRange(buffer, end, length);
+                pending.add(executor.submit(() -> parseChunk(buffer, end)));
+
+                // keep a bounded number of chunks in memory; the sink is fed from this thread, in order
+                while (pending.size() > threads * 2 || (last && !pending.isEmpty())) {
+                    pending.removeFirst().get().forEach(sink);
+                }
+                if (last) break;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read JSON Lines file: " + fileName, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reading JSON Lines file: " + fileName, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to read JSON Lines file: " + fileName, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the position just after the last newline in the first length bytes, or -1 if there is none
+     */
+    private static int lastLineEnd(byte[] buffer, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer[i] == '\n') return i + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Parses the complete lines in the first length bytes of a chunk. Blank lines are skipped,
+     * and so are lines that are not valid JSON, like objects that are not valid records.
+     */
+    private static List<CovidRecord> parseChunk(byte[] chunk, int length) {
+        List<CovidRecord> records = new ArrayList<>();
+        JSONParser parser = new JSONParser();
+
+        String text = new String(chunk, 0, length, StandardCharsets.UTF_8);
+        int start = 0;
+        while (start < text.length()) {
+            int newline = text.indexOf('\n', start);
+            int end = newline < 0 ? text.length() : newline;
+            String line = text.substring(start, end).trim();
+            start = end + 1;
+            if (line.isEmpty()) continue;
+
+            Object obj;
+            try {
+                obj = parser.parse(line);
+            } catch (ParseException e) {
+                continue;   // a broken line spoils only itself
+            }
+            if (obj instanceof JSONObject) {
+                CovidRecord record = JSONCovidDataReader.toCovidRecord((JSONObject) obj);
+                if (record != null) records.add(record);
+            }
+        }
+        return records;
+    }
+}
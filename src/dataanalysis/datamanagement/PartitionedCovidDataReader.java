@@ -0,0 +1,303 @@
+package dataanalysis.datamanagement;
+
+import dataanalysis.util.CovidRecord;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads COVID data split across several files (partitions), e.g. one file per day.
+ * Partitions are loaded in parallel and passed on in order, with only a bounded number of
+ * loaded partitions waiting at a time. Each partition's date range is taken from
+ * the dates in its file name, or else from a scan of its timestamp column, so
+ * that a query for one date only loads the partitions that can contain it.
+ * The ranges are inferred on the first such query, so a full load never scans.
+ */
+public class PartitionedCovidDataReader implements DateSelectiveReader {
+
+    // a date in a file name, with or without dashes: 2021-03-05 or 20210305, but not part of a longer number
+    private static final Pattern FILE_NAME_DATE =
+            Pattern.compile("(?<!\\d)((?:19|20)\\d{2})-?(0[1-9]|1[0-2])-?(0[1-9]|[12]\\d|3[01])(?!\\d)");
+    private static final Pattern DATE_PREFIX = Pattern.compile("^\\d{4}-\\d{2}-\\d{2}");
+
+    private final List<Partition> partitions = new ArrayList<>();
+    private boolean dateRangesInferred;     // guarded by this
+
+    /**
+     * @param files the partition files; each must be a (possibly gzipped) .csv, .json, .jsonl or .ndjson file
+     */
+    public PartitionedCovidDataReader(List<Path> files) {
+        for (Path file : files) {
+            partitions.add(new Partition(file));
+        }
+    }
+
+    /**
+     * Expands a --covid argument into partition files. A directory yields all its
+     * .csv, .json, .jsonl and .ndjson files (optionally gzipped); a path whose last element contains
+     * glob characters yields the matching files in its parent directory.
+     *
+     * @return the matching files in name order, or null if the argument is a plain file path
+     */
+    public static List<Path> resolvePartitions(String spec) throws IOException {
+        Path path = Paths.get(spec);
+        String name = path.getFileName() != null ? path.getFileName().toString() : "";
+        boolean glob = name.matches(".*[*?\\[{].*");
+
+        if (!glob && !Files.isDirectory(path)) return null;
+
+        Path directory = glob ? (path.getParent() != null ? path.getParent() : Paths.get(".")) : path;
+        PathMatcher matcher = directory.getFileSystem().getPathMatcher("glob:" + (glob ? name : "*"));
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                if (!Files.isRegularFile(file) || !matcher.matches(file.getFileName())) continue;
+                if (formatOf(file) != null) files.add(file);
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+
+    /**
+     * Reads all partitions in parallel and returns their records in partition order.
+     */
+    @Override
+    public List<CovidRecord> getCovidData() {
+        List<CovidRecord> covidData = new ArrayList<>();
+        readCovidData(covidData::add);
+        return covidData;
+    }
+
+    @Override
+    public void readCovidData(Consumer<CovidRecord> sink) {
+        readPartitions(partitions, sink);
+    }
+
+    /**
+     * Reads only the partitions whose date range covers the date, or whose range is unknown.
+     */
+    @Override
+    public void readCovidData(String date, Consumer<CovidRecord> sink) {
+        inferDateRanges();
+        List<Partition> selected = new ArrayList<>();
+        for (Partition partition : partitions) {
+            if (partition.mayContain(date)) selected.add(partition);
+        }
+        readPartitions(selected, sink);
+    }
+
+    /**
+     * @return the number of partitions
+     */
+    public int getPartitionCount() {
+        return partitions.size();
+    }
+
+    /**
+     * Infers the date ranges of all partitions once, in parallel, since a scan may have to read a partition.
+     */
+    private synchronized void inferDateRanges() {
+        if (dateRangesInferred) return;
+        runInParallel(partitions, partition -> {
+            partition.inferDateRange();
+            return null;
+        });
+        dateRangesInferred = true;
+    }
+
+    /**
+     * Reads the partitions in parallel, one thread per core, and feeds their records to the sink
+     * from this thread, in partition order.
+     */
+    private static void readPartitions(List<Partition> selected, Consumer<CovidRecord> sink) {
+        if (selected.isEmpty()) return;
+
+        int threads = Math.min(selected.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Deque<Future<List<CovidRecord>>> pending = new ArrayDeque<>();
+        try {
+            for (int i = 0; i < selected.size(); i++) {
+                Partition partition = selected.get(i);
+                pending.add(executor.submit(partition::read));
+
+                // keep a bounded number of partitions in memory; the sink is fed from this thread, in order
+                boolean last = i == selected.size() - 1;
+                while (pending.size() > threads * 2 || (last && !pending.isEmpty())) {
+                    pending.removeFirst().get().forEach(sink);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reading COVID partitions", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to read COVID partition: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the task on every partition with one thread per core and returns the results in order.
+     */
+    private static <T> List<T> runInParallel(List<Partition> selected, PartitionTask<T> task) {
+        List<T> results = new ArrayList<>();
+        if (selected.isEmpty()) return results;
+
+        int threads = Math.min(selected.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (Partition partition : selected) {
+                futures.add(executor.submit(() -> task.run(partition)));
+            }
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reading COVID partitions", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to read COVID partition: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        return results;
+    }
+
+    /**
+     * @return "csv", "json" or "jsonl" from the file name (ignoring a .gz suffix), or null for other files
+     */
+    private static String formatOf(Path file) {
+        String name = CompressedInput.stripCompressionExtension(file.getFileName().toString()).toLowerCase();
+        if (name.endsWith(".csv")) return "csv";
+        if (name.endsWith(".json")) return "json";
+        if (name.endsWith(".jsonl") || name.endsWith(".ndjson")) return "jsonl";
+        return null;
+    }
+
+    private interface PartitionTask<T> {
+        T run(Partition partition) throws Exception;
+    }
+
+    /**
+     * One partition file and the range of dates (YYYY-MM-DD) it holds; null bounds mean unknown.
+     */
+    private static class Partition {
+
+        private final Path file;
+        private String firstDate;
+        private String lastDate;
+
+        Partition(Path file) {
+            this.file = file;
+        }
+
+        /**
+         * Reads the partition through its reader's sink, so only the records are held.
+         */
+        List<CovidRecord> read() throws IOException {
+            List<CovidRecord> records = new ArrayList<>();
+            Reader reader = createReader();
+            try {
+                reader.readCovidData(records::add);
+            } finally {
+                reader.close();
+            }
+            return records;
+        }
+
+        private Reader createReader() throws IOException {
+            if ("csv".equals(formatOf(file))) {
+                return new CSVCovidDataReader(new CSVFileReader(new CharacterReader(file.toString())));
+            }
+            if ("jsonl".equals(formatOf(file))) {
+                return new NDJSONCovidDataReader(file.toString());
+            }
+            return new JSONCovidDataReader(file.toString());
+        }
+
+        boolean mayContain(String date) {
+            if (firstDate == null || lastDate == null) return true;
+            return date.compareTo(firstDate) >= 0 && date.compareTo(lastDate) <= 0;
+        }
+
+        /**
+         * Takes the date range from the file name if it contains one or two dates,
+         * otherwise scans the timestamp column of a CSV partition.
+         */
+        void inferDateRange() throws IOException {
+            Matcher matcher = FILE_NAME_DATE.matcher(file.getFileName().toString());
+            List<String> dates = new ArrayList<>();
+            while (matcher.find()) {
+                String date = matcher.group(1) + "-" + matcher.group(2) + "-" + matcher.group(3);
+                try {
+                    LocalDate.parse(date);      // rejects e.g. 2021-02-30
+                    dates.add(date);
+                } catch (DateTimeParseException e) {
+                    // not a date, so it says nothing about the partition's range
+                }
+            }
+            if (!dates.isEmpty()) {
+                dates.sort(null);
+                firstDate = dates.get(0);
+                lastDate = dates.get(dates.size() - 1);
+                return;
+            }
+
+            // JSON partitions without a date in the name are always read
+            if (!"csv".equals(formatOf(file))) return;
+            try {
+                scanDateRange();
+            } catch (IOException e) {
+                // a malformed partition is simply never pruned; its errors surface when it is read
+                firstDate = null;
+                lastDate = null;
+            }
+        }
+
+        private void scanDateRange() throws IOException {
+            try (CharacterReader characters = new CharacterReader(file.toString())) {
+                CSVFileReader reader = new CSVFileReader(characters);
+                String[] header = reader.readRow();
+                if (header == null) return;
+
+                int timestampIndex = -1;
+                for (int i = 0; i < header.length; i++) {
+                    if (header[i].trim().equalsIgnoreCase("etl_timestamp")) timestampIndex = i;
+                }
+                if (timestampIndex < 0) return;
+
+                reader.setProjection(timestampIndex);
+                String[] row;
+                while ((row = reader.readRow()) != null) {
+                    if (row.length <= timestampIndex) continue;
+                    String timestamp = row[timestampIndex].trim();
+                    if (!DATE_PREFIX.matcher(timestamp).find()) continue;
+
+                    String date = timestamp.substring(0, 10);
+                    if (firstDate == null || date.compareTo(firstDate) < 0) firstDate = date;
+                    if (lastDate == null || date.compareTo(lastDate) > 0) lastDate = date;
+                }
+            }
+        }
+    }
+}
@@ -7,12 +7,14 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
 
 /**
  * PopulationReader is responsible for reading population data from a CSV file
  * and converting it into a list of Population objects.
  */
-public class PopulationReader {
+public class PopulationReader implements PopulationSource {
 
     private final CSVFileReader reader;
 
@@ -23,58 +25,101 @@ public class PopulationReader {
     /**
      * Reads the population data from the CSV file.
      */
+    @Override
     public List<Population> getPopulationData() {
-
         List<Population> populationData = new ArrayList<>();
-        Map<String, Integer> headerMap = new HashMap<>();
+        readPopulationData(populationData::add);
+        return populationData;
+    }
 
-        try {
-            // Read and validate header row
-            String[] header = reader.readRow();
-            if (header == null) {
-                throw new IOException("CSV file is empty or missing header.");
-            }
+    /**
+     * Reads the population data from the CSV file, passing each valid record
+     * to the sink as soon as its row is parsed.
+     *
+     * @param sink receives the records in file order
+     */
+    @Override
+    public void readPopulationData(Consumer<Population> sink) {
+        populationSpliterator().forEachRemaining(sink);
+    }
 
-            // Map column names to their indices (case-insensitive)
-            for (int i = 0; i < header.length; i++) {
-                headerMap.put(header[i].trim().toLowerCase(), i);
-            }
+    /**
+     * Returns the valid records of the CSV, each parsed only when it is requested.
+     */
+    @Override
+    public Spliterator<Population> populationSpliterator() {
+        return new RecordSpliterator<>() {
 
-            // Get column indices for required fields
-            Integer zipIndex = headerMap.get("zip_code");
-            Integer populationIndex = headerMap.get("population");
+            private boolean started;
+            private Integer zipIndex;
+            private Integer populationIndex;
 
-            // Ensure required fields exist in the header
-            if (zipIndex == null || populationIndex == null) {
-                throw new IOException("Missing required headers: zip_code and/or population");
+            @Override
+            protected Population readNext() {
+                try {
+                    if (!started) {
+                        started = true;
+                        readHeader();
+                    }
+                    if (zipIndex == null) return null;
+
+                    String[] row;
+                    // Process each row in the CSV file until a valid one is found
+                    while ((row = reader.readRow()) != null) {
+
+                        // Skip rows that are too short to contain all required fields
+                        if (row.length <= Math.max(zipIndex, populationIndex)) continue;
+
+                        String zip = row[zipIndex].trim();
+                        String popStr = row[populationIndex].trim();
+
+                        // Validate and extract ZIP code
+                        if (!zip.matches("\\d{5}")) continue;
+
+                        try {
+                            // Parse population and return the record
+                            int population = Integer.parseInt(popStr);
+                            return new Population(zip, population);
+                        } catch (NumberFormatException e) {
+                            // Skip invalid population values
+                        }
+                    }
+
+                } catch (IOException e) {
+                    zipIndex = null;    // end the stream
+                    System.err.println("Error reading CSV: " + e.getMessage());
+                    e.printStackTrace();
+                }
+                return null;
             }
 
-            String[] row;
-            // Process each row in the CSV file
-            while ((row = reader.readRow()) != null) {
+            private void readHeader() throws IOException {
+                Map<String, Integer> headerMap = new HashMap<>();
 
-                // Skip rows that are too short to contain all required fields
-                if (row.length <= Math.max(zipIndex, populationIndex)) continue;
+                // Read and validate header row
+                String[] header = reader.readRow();
+                if (header == null) {
+                    throw new IOException("CSV file is empty or missing header.");
+                }
 
-                String zip = row[zipIndex].trim();
-                String popStr = row[populationIndex].trim();
+                // Map column names to their indices (case-insensitive)
+                for (int i = 0; i < header.length; i++) {
+                    headerMap.put(header[i].trim().toLowerCase(), i);
+                }
 
-                // Validate and extract ZIP code
-                if (!zip.matches("\\d{5}")) continue;
+                // Get column indices for required fields
+                Integer zip = headerMap.get("zip_code");
+                populationIndex = headerMap.get("population");
 
-                try {
-                    // Parse population and add to the result list
-                    int population = Integer.parseInt(popStr);
-                    populationData.add(new Population(zip, population));
-                } catch (NumberFormatException e) {
-                    // Skip invalid population values
+                // Ensure required fields exist in the header
+                if (zip == null || populationIndex == null) {
+                    throw new IOException("Missing required headers: zip_code and/or population");
                 }
-            }
 
-        } catch (IOException e) {
-            System.err.println("Error reading CSV: " + e.getMessage());
-            e.printStackTrace();
-        }
-        return populationData;
+                // Only materialize the columns used here; the rest are skipped by the tokenizer
+                reader.setProjection(zip, populationIndex);
+                zipIndex = zip;
+            }
+        };
     }
 }
@@ -0,0 +1,44 @@
+package dataanalysis.datamanagement;
+
+import dataanalysis.util.Population;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A population input: a CSV read by {@link PopulationReader} or a converted file read by
+ * {@link ColumnarPopulationReader}.
+ */
+public interface PopulationSource {
+
+    /**
+     * @return the valid population records of the input
+     */
+    default List<Population> getPopulationData() {
+        List<Population> populationData = new ArrayList<>();
+        readPopulationData(populationData::add);
+        return populationData;
+    }
+
+    /**
+     * Passes each valid record to the sink as soon as it is read.
+     *
+     * @param sink receives the records in file order
+     */
+    default void readPopulationData(Consumer<Population> sink) {
+        populationSpliterator().forEachRemaining(sink);
+    }
+
+    /**
+     * Returns the valid records as a pull-based stream, each read only when it is requested.
+     */
+    Spliterator<Population> populationSpliterator();
+
+    /**
+     * Releases the files the reader keeps open between reads. It must not be read afterwards.
+     */
+    default void close() {
+    }
+}
@@ -2,78 +2,377 @@ package dataanalysis.datamanagement;
 
 import dataanalysis.util.Property;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * PropertyReader reads a CSV file containing property data
  * and returns a list of valid Property objects.
  */
-public class PropertyReader {
+public class PropertyReader implements PropertySource {
 
+    public static final String SIDECAR_EXTENSION = ".zipidx";
+
+    // size of the blocks the file is split into for block sampling
+    public static final int SAMPLE_BLOCK_SIZE = 1 << 16;
+
+    // The stream given to the constructor; null when constructed from a file name
     private final CSVFileReader reader;
 
+    // Set when constructed from a file name; enables reading the rows of a single ZIP.
+    // Each whole-file read then opens the file itself and closes it at the end, so lazy and
+    // sampled loads, which never read the whole file, hold no file open.
+    private final String fileName;
+    private CSVRangeIndex zipIndex;
+
+    // When true, the whole-file read tokenizes, converts and passes on rows in overlapping stages
+    private boolean pipelined;
+
     public PropertyReader(CSVFileReader reader) {
         this.reader = reader;
+        this.fileName = null;
+    }
+
+    public PropertyReader(String fileName) {
+        this.reader = null;
+        this.fileName = fileName;
     }
 
     /**
      * Reads and parses property data from the CSV file.
      */
+    @Override
     public List<Property> getPropertyData() {
         List<Property> properties = new ArrayList<>();
-        Map<String, Integer> headerMap = new HashMap<>();
+        readPropertyData(properties::add);
+        return properties;
+    }
+
+    /**
+     * Reads and parses property data from the CSV file, passing each valid
+     * property to the sink as soon as its row is parsed. When pipelined, rows are
+     * tokenized, converted and passed on by overlapping stages.
+     *
+     * @param sink receives the properties in file order
+     */
+    @Override
+    public void readPropertyData(Consumer<Property> sink) {
+        if (!pipelined) {
+            propertySpliterator().forEachRemaining(sink);
+            return;
+        }
+        CSVFileReader file = null;
+        try {
+            file = openFile();
+            Columns columns = readHeader(file);
+            IngestPipeline.run("properties", file, columns::convert, sink);
+        } catch (IOException e) {
+            System.err.println("Error reading property CSV: " + e.getMessage());
+        } finally {
+            closeOpened(file);
+        }
+    }
+
+    /**
+     * @return the stream given to the constructor, or a newly opened reader of the file
+     */
+    private CSVFileReader openFile() throws IOException {
+        return reader != null ? reader : new CSVFileReader(new CharacterReader(fileName));
+    }
+
+    /**
+     * Closes a reader opened here; the stream given to the constructor is left to its owner.
+     */
+    private void closeOpened(CSVFileReader opened) {
+        if (opened == null || opened == reader) return;
+        try {
+            opened.close();
+        } catch (IOException e) {
+            // the rows have been read, so nothing is lost
+        }
+    }
 
+    /**
+     * Reads only the properties of one ZIP code, by seeking to the rows listed for it
+     * in a per-ZIP index of the file. The index is built on first use and persisted
+     * next to the file (properties.csv.zipidx).
+     *
+     * @param zip the 5-digit ZIP code
+     * @param sink receives the properties of the ZIP in file order
+     */
+    @Override
+    public void readPropertyData(String zip, Consumer<Property> sink) {
         try {
-            // Read and validate header row
-            String[] header = reader.readRow();
-            if (header == null) throw new IOException("CSV file is empty or missing header.");
+            CharacterReader rows = getZipIndex().openRows(fileName, zip);
+            if (rows == null) return;
+            readRows(new CSVFileReader(rows), property -> {
+                if (zip.equals(property.getZipCode())) sink.accept(property);
+            });
+        } catch (IOException e) {
+            System.err.println("Error reading property CSV: " + e.getMessage());
+        }
+    }
 
-            // Map column names to their indices (case-insensitive)
-            for (int i = 0; i < header.length; i++) {
-                headerMap.put(header[i].trim().toLowerCase(), i);
+    /**
+     * Reads a random sample of the file's blocks instead of the whole file. The rows after the
+     * header are split into blocks of {@link #SAMPLE_BLOCK_SIZE} bytes, and a row belongs to the
+     * block it starts in; each sampled block is read by seeking to it. Every sampled block is
+     * passed to the sink, even one without valid rows, so that the sink sees the sample size.
+     * Like the per-ZIP reads this needs a plain file; see {@link #canReadByZip()}.
+     *
+     * <p>A block is assumed to start at the first line break in it, so a quoted value spanning
+     * lines at a block boundary can split a row; the halves fail validation and are dropped.
+     *
+     * @param fraction the share of the blocks to read, in (0, 1]; at least two blocks are read
+     * @param random chooses the blocks
+     * @param blockSink receives the valid properties of each sampled block, in file order
+     * @return the number of blocks the file has
+     */
+    @Override
+    public int readPropertyBlocks(double fraction, Random random, Consumer<List<Property>> blockSink)
+            throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r")) {
+            long dataStart = findLineEnd(file, 0);
+            byte[] header = readBytes(file, 0, dataStart);
+            long length = file.length() - dataStart;
+            int blocks = (int) Math.max(1, (length + SAMPLE_BLOCK_SIZE - 1) / SAMPLE_BLOCK_SIZE);
+            int sampled = (int) Math.min(blocks, Math.max(2, Math.round(fraction * blocks)));
+
+            for (int block : chooseBlocks(blocks, sampled, random)) {
+                long start = dataStart + (long) block * SAMPLE_BLOCK_SIZE;
+                long end = Math.min(file.length(), start + SAMPLE_BLOCK_SIZE);
+
+                // the rows starting within [start, end), i.e. after the line break before start
+                long from = block == 0 ? start : findLineEnd(file, start - 1);
+                long to = findLineEnd(file, end - 1);
+                List<Property> properties = new ArrayList<>();
+                if (from < end) {
+                    InputStreamReader rows = new InputStreamReader(new SequenceInputStream(
+                            new ByteArrayInputStream(header), new ByteArrayInputStream(readBytes(file, from, to))),
+                            StandardCharsets.UTF_8);
+                    readRows(new CSVFileReader(new CharacterReader(rows)), properties::add);
+                }
+                blockSink.accept(properties);
             }
+            return blocks;
+        }
+    }
 
-            // Get column indices for required fields
-            Integer zipIndex = headerMap.get("zip_code");
-            Integer valueIndex = headerMap.get("market_value");
-            Integer areaIndex = headerMap.get("total_livable_area");
+    /**
+     * Chooses k distinct blocks uniformly at random (Floyd's algorithm), in file order.
+     */
+    static SortedSet<Integer> chooseBlocks(int blocks, int k, Random random) {
+        SortedSet<Integer> chosen = new TreeSet<>();
+        for (int i = blocks - k; i < blocks; i++) {
+            int candidate = random.nextInt(i + 1);
+            chosen.add(chosen.contains(candidate) ? i : candidate);
+        }
+        return chosen;
+    }
 
-            // Ensure required fields exist in the header
-            if (zipIndex == null || valueIndex == null || areaIndex == null) {
-                throw new IOException("Missing required headers: zip_code, market_value, total_livable_area");
+    /**
+     * @return the offset just after the first line break at or after position, or the file length
+     */
+    private static long findLineEnd(RandomAccessFile file, long position) throws IOException {
+        byte[] buffer = new byte[4096];
+        file.seek(position);
+        int read;
+        while ((read = file.read(buffer)) > 0) {
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n') return position + i + 1;
             }
+            position += read;
+        }
+        return position;
+    }
+
+    private static byte[] readBytes(RandomAccessFile file, long start, long end) throws IOException {
+        byte[] bytes = new byte[(int) (end - start)];
+        file.seek(start);
+        file.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * @return true if the reader was constructed from a plain (uncompressed) file, which per-ZIP reads need
+     */
+    @Override
+    public boolean canReadByZip() {
+        try {
+            return fileName != null && !CompressedInput.isCompressed(fileName);
+        } catch (IOException e) {
+            return false;
+        }
+    }
 
-            String[] row;
-            // Process each row in the CSV file
-            while ((row = reader.readRow()) != null) {
+    /**
+     * @return the number of rows with a valid ZIP code, taken from the per-ZIP index
+     */
+    @Override
+    public int getIndexedRowCount() throws IOException {
+        return getZipIndex().getRowCount();
+    }
 
-                // Skip rows that are too short to contain all required fields
-                if (row.length <= Math.max(zipIndex, Math.max(valueIndex, areaIndex))) continue;
+    /**
+     * @return the ZIP codes that have at least one row, taken from the per-ZIP index
+     */
+    @Override
+    public Set<String> getIndexedZipCodes() throws IOException {
+        return getZipIndex().getKeys();
+    }
 
-                // Extract and validate a 5-digit ZIP code
-                String zipRaw = row[zipIndex].trim();
-                String zip = extractValidZip(zipRaw);
-                if (zip == null) continue; // skip malformed zip
+    private CSVRangeIndex getZipIndex() throws IOException {
+        if (zipIndex == null) {
+            zipIndex = CSVRangeIndex.loadOrBuild(fileName, "zip_code", SIDECAR_EXTENSION,
+                    PropertyReader::extractValidZip);
+        }
+        return zipIndex;
+    }
 
-                // Extract market value and livable area fields
-                String marketStr = row[valueIndex].trim();
-                String areaStr = row[areaIndex].trim();
+    /**
+     * Returns the valid properties of the CSV, each parsed only when it is requested.
+     * A file is opened with the first request and closed once the last property has been read.
+     */
+    @Override
+    public Spliterator<Property> propertySpliterator() {
+        return rowSpliterator(this::openFile);
+    }
 
-                // Convert to nullable integers
-                Integer marketValue = parseNullableInt(marketStr);
-                Integer livableArea = parseNullableInt(areaStr);
+    /**
+     * Enables the pipelined ingest of {@link #readPropertyData(Consumer)}.
+     */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    /**
+     * Parses the header and rows of the given CSV, passing each valid property to the sink.
+     */
+    private void readRows(CSVFileReader reader, Consumer<Property> sink) {
+        rowSpliterator(() -> reader).forEachRemaining(sink);
+    }
 
-                // Create a Property object and add it to the result list
-                Property property = new Property(zip, marketValue, livableArea);
-                properties.add(property);
+    /**
+     * Returns the valid properties of the opened CSV, opening it and parsing its header with the
+     * first request. A file opened here is closed at the end of the rows or on an error.
+     */
+    private Spliterator<Property> rowSpliterator(CSVSource source) {
+        return new RecordSpliterator<>() {
+
+            private boolean started;
+            private CSVFileReader reader;
+            private Columns columns;
+
+            @Override
+            protected Property readNext() {
+                try {
+                    if (!started) {
+                        started = true;
+                        reader = source.open();
+                        columns = readHeader(reader);
+                    }
+                    if (columns == null) return null;
+
+                    String[] row;
+                    // Process each row in the CSV file until a valid one is found
+                    while ((row = reader.readRow()) != null) {
+                        Property property = columns.convert(row);
+                        if (property != null) return property;
+                    }
+
+                } catch (IOException e) {
+                    System.err.println("Error reading property CSV: " + e.getMessage());
+                }
+                columns = null;     // end the stream
+                closeOpened(reader);
+                reader = null;
+                return null;
             }
+        };
+    }
 
-        } catch (IOException e) {
-            System.err.println("Error reading property CSV: " + e.getMessage());
+    /**
+     * Opens the CSV a spliterator reads.
+     */
+    private interface CSVSource {
+        CSVFileReader open() throws IOException;
+    }
+
+    /**
+     * Reads the header row of the given CSV and locates the columns used here.
+     */
+    private static Columns readHeader(CSVFileReader reader) throws IOException {
+        Map<String, Integer> headerMap = new HashMap<>();
+
+        // Read and validate header row
+        String[] header = reader.readRow();
+        if (header == null) throw new IOException("CSV file is empty or missing header.");
+
+        // Map column names to their indices (case-insensitive)
+        for (int i = 0; i < header.length; i++) {
+            headerMap.put(header[i].trim().toLowerCase(), i);
         }
 
-        return properties;
+        // Get column indices for required fields
+        Integer zipIndex = headerMap.get("zip_code");
+        Integer valueIndex = headerMap.get("market_value");
+        Integer areaIndex = headerMap.get("total_livable_area");
+
+        // Ensure required fields exist in the header
+        if (zipIndex == null || valueIndex == null || areaIndex == null) {
+            throw new IOException("Missing required headers: zip_code, market_value, total_livable_area");
+        }
+
+        // Only the three columns used here are materialized; the rest are skipped by the tokenizer
+        reader.setProjection(zipIndex, valueIndex, areaIndex);
+
+        return new Columns(zipIndex, valueIndex, areaIndex);
+    }
+
+    /**
+     * The column positions of the fields used here; converts rows on any thread.
+     */
+    private static class Columns {
+
+        private final int zipIndex;
+        private final int valueIndex;
+        private final int areaIndex;
+
+        Columns(int zipIndex, int valueIndex, int areaIndex) {
+            this.zipIndex = zipIndex;
+            this.valueIndex = valueIndex;
+            this.areaIndex = areaIndex;
+        }
+
+        /**
+         * @return the property of a row, or null if the row is invalid
+         */
+        Property convert(String[] row) {
+            // Skip rows that are too short to contain all required fields
+            if (row.length <= Math.max(zipIndex, Math.max(valueIndex, areaIndex))) return null;
+
+            // Extract and validate a 5-digit ZIP code
+            String zipRaw = row[zipIndex].trim();
+            String zip = extractValidZip(zipRaw);
+            if (zip == null) return null; // skip malformed zip
+
+            // Extract market value and livable area fields
+            String marketStr = row[valueIndex].trim();
+            String areaStr = row[areaIndex].trim();
+
+            // Convert to nullable integers
+            Integer marketValue = parseNullableInt(marketStr);
+            Integer livableArea = parseNullableInt(areaStr);
+
+            // Create the Property object for this row
+            return new Property(zip, marketValue, livableArea);
+        }
     }
 
     /**
@@ -81,7 +380,7 @@ public class PropertyReader {
      * @param rawZip the raw ZIP code string from the file
      * @return a valid 5-digit ZIP code, or null if invalid
      */
-    private String extractValidZip(String rawZip) {
+    private static String extractValidZip(String rawZip) {
         if (rawZip == null || rawZip.length() < 5) return null;
 
         String zip = rawZip.substring(0, 5);
@@ -96,7 +395,7 @@ public class PropertyReader {
      * @param value the string value to parse
      * @return Integer value or null
      */
-    private Integer parseNullableInt(String value) {
+    private static Integer parseNullableInt(String value) {
         if (value == null || value.trim().isEmpty()) return null;
         try {
             return (int) Double.parseDouble(value.trim());
@@ -0,0 +1,80 @@
+package dataanalysis.datamanagement;
+
+import dataanalysis.util.Property;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A property input: a CSV read by {@link PropertyReader} or a converted file read by
+ * {@link ColumnarPropertyReader}. Besides whole-file reads, an input that {@link #canReadByZip()}
+ * reads single ZIP codes and samples of blocks without reading the rest of the file.
+ */
+public interface PropertySource {
+
+    /**
+     * @return the valid properties of the input
+     */
+    default List<Property> getPropertyData() {
+        List<Property> properties = new ArrayList<>();
+        readPropertyData(properties::add);
+        return properties;
+    }
+
+    /**
+     * Passes each valid property to the sink as soon as it is read.
+     *
+     * @param sink receives the properties in file order
+     */
+    void readPropertyData(Consumer<Property> sink);
+
+    /**
+     * Reads only the properties of one ZIP code.
+     *
+     * @param zip the 5-digit ZIP code
+     * @param sink receives the properties of the ZIP in file order
+     */
+    void readPropertyData(String zip, Consumer<Property> sink);
+
+    /**
+     * Reads a random sample of the input's blocks instead of the whole input. Every sampled block
+     * is passed to the sink, even one without valid properties, so that the sink sees the sample size.
+     *
+     * @param fraction the share of the blocks to read, in (0, 1]; at least two blocks are read
+     * @param random chooses the blocks
+     * @param blockSink receives the valid properties of each sampled block, in file order
+     * @return the number of blocks the input has
+     */
+    int readPropertyBlocks(double fraction, Random random, Consumer<List<Property>> blockSink) throws IOException;
+
+    /**
+     * @return true if the input can be read by ZIP and sampled by block
+     */
+    boolean canReadByZip();
+
+    /**
+     * @return the number of properties with a valid ZIP code, without reading them
+     */
+    int getIndexedRowCount() throws IOException;
+
+    /**
+     * @return the ZIP codes that have at least one property, without reading the properties
+     */
+    Set<String> getIndexedZipCodes() throws IOException;
+
+    /**
+     * Returns the valid properties as a pull-based stream, each read only when it is requested.
+     */
+    Spliterator<Property> propertySpliterator();
+
+    /**
+     * Releases the files the reader keeps open between reads. It must not be read afterwards.
+     */
+    default void close() {
+    }
+}
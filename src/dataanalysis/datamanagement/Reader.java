@@ -2,8 +2,35 @@ package dataanalysis.datamanagement;
 
 import dataanalysis.util.CovidRecord;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
 
 public interface Reader {
 
     List<CovidRecord> getCovidData();
+
+    /**
+     * Passes each valid record to the sink. Readers that can parse incrementally
+     * override this so the records never need to be held in a list.
+     *
+     * @param sink receives the records in file order
+     */
+    default void readCovidData(Consumer<CovidRecord> sink) {
+        getCovidData().forEach(sink);
+    }
+
+    /**
+     * Returns the valid records as a pull-based stream, which lets a caller stop early or
+     * hand batches of records to other threads. Readers that can parse incrementally
+     * override this so records are only parsed as they are requested.
+     */
+    default Spliterator<CovidRecord> covidSpliterator() {
+        return getCovidData().spliterator();
+    }
+
+    /**
+     * Releases the files the reader keeps open between reads. It must not be read afterwards.
+     */
+    default void close() {
+    }
 }
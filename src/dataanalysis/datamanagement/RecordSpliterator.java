@@ -0,0 +1,34 @@
+package dataanalysis.datamanagement;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Pull-based stream of the valid records of an input, parsed one at a time as they are requested.
+ * A consumer can stop early simply by not asking for more, and splitting hands out batches of
+ * already-parsed records, so a parallel stream can process one batch while the next is parsed.
+ *
+ * @param <T> the record type
+ */
+abstract class RecordSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+
+    RecordSpliterator() {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    /**
+     * Parses up to the next valid record, skipping invalid ones.
+     *
+     * @return the record, or null at the end of the input or after an error has been reported
+     */
+    protected abstract T readNext();
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        T next = readNext();
+        if (next == null) return false;
+        action.accept(next);
+        return true;
+    }
+}
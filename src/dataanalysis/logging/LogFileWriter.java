@@ -2,12 +2,19 @@ package dataanalysis.logging;
 
 import java.io.FileOutputStream;
 import java.io.PrintWriter;
+import java.util.List;
 
 public class LogFileWriter {
 
     // Singleton instance of this class
     private static LogFileWriter instance = new LogFileWriter();
 
+    // Marks slow-query trace lines written by logSlowQuery
+    public static final String SLOW_QUERY_TAG = "SLOW-QUERY";
+
+    // Marks completed menu action lines written by logAction
+    public static final String ACTION_TAG = "ACTION";
+
     // init fields
     private static PrintWriter out;    // stores printer
     private static String logFilePath;     // store file path to log file
@@ -78,6 +85,28 @@ public class LogFileWriter {
         out.flush();
     }
 
+    /**
+     * writes a slow-query trace line; the SLOW-QUERY tag keeps it apart from the logged inputs
+     * @param trace the structured trace, as key=value pairs
+     */
+    public void logSlowQuery(String trace) {
+        log(SLOW_QUERY_TAG + " " + trace);
+    }
+
+    /**
+     * writes one line for a completed menu action; the ACTION tag, the menu number and the answers are
+     * separated by tabs, since an answer such as a metric expression may contain spaces
+     * @param choice the menu number of the action
+     * @param answers the valid prompt answers the action ran with, in prompt order
+     */
+    public void logAction(int choice, List<String> answers) {
+        StringBuilder line = new StringBuilder(ACTION_TAG).append('\t').append(choice);
+        for (String answer : answers) {
+            line.append('\t').append(answer.replace('\t', ' '));
+        }
+        log(line.toString());
+    }
+
     // singleton accessor method
     public static LogFileWriter getInstance() {
         return instance;
@@ -0,0 +1,131 @@
+package dataanalysis.logging;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Opt-in latency tracing of interactive actions. While tracing is enabled, each action
+ * records nanosecond timings by phase on its thread, and an action whose processing time
+ * reaches the threshold is written to the log as one structured slow-query line.
+ * Time spent waiting for user input is not counted.
+ *
+ * <p>When tracing is disabled every method returns immediately, so the calls can stay in place.
+ */
+public final class QueryTrace {
+
+    /**
+     * The phases an action's processing time is split into.
+     */
+    public enum Phase {
+        CACHE_LOOKUP, SCAN, COMPUTE, RENDER
+    }
+
+    // negative while tracing is disabled
+    private static volatile long thresholdNanos = -1;
+
+    private static final ThreadLocal<QueryTrace> CURRENT = new ThreadLocal<>();
+
+    private final String action;
+    private final long started = System.nanoTime();
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private final List<String> calls = new ArrayList<>();
+    private final List<String> arguments = new ArrayList<>();
+    private long pausedAt = -1;
+    private long pausedNanos;
+
+    private QueryTrace(String action) {
+        this.action = action;
+    }
+
+    /**
+     * Enables tracing; actions taking at least the threshold are logged, so 0 logs every action.
+     */
+    public static void enable(long thresholdMillis) {
+        thresholdNanos = thresholdMillis * 1_000_000;
+    }
+
+    /**
+     * Starts tracing an action on the current thread.
+     */
+    public static void begin(String action) {
+        if (thresholdNanos < 0) return;
+        CURRENT.set(new QueryTrace(action));
+    }
+
+    /**
+     * Ends the action traced on the current thread and logs it if it was slow.
+     */
+    public static void end() {
+        QueryTrace trace = CURRENT.get();
+        if (trace == null) return;
+        CURRENT.remove();
+
+        long total = System.nanoTime() - trace.started - trace.pausedNanos;
+        if (total >= thresholdNanos) {
+            LogFileWriter.getInstance().logSlowQuery(trace.format(total));
+        }
+    }
+
+    /**
+     * @return a start time to pass to {@link #record}, or 0 when no action is traced
+     */
+    public static long start() {
+        return CURRENT.get() != null ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Adds the time since startNanos to a phase of the current action.
+     */
+    public static void record(Phase phase, long startNanos) {
+        QueryTrace trace = CURRENT.get();
+        if (trace == null || startNanos == 0) return;
+        trace.phaseNanos[phase.ordinal()] += System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Notes a processor call made by the current action.
+     */
+    public static void call(String name) {
+        QueryTrace trace = CURRENT.get();
+        if (trace != null) trace.calls.add(name);
+    }
+
+    /**
+     * Stops the clock while the action waits for user input.
+     */
+    public static void pause() {
+        QueryTrace trace = CURRENT.get();
+        if (trace != null && trace.pausedAt < 0) trace.pausedAt = System.nanoTime();
+    }
+
+    /**
+     * Restarts the clock after user input and records the input as an argument of the action.
+     */
+    public static void resume(String input) {
+        QueryTrace trace = CURRENT.get();
+        if (trace == null || trace.pausedAt < 0) return;
+        trace.pausedNanos += System.nanoTime() - trace.pausedAt;
+        trace.pausedAt = -1;
+        trace.arguments.add(input);
+    }
+
+    /**
+     * Formats the trace as space-separated key=value pairs; the time outside the phases is "other".
+     */
+    private String format(long total) {
+        StringBuilder line = new StringBuilder();
+        line.append("action=").append(action);
+        line.append(" args=\"").append(String.join(" ", arguments).replace("\"", "'")).append('"');
+        line.append(" calls=").append(calls.isEmpty() ? "-" : String.join(",", calls));
+        line.append(" total_ns=").append(total);
+
+        long traced = 0;
+        for (Phase phase : Phase.values()) {
+            long nanos = phaseNanos[phase.ordinal()];
+            traced += nanos;
+            line.append(' ').append(phase.name().toLowerCase()).append("_ns=").append(nanos);
+        }
+        line.append(" other_ns=").append(Math.max(0, total - traced));
+        return line.toString();
+    }
+}
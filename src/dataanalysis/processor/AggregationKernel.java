@@ -0,0 +1,55 @@
+package dataanalysis.processor;
+
+/**
+ * Sums and counts over primitive columns, used by Processor for the property scans.
+ * A vectorized implementation is used when the jdk.incubator.vector module is
+ * present at runtime (--add-modules jdk.incubator.vector); otherwise the scalar one.
+ */
+public interface AggregationKernel {
+
+    /**
+     * Sums the values whose presence flag is set.
+     *
+     * @param values the column values
+     * @param present the presence mask of the column
+     * @param length the number of rows to aggregate
+     * @return the sum of the present values
+     */
+    long maskedSum(int[] values, boolean[] present, int length);
+
+    /**
+     * Counts the rows whose presence flag is set.
+     *
+     * @param present the presence mask of the column
+     * @param length the number of rows to count
+     * @return the number of present values
+     */
+    int countPresent(boolean[] present, int length);
+
+    /**
+     * Sums and counts the present values of several columns in one pass over the rows.
+     *
+     * @param values the column values, one array per column
+     * @param present the presence masks, in the same order
+     * @param length the number of rows to aggregate
+     * @param sums the sum of the present values of each column is added here
+     * @param counts the number of present values of each column is added here
+     */
+    void maskedSums(int[][] values, boolean[][] present, int length, long[] sums, int[] counts);
+
+    /**
+     * Returns the vectorized kernel if the Vector API module is available, else the scalar kernel.
+     */
+    static AggregationKernel create() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                // loaded reflectively so the scalar path never links against the incubator module
+                return (AggregationKernel) Class.forName("dataanalysis.processor.VectorAggregationKernel")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // fall through to the scalar kernel
+            }
+        }
+        return new ScalarAggregationKernel();
+    }
+}
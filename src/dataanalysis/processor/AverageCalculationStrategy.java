@@ -4,4 +4,26 @@ import dataanalysis.util.Property;
 
 public interface AverageCalculationStrategy {
     int extractValue(Property property);
+
+    /**
+     * Extracts the value of the given property without collapsing missing values.
+     * Strategies that cannot tell a missing value apart keep the default, which
+     * treats every value as present.
+     *
+     * @param property The property from which to extract the value.
+     * @return The value of the property, or null if it was not provided.
+     */
+    default Integer extractNullableValue(Property property) {
+        return extractValue(property);
+    }
+
+    /**
+     * Returns the primitive column this strategy reads, letting Processor sum it
+     * with the aggregation kernel instead of extracting boxed values.
+     *
+     * @return the column read by the strategy, or null if it has none
+     */
+    default PropertyColumns.Field getField() {
+        return null;
+    }
 }
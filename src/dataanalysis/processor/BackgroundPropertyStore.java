@@ -0,0 +1,151 @@
+package dataanalysis.processor;
+
+import dataanalysis.util.Property;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+
+/**
+ * Loads the full property store on a background thread, once it is asked for. Queries wait
+ * until the load has finished, starting it first if nobody has. Used by the approximate mode,
+ * which answers from a sample until the exact data is there.
+ */
+public class BackgroundPropertyStore implements RetainingPropertyStore {
+
+    private final FutureTask<RetainingPropertyStore> load;
+    private volatile boolean started;
+    private AggregationKernel kernel;
+
+    /**
+     * @param loader reads the whole property file into a store; called once, on the background thread
+     */
+    public BackgroundPropertyStore(Supplier<RetainingPropertyStore> loader) {
+        this.load = new FutureTask<>(() -> {
+            RetainingPropertyStore store = loader.get();
+            synchronized (this) {
+                if (kernel != null) store.setAggregationKernel(kernel);
+            }
+            return store;
+        });
+    }
+
+    /**
+     * Starts the load on a background thread.
+     *
+     * @return false if it had already been started
+     */
+    public synchronized boolean start() {
+        if (started) return false;
+        started = true;
+        Thread thread = new Thread(load, "property-load");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * @return true once the load has succeeded and queries no longer wait
+     */
+    public boolean isLoaded() {
+        return load.state() == Future.State.SUCCESS;
+    }
+
+    private RetainingPropertyStore await() {
+        start();
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading the property data", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error loading the property data: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    @Override
+    public int size() {
+        return await().size();
+    }
+
+    /**
+     * @return the bytes of the loaded store, or 0 while the load has not finished; this does not wait
+     */
+    @Override
+    public long estimateBytes() {
+        if (!load.isDone()) return 0;
+        try {
+            return load.get().estimateBytes();
+        } catch (InterruptedException | ExecutionException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public int count(String zip) {
+        return await().count(zip);
+    }
+
+    @Override
+    public long sum(String zip, PropertyColumns.Field field) {
+        return await().sum(zip, field);
+    }
+
+    @Override
+    public int countPresent(String zip, PropertyColumns.Field field) {
+        return await().countPresent(zip, field);
+    }
+
+    @Override
+    public void sumPresent(String zip, PropertyColumns.Field[] fields, long[] sums, int[] counts) {
+        await().sumPresent(zip, fields, sums, counts);
+    }
+
+    @Override
+    public Integer min(String zip, PropertyColumns.Field field) {
+        return await().min(zip, field);
+    }
+
+    @Override
+    public Integer max(String zip, PropertyColumns.Field field) {
+        return await().max(zip, field);
+    }
+
+    @Override
+    public int[] getPresentValues(String zip, PropertyColumns.Field field) {
+        return await().getPresentValues(zip, field);
+    }
+
+    @Override
+    public Set<String> getZipCodes() {
+        return await().getZipCodes();
+    }
+
+    @Override
+    public List<Property> getProperties(String zip) {
+        return await().getProperties(zip);
+    }
+
+    @Override
+    public synchronized void setAggregationKernel(AggregationKernel kernel) {
+        this.kernel = kernel;
+        if (load.isDone()) await().setAggregationKernel(kernel);
+    }
+
+    /**
+     * Releases the loaded store; a load still running is left to finish and be collected.
+     */
+    @Override
+    public void close() {
+        if (load.isDone()) {
+            try {
+                load.get().close();
+            } catch (InterruptedException | ExecutionException e) {
+                // nothing was loaded, so there is nothing to release
+            }
+        }
+    }
+}
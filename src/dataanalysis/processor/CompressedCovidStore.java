@@ -0,0 +1,219 @@
+package dataanalysis.processor;
+
+import dataanalysis.util.CovidRecord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the COVID records compressed on the heap and aggregates them in their encoded form.
+ * <ul>
+ *   <li>Dates are run-length encoded. An ETL load gives all its rows one timestamp, so a run of rows
+ *       stores its date (yyyymmdd) once. The time of day is dropped, since queries only look at dates.</li>
+ *   <li>ZIP codes are dictionary encoded as ids in order of first appearance.</li>
+ *   <li>ZIP ids and counts are bit-packed in blocks of {@link #BLOCK_ROWS} rows. Each column of a block
+ *       uses the fewest bits that hold its values above the block's minimum.</li>
+ * </ul>
+ * A date query visits only the runs of that date and adds the packed counts into an array indexed
+ * by ZIP id, so it creates no records or strings until the result map is built.
+ */
+public class CompressedCovidStore implements CovidStore {
+
+    private static final int BLOCK_ROWS = 4096;
+
+    private final Map<String, Integer> zipIds = new HashMap<>();
+    private final List<String> zips = new ArrayList<>();
+
+    // run i covers the rows from runStarts[i] up to the next run's start, all on runDates[i]
+    private int[] runDates = new int[16];
+    private int[] runStarts = new int[16];
+    private int runs;
+    private Map<Integer, int[]> runsByDate = new HashMap<>();   // the run indexes of each date, built by finish
+
+    private final List<PackedBlock> blocks = new ArrayList<>();
+    private final int[] pendingZips = new int[BLOCK_ROWS];
+    private final int[] pendingPartial = new int[BLOCK_ROWS];
+    private final int[] pendingFull = new int[BLOCK_ROWS];
+    private int pending;
+    private int size;
+
+    @Override
+    public void add(CovidRecord record) {
+        int date = OffHeapCovidStore.encodeDate(record.getEtlTimestamp());
+        if (date < 0) return;   // the readers only pass validated timestamps
+
+        if (runs == 0 || runDates[runs - 1] != date) {
+            if (runs == runDates.length) {
+                runDates = Arrays.copyOf(runDates, runs * 2);
+                runStarts = Arrays.copyOf(runStarts, runs * 2);
+            }
+            runDates[runs] = date;
+            runStarts[runs] = size;
+            runs++;
+        }
+
+        Integer zipId = zipIds.get(record.getZipCode());
+        if (zipId == null) {
+            zipId = zips.size();
+            zipIds.put(record.getZipCode(), zipId);
+            zips.add(record.getZipCode());
+        }
+        pendingZips[pending] = zipId;
+        pendingPartial[pending] = record.getPartiallyVaccinated();
+        pendingFull[pending] = record.getFullyVaccinated();
+        pending++;
+        size++;
+        if (pending == BLOCK_ROWS) packPending();
+    }
+
+    /**
+     * Packs the last block and indexes the runs by date.
+     */
+    @Override
+    public void finish() {
+        if (pending > 0) packPending();
+
+        Map<Integer, List<Integer>> runLists = new HashMap<>();
+        for (int run = 0; run < runs; run++) {
+            runLists.computeIfAbsent(runDates[run], date -> new ArrayList<>()).add(run);
+        }
+        runsByDate = new HashMap<>();
+        for (Map.Entry<Integer, List<Integer>> entry : runLists.entrySet()) {
+            runsByDate.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Counts the packed blocks and run arrays as allocated, and each distinct ZIP once.
+     */
+    @Override
+    public long estimateBytes() {
+        long bytes = zips.size() * (HeapSizes.REFERENCE + HeapSizes.ZIP + HeapSizes.MAP_ENTRY + HeapSizes.BOXED)
+                + 2 * (HeapSizes.ARRAY + runDates.length * 4L) + 3 * (HeapSizes.ARRAY + BLOCK_ROWS * 4L);
+        for (int[] dateRuns : runsByDate.values()) {
+            bytes += HeapSizes.MAP_ENTRY + HeapSizes.BOXED + HeapSizes.ARRAY + dateRuns.length * 4L;
+        }
+        for (PackedBlock block : blocks) {
+            bytes += HeapSizes.REFERENCE + block.zips.bytes() + block.partial.bytes() + block.full.bytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public Map<String, Integer> getVaccinationCounts(String type, String date) {
+        Map<String, Integer> vaccinationCounts = new HashMap<>();
+
+        String lower = type.toLowerCase();
+        int target = date.length() == 10 ? OffHeapCovidStore.encodeDate(date) : -1;
+        int[] dateRuns = runsByDate.get(target);
+        if (dateRuns == null || (!lower.equals("partial") && !lower.equals("full"))) return vaccinationCounts;
+        boolean partial = lower.equals("partial");
+
+        int[] countsByZipId = new int[zips.size()];
+        for (int run : dateRuns) {
+            int end = run + 1 < runs ? runStarts[run + 1] : size;
+            // the run's rows, block by block
+            for (int row = runStarts[run]; row < end; ) {
+                PackedBlock block = blocks.get(row / BLOCK_ROWS);
+                int from = row % BLOCK_ROWS;
+                int to = Math.min(BLOCK_ROWS, from + (end - row));
+                block.addCounts(partial ? block.partial : block.full, from, to, countsByZipId);
+                row += to - from;
+            }
+        }
+
+        for (int zipId = 0; zipId < countsByZipId.length; zipId++) {
+            if (countsByZipId[zipId] > 0) vaccinationCounts.put(zips.get(zipId), countsByZipId[zipId]);
+        }
+        return vaccinationCounts;
+    }
+
+    private void packPending() {
+        blocks.add(new PackedBlock(new PackedColumn(pendingZips, pending),
+                new PackedColumn(pendingPartial, pending), new PackedColumn(pendingFull, pending)));
+        pending = 0;
+    }
+
+    /**
+     * The ZIP ids and both counts of one block of rows.
+     */
+    private static final class PackedBlock {
+        final PackedColumn zips;
+        final PackedColumn partial;
+        final PackedColumn full;
+
+        PackedBlock(PackedColumn zips, PackedColumn partial, PackedColumn full) {
+            this.zips = zips;
+            this.partial = partial;
+            this.full = full;
+        }
+
+        /**
+         * Adds the positive counts of the rows from..to to their ZIP's total.
+         */
+        void addCounts(PackedColumn counts, int from, int to, int[] countsByZipId) {
+            if (counts.bits == 0 && counts.min <= 0) return;    // no row has a count to add
+            for (int row = from; row < to; row++) {
+                int count = counts.get(row);
+                if (count > 0) countsByZipId[zips.get(row)] += count;
+            }
+        }
+    }
+
+    /**
+     * Frame-of-reference bit packing: each value is stored as its difference from the minimum,
+     * in as many bits as the largest difference needs.
+     */
+    private static final class PackedColumn {
+        final int min;
+        final int bits;
+        final long[] words;
+
+        PackedColumn(int[] values, int length) {
+            int low = Integer.MAX_VALUE;
+            int high = Integer.MIN_VALUE;
+            for (int i = 0; i < length; i++) {
+                low = Math.min(low, values[i]);
+                high = Math.max(high, values[i]);
+            }
+            this.min = length > 0 ? low : 0;
+            long range = length > 0 ? (long) high - low : 0;
+            this.bits = 64 - Long.numberOfLeadingZeros(range);
+            this.words = new long[(int) (((long) length * bits + 63) / 64)];
+
+            for (int i = 0; i < length && bits > 0; i++) {
+                long value = (long) values[i] - min;
+                long position = (long) i * bits;
+                int word = (int) (position >>> 6);
+                int shift = (int) (position & 63);
+                words[word] |= value << shift;
+                if (shift + bits > 64) words[word + 1] |= value >>> (64 - shift);
+            }
+        }
+
+        /**
+         * @return the bytes of the column and its words
+         */
+        long bytes() {
+            return 24 + HeapSizes.ARRAY + words.length * 8L;
+        }
+
+        int get(int index) {
+            if (bits == 0) return min;
+            long position = (long) index * bits;
+            int word = (int) (position >>> 6);
+            int shift = (int) (position & 63);
+            long value = words[word] >>> shift;
+            if (shift + bits > 64) value |= words[word + 1] << (64 - shift);
+            return (int) (min + (value & ((1L << bits) - 1)));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package dataanalysis.processor;
+
+import dataanalysis.util.CovidRecord;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Storage backend for the loaded COVID records. Records are added one at a time
+ * while the file is read, then {@link #finish()} is called once before any query.
+ */
+public interface CovidStore {
+
+    /**
+     * Adds a record during loading.
+     */
+    void add(CovidRecord record);
+
+    /**
+     * Called once after the last record has been added.
+     */
+    default void finish() {
+    }
+
+    /**
+     * @return the total number of records loaded
+     */
+    int size();
+
+    /**
+     * @return the estimated bytes the store holds, on the heap and outside it
+     */
+    long estimateBytes();
+
+    /**
+     * Adds up the vaccination counts of the given type ("partial" or "full") by ZIP
+     * for the records whose timestamp falls on the given date (YYYY-MM-DD).
+     * Records with a count of zero or less are skipped.
+     */
+    Map<String, Integer> getVaccinationCounts(String type, String date);
+
+    /**
+     * Answers {@link #getVaccinationCounts(String, String)} for several dates at once.
+     * Stores that keep the records override this to answer all dates in a single scan.
+     *
+     * @return the counts by ZIP for each requested date; dates without records map to an empty map
+     */
+    default Map<String, Map<String, Integer>> getVaccinationCounts(String type, Collection<String> dates) {
+        Map<String, Map<String, Integer>> countsByDate = new HashMap<>();
+        for (String date : dates) {
+            countsByDate.put(date, getVaccinationCounts(type, date));
+        }
+        return countsByDate;
+    }
+
+    /**
+     * Releases any memory held outside the Java heap.
+     */
+    default void close() {
+    }
+}
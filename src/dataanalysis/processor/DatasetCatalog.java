@@ -0,0 +1,176 @@
+package dataanalysis.processor;
+
+import dataanalysis.logging.LogFileWriter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Named datasets served from one process, e.g. several cities or assessment years, each with
+ * its own {@link DatasetQueries}.
+ *
+ * <p>A dataset is loaded on its first query. Under a memory budget, loading a dataset unloads the
+ * least recently used others until the loaded ones fit again; one whose size is known from an
+ * earlier load makes room before it is loaded. A dataset's size is estimated from its stores just
+ * after its load (see {@link DatasetQueries#estimateBytes()}), which takes no collection and does not
+ * depend on what other threads allocate meanwhile. A dataset that is being queried is never
+ * unloaded, and one that alone exceeds the budget is still loaded. Loads and unloads are written
+ * to the log file.
+ */
+public class DatasetCatalog implements AutoCloseable {
+
+    private final Map<String, Dataset> datasets = new LinkedHashMap<>();    // guarded by this
+    private final long memoryBudget;
+    private long clock;
+
+    /**
+     * @param memoryBudget the bytes the loaded datasets may use together, or 0 for no limit
+     */
+    public DatasetCatalog(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Adds a dataset; it is loaded when it is first acquired.
+     */
+    public synchronized void register(String name, DatasetReloader.Loader loader) {
+        if (datasets.containsKey(name)) throw new IllegalArgumentException("Duplicate dataset " + name);
+        datasets.put(name, new Dataset(name, loader));
+    }
+
+    /**
+     * @return the dataset names in registration order
+     */
+    public synchronized Set<String> getNames() {
+        return Collections.unmodifiableSet(datasets.keySet());
+    }
+
+    /**
+     * Returns a dataset for one query, loading it first if needed. The caller must close the handle
+     * when the query is done.
+     *
+     * @throws IllegalArgumentException if there is no dataset of that name
+     * @throws UncheckedIOException if the dataset cannot be loaded
+     */
+    public synchronized Handle acquire(String name) {
+        Dataset dataset = datasets.get(name);
+        if (dataset == null) throw new IllegalArgumentException("Unknown dataset " + name);
+
+        if (dataset.processor == null) {
+            if (dataset.bytes > 0) makeRoom(dataset, dataset.bytes);
+            load(dataset);
+            makeRoom(dataset, 0);
+        }
+        dataset.lastUsed = ++clock;
+        dataset.users++;
+        return new Handle(dataset);
+    }
+
+    /**
+     * @return the estimated bytes of the loaded datasets
+     */
+    public synchronized long getLoadedBytes() {
+        long total = 0;
+        for (Dataset dataset : datasets.values()) {
+            if (dataset.processor != null) total += dataset.bytes;
+        }
+        return total;
+    }
+
+    /**
+     * Unloads every dataset.
+     */
+    @Override
+    public synchronized void close() {
+        for (Dataset dataset : datasets.values()) {
+            if (dataset.processor != null) unload(dataset);
+        }
+    }
+
+    private void load(Dataset dataset) {
+        try {
+            dataset.processor = dataset.loader.load();
+        } catch (Exception e) {
+            throw new UncheckedIOException("Dataset " + dataset.name + " failed to load: " + e.getMessage(),
+                    e instanceof IOException ? (IOException) e : new IOException(e));
+        }
+        // estimated before the dataset is handed out, so no query changes its stores meanwhile
+        dataset.bytes = dataset.processor.estimateBytes();
+        LogFileWriter.getInstance().log("Loaded dataset " + dataset.name + " (" + dataset.bytes / (1024 * 1024) + " MB)");
+    }
+
+    /**
+     * Unloads the least recently used idle datasets other than the given one until the loaded
+     * datasets and the extra bytes fit the budget.
+     */
+    private void makeRoom(Dataset keep, long extra) {
+        if (memoryBudget <= 0) return;
+
+        List<Dataset> candidates = new ArrayList<>();
+        for (Dataset dataset : datasets.values()) {
+            if (dataset != keep && dataset.processor != null && dataset.users == 0) candidates.add(dataset);
+        }
+        candidates.sort((a, b) -> Long.compare(a.lastUsed, b.lastUsed));
+
+        for (Dataset dataset : candidates) {
+            if (getLoadedBytes() + extra <= memoryBudget) break;
+            unload(dataset);
+            LogFileWriter.getInstance().log("Unloaded dataset " + dataset.name + " to stay within the memory budget");
+        }
+    }
+
+    private void unload(Dataset dataset) {
+        dataset.processor.close();
+        dataset.processor = null;
+    }
+
+    /**
+     * A registered dataset; its processor is null while it is not loaded.
+     */
+    private static final class Dataset {
+        final String name;
+        final DatasetReloader.Loader loader;
+        DatasetQueries processor;
+        long bytes;
+        long lastUsed;
+        int users;
+
+        Dataset(String name, DatasetReloader.Loader loader) {
+            this.name = name;
+            this.loader = loader;
+        }
+    }
+
+    /**
+     * A dataset in use by one query; it is not unloaded until the handle is closed.
+     */
+    public final class Handle implements AutoCloseable {
+        private final Dataset dataset;
+        private final DatasetQueries processor;
+        private boolean closed;
+
+        private Handle(Dataset dataset) {
+            this.dataset = dataset;
+            this.processor = dataset.processor;
+        }
+
+        public DatasetQueries getProcessor() {
+            return processor;
+        }
+
+        @Override
+        public void close() {
+            synchronized (DatasetCatalog.this) {
+                if (closed) return;
+                closed = true;
+                dataset.users--;
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package dataanalysis.processor;
+
+import dataanalysis.logging.QueryTrace;
+import dataanalysis.logging.QueryTrace.Phase;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The queries a loaded dataset answers for the user interface, whether it is held by a
+ * {@link Processor} in this JVM or spread over shard workers by a {@link DistributedProcessor}.
+ */
+public interface DatasetQueries {
+
+    boolean hasCovidData();
+
+    boolean hasPopulationData();
+
+    boolean hasPropertyData();
+
+    /**
+     * @return the total population of all ZIP codes
+     */
+    int getTotalPopulation();
+
+    /**
+     * @param type "partial" or "full"
+     * @return the vaccinations per person of each ZIP code on the date, ordered by ZIP
+     */
+    Map<String, Double> getVaccinationPerCapita(String type, String date);
+
+    /**
+     * Answers {@link #getVaccinationPerCapita(String, String)} for several dates, counting the
+     * uncached dates together.
+     *
+     * @return the per-ZIP result for each date, in the order the dates were given
+     */
+    Map<String, Map<String, Double>> getVaccinationPerCapita(String type, Collection<String> dates);
+
+    /**
+     * @return the average market value of the ZIP's properties, estimated while {@link #isApproximate()}
+     */
+    Estimate estimateAverageMarketValue(String zip);
+
+    /**
+     * @return the average livable area of the ZIP's properties, estimated while {@link #isApproximate()}
+     */
+    Estimate estimateAverageLivableArea(String zip);
+
+    /**
+     * @return the market value of the ZIP's properties per person, estimated while {@link #isApproximate()}
+     */
+    Estimate estimateMarketValuePerCapita(String zip);
+
+    /**
+     * @return the market value of the ZIP's properties at each percentile; a ZIP without values reports 0
+     */
+    int[] getMarketValuePercentiles(String zip, double[] percentiles);
+
+    /**
+     * @return the livable area of the ZIP's properties at each percentile; a ZIP without values reports 0
+     */
+    int[] getLivableAreaPercentiles(String zip, double[] percentiles);
+
+    /**
+     * @return the health risk index of each ZIP code on the date, ordered by ZIP
+     */
+    Map<String, Double> getHealthRiskIndex(String date);
+
+    /**
+     * Answers {@link #getHealthRiskIndex(String)} for several dates, counting the uncached dates together.
+     *
+     * @return the per-ZIP index for each date, in the order the dates were given
+     */
+    Map<String, Map<String, Double>> getHealthRiskIndex(Collection<String> dates);
+
+    /**
+     * Returns the value of a metric for every ZIP code that has one.
+     *
+     * @param date the date of a dated metric, ignored otherwise
+     */
+    Map<String, Double> getMetricByZip(ZipMetric metric, String date);
+
+    /**
+     * Returns the k ZIP codes with the highest or lowest value of a metric, best first.
+     * Only the k best entries are kept while the per-ZIP values are scanned, so the values are never sorted.
+     *
+     * @param date the date of a dated metric, ignored otherwise
+     * @param highest true for the top k, false for the bottom k
+     */
+    default List<Map.Entry<String, Double>> getTopZips(ZipMetric metric, String date, int k, boolean highest) {
+        QueryTrace.call("getTopZips");
+        Map<String, Double> values = getMetricByZip(metric, date);
+
+        long compute = QueryTrace.start();
+        List<Map.Entry<String, Double>> top = TopK.select(values, k, highest);
+        QueryTrace.record(Phase.COMPUTE, compute);
+        return top;
+    }
+
+    /**
+     * Evaluates a user-defined metric for every ZIP code that appears in the data the expression uses.
+     * ZIPs for which the expression has no finite value are left out.
+     *
+     * @param date the date of the vaccination counts, ignored if the expression uses none
+     * @return the value of each ZIP, ordered by ZIP
+     */
+    Map<String, Double> evaluateMetric(MetricExpression expression, String date);
+
+    /**
+     * @return true while property answers are estimated from a sample
+     */
+    boolean isApproximate();
+
+    /**
+     * Starts loading the exact property data in the background.
+     *
+     * @return false if the dataset is not approximate or the load has already been started
+     */
+    boolean upgradeToExact();
+
+    /**
+     * @return the "type|date" keys of the vaccination per capita results held in memory
+     */
+    Set<String> getCachedVaccinationPerCapitaKeys();
+
+    /**
+     * @return the dates of the health risk index results held in memory
+     */
+    Set<String> getCachedHealthRiskDates();
+
+    /**
+     * Answers the per-date queries another dataset has cached, so that a reloaded dataset starts warm.
+     * Each kind of query is answered for all its dates in one batch.
+     */
+    default void warmUp(DatasetQueries previous) {
+        Map<String, List<String>> perCapitaDates = new HashMap<>();
+        for (String cacheKey : previous.getCachedVaccinationPerCapitaKeys()) {
+            int separator = cacheKey.indexOf('|');
+            perCapitaDates.computeIfAbsent(cacheKey.substring(0, separator), type -> new ArrayList<>())
+                    .add(cacheKey.substring(separator + 1));
+        }
+        if (hasCovidData() && hasPopulationData()) {
+            perCapitaDates.forEach(this::getVaccinationPerCapita);
+        }
+
+        List<String> riskDates = new ArrayList<>(previous.getCachedHealthRiskDates());
+        if (!riskDates.isEmpty() && hasCovidData() && hasPopulationData() && hasPropertyData()) {
+            getHealthRiskIndex(riskDates);
+        }
+    }
+
+    /**
+     * Estimates the memory the loaded data holds, on the heap and outside it, from the record counts
+     * of the stores and the bytes they allocated; cached query results are not counted.
+     */
+    long estimateBytes();
+
+    /**
+     * Releases what the dataset holds outside the Java heap. It must not be queried afterwards.
+     */
+    void close();
+}
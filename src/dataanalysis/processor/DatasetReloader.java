@@ -0,0 +1,194 @@
+package dataanalysis.processor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Serves queries from an immutable dataset snapshot while a replacement is loaded in the background.
+ * A reload builds a new {@link DatasetQueries} from the input files, warms its caches with the
+ * queries the current one has answered, and then swaps it in atomically. Queries hold a
+ * {@link Snapshot} for their whole duration, so they always see one dataset; a replaced
+ * processor is closed once its last query has finished.
+ *
+ * <p>A reload is started on request, when a signal file is touched, or when a watched input file changes.
+ */
+public class DatasetReloader implements AutoCloseable {
+
+    /**
+     * Loads a new processor from the current input files.
+     */
+    public interface Loader {
+        DatasetQueries load() throws Exception;
+    }
+
+    private final Loader loader;
+    private Snapshot current;   // guarded by this
+    private final AtomicBoolean reloading = new AtomicBoolean();
+    private final AtomicReference<String> status = new AtomicReference<>();    // the last reload's outcome, until taken
+    private volatile List<Path> watched = List.of();
+    private volatile List<String> loadedStamps;    // stamps of the watched files the current dataset was loaded from
+    private volatile boolean closed;
+
+    /**
+     * @param loader builds a processor from the input files; it is called on a background thread
+     * @param initial the processor already loaded at startup
+     */
+    public DatasetReloader(Loader loader, DatasetQueries initial) {
+        this.loader = loader;
+        this.current = new Snapshot(initial);
+    }
+
+    /**
+     * Returns the current snapshot for one query. The caller must close it when the query is done.
+     */
+    public synchronized Snapshot acquire() {
+        current.users++;
+        return current;
+    }
+
+    /**
+     * Starts loading a new snapshot in the background.
+     *
+     * @return false if a reload is already in progress
+     */
+    public boolean requestReload() {
+        if (closed || !reloading.compareAndSet(false, true)) return false;
+
+        Thread thread = new Thread(this::reload, "dataset-reload");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Returns the outcome of the last reload that finished since the previous call, for the user
+     * interface to show; reloads run in the background and report nothing themselves.
+     *
+     * @return e.g. "Data reloaded.", or null if no reload has finished since
+     */
+    public String takeStatus() {
+        return status.getAndSet(null);
+    }
+
+    /**
+     * Starts a background thread that requests a reload whenever a watched file changes or the
+     * signal file is created or touched. Files are polled, which also covers network file systems.
+     *
+     * @param files the input files to watch; may be empty
+     * @param signalFile a file whose creation or modification triggers a reload, or null
+     * @param intervalMillis how often the files are checked
+     */
+    public void watch(List<Path> files, Path signalFile, long intervalMillis) {
+        List<Path> paths = new ArrayList<>(files);
+        if (signalFile != null) paths.add(signalFile);
+        loadedStamps = stampsOf(paths);
+        watched = paths;
+
+        Thread thread = new Thread(() -> {
+            while (!closed) {
+                try {
+                    Thread.sleep(intervalMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                // the stamps only change once a reload has been swapped in, so a failed or busy
+                // request is retried on the next poll
+                if (!stampsOf(paths).equals(loadedStamps)) requestReload();
+            }
+        }, "dataset-watch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Closes the current snapshot once its queries are done; no reload is started afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        current.retire();
+    }
+
+    private void reload() {
+        try {
+            // taken before loading, so a file changed during the load triggers another reload
+            List<String> stamps = stampsOf(watched);
+            DatasetQueries processor = loader.load();
+
+            // answer the queries the old dataset had cached before any user sees the new one
+            try (Snapshot previous = acquire()) {
+                processor.warmUp(previous.getProcessor());
+            }
+
+            synchronized (this) {
+                if (closed) {
+                    processor.close();
+                    return;
+                }
+                Snapshot replaced = current;
+                current = new Snapshot(processor);
+                loadedStamps = stamps;
+                replaced.retire();
+            }
+            status.set("Data reloaded.");
+        } catch (Exception e) {
+            status.set("Error reloading data: " + e.getMessage());
+        } finally {
+            reloading.set(false);
+        }
+    }
+
+    /**
+     * @return the size and modification time of each file, or "missing"
+     */
+    private static List<String> stampsOf(List<Path> files) {
+        List<String> stamps = new ArrayList<>();
+        for (Path file : files) {
+            try {
+                stamps.add(Files.size(file) + ":" + Files.getLastModifiedTime(file).toMillis());
+            } catch (IOException e) {
+                stamps.add("missing");
+            }
+        }
+        return stamps;
+    }
+
+    /**
+     * One loaded dataset, closed when it has been replaced and no query uses it any more.
+     */
+    public final class Snapshot implements AutoCloseable {
+
+        private final DatasetQueries processor;
+        private int users;          // guarded by the reloader
+        private boolean retired;    // guarded by the reloader
+
+        private Snapshot(DatasetQueries processor) {
+            this.processor = processor;
+        }
+
+        public DatasetQueries getProcessor() {
+            return processor;
+        }
+
+        /**
+         * Ends the query that acquired this snapshot.
+         */
+        @Override
+        public void close() {
+            synchronized (DatasetReloader.this) {
+                users--;
+                if (retired && users == 0) processor.close();
+            }
+        }
+
+        private void retire() {
+            retired = true;
+            if (users == 0) processor.close();
+        }
+    }
+}
@@ -0,0 +1,591 @@
+package dataanalysis.processor;
+
+import dataanalysis.logging.QueryTrace;
+import dataanalysis.logging.QueryTrace.Phase;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers the dataset queries by scatter-gather over worker JVMs on this machine,
+ * each of which loads one ZIP-range shard of the input files (see {@link ShardWorker}).
+ *
+ * <p>A query is sent to every worker before any reply is read, so the workers scan their shards
+ * in parallel. Their partial aggregates (population records, vaccination counts and per-ZIP property
+ * sums, counts, minimums and maximums) are merged here and finished with the same
+ * {@link MetricFormulas} as {@link Processor}, so the results are identical to a single JVM loading
+ * all the data. Percentiles are asked of the worker that owns the ZIP.
+ *
+ * <p>A worker that fails makes the query fail with an {@link UncheckedIOException}.
+ */
+public class DistributedProcessor implements DatasetQueries {
+
+    private static final int SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private final List<Worker> workers;
+    private boolean covidData;
+    private boolean populationData;
+    private boolean propertyData;
+    private boolean legacyAverages;
+
+    // merged partial aggregates; the population and property ones are fetched on first use
+    private Integer totalPopulation;
+    private Map<String, Integer> populationByZip;
+    private PropertyStore propertyTotals;
+    private final Map<String, Map<String, Integer>> vaccinationCounts = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Double>> vaccinationPerCapita = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Double>> healthRiskIndex = new ConcurrentHashMap<>();
+    private final Map<ZipMetric, Map<String, Double>> propertyMetrics = new ConcurrentHashMap<>();
+
+    private DistributedProcessor(List<Worker> workers) {
+        this.workers = workers;
+    }
+
+    /**
+     * Starts one worker JVM per shard with the same Java runtime, JVM options and class path as
+     * this one, and waits until every worker has loaded its shard.
+     *
+     * @param workerArguments the program arguments of every worker; each also gets its --shard
+     * @param shards the ZIP range of each worker
+     * @throws IOException with the worker's message if a worker fails to start or load
+     */
+    public static DistributedProcessor start(List<String> workerArguments, List<ZipRange> shards) throws IOException {
+        List<Worker> workers = new ArrayList<>();
+        DistributedProcessor processor = new DistributedProcessor(workers);
+        try {
+            // all workers load at the same time; each is waited for in turn
+            for (ZipRange shard : shards) {
+                workers.add(new Worker(shard, launch(workerArguments, shard)));
+            }
+            for (Worker worker : workers) {
+                worker.connect();
+            }
+
+            for (List<String> reply : processor.scatter("STATUS")) {
+                String[] flags = reply.get(0).split(" ");
+                processor.covidData |= flags[0].equals("1");
+                processor.populationData |= flags[1].equals("1");
+                processor.propertyData |= flags[2].equals("1");
+            }
+        } catch (IOException | UncheckedIOException e) {
+            processor.close();
+            throw e instanceof UncheckedIOException ? new IOException(e.getMessage(), e) : (IOException) e;
+        }
+        return processor;
+    }
+
+    private static Process launch(List<String> workerArguments, ZipRange shard) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("dataanalysis.Main");
+        command.addAll(workerArguments);
+        command.add("--shard=" + shard);
+        return new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    }
+
+    @Override
+    public int getTotalPopulation() {
+        QueryTrace.call("getTotalPopulation");
+        loadPopulation();
+        return totalPopulation;
+    }
+
+    @Override
+    public Map<String, Double> getVaccinationPerCapita(String type, String date) {
+        QueryTrace.call("getVaccinationPerCapita");
+        String cacheKey = type.toLowerCase() + "|" + date;
+        Map<String, Double> cached = vaccinationPerCapita.get(cacheKey);
+        if (cached != null) return cached;
+
+        Map<String, Integer> vaccinationsByZip = getVaccinationCounts(type, List.of(date)).get(date);
+        loadPopulation();
+
+        long compute = QueryTrace.start();
+        Map<String, Double> result = MetricFormulas.vaccinationPerCapita(vaccinationsByZip, populationByZip);
+        QueryTrace.record(Phase.COMPUTE, compute);
+        vaccinationPerCapita.put(cacheKey, result);
+        return result;
+    }
+
+    @Override
+    public Map<String, Map<String, Double>> getVaccinationPerCapita(String type, Collection<String> dates) {
+        getVaccinationCounts(type, dates);
+        Map<String, Map<String, Double>> results = new LinkedHashMap<>();
+        for (String date : dates) {
+            results.put(date, getVaccinationPerCapita(type, date));
+        }
+        return results;
+    }
+
+    public int calculateAverageMarketValue(String zip) {
+        QueryTrace.call("calculateAverageMarketValue");
+        return calculateAverage(zip, PropertyColumns.Field.MARKET_VALUE);
+    }
+
+    public int calculateAverageLivableArea(String zip) {
+        QueryTrace.call("calculateAverageLivableArea");
+        return calculateAverage(zip, PropertyColumns.Field.TOTAL_LIVABLE_AREA);
+    }
+
+    private int calculateAverage(String zip, PropertyColumns.Field field) {
+        PropertyStore totals = getPropertyTotals();
+        int count = legacyAverages ? totals.count(zip) : totals.countPresent(zip, field);
+        return MetricFormulas.average(totals.sum(zip, field), count);
+    }
+
+    /**
+     * The workers load every property, so the answers are always exact.
+     */
+    @Override
+    public Estimate estimateAverageMarketValue(String zip) {
+        return Estimate.exact(calculateAverageMarketValue(zip));
+    }
+
+    @Override
+    public Estimate estimateAverageLivableArea(String zip) {
+        return Estimate.exact(calculateAverageLivableArea(zip));
+    }
+
+    @Override
+    public Estimate estimateMarketValuePerCapita(String zip) {
+        return Estimate.exact(calculateMarketValuePerCapita(zip));
+    }
+
+    /**
+     * Selects how missing property values are treated by the averages, as {@link Processor#setLegacyAverages} does.
+     */
+    public void setLegacyAverages(boolean legacyAverages) {
+        if (this.legacyAverages != legacyAverages) {
+            propertyMetrics.remove(ZipMetric.AVERAGE_MARKET_VALUE);
+            propertyMetrics.remove(ZipMetric.AVERAGE_LIVABLE_AREA);
+        }
+        this.legacyAverages = legacyAverages;
+    }
+
+    @Override
+    public int[] getMarketValuePercentiles(String zip, double[] percentiles) {
+        QueryTrace.call("getMarketValuePercentiles");
+        return getPercentiles("market_value", zip, percentiles);
+    }
+
+    @Override
+    public int[] getLivableAreaPercentiles(String zip, double[] percentiles) {
+        QueryTrace.call("getLivableAreaPercentiles");
+        return getPercentiles("livable_area", zip, percentiles);
+    }
+
+    private int[] getPercentiles(String field, String zip, double[] percentiles) {
+        StringBuilder request = new StringBuilder("PERCENTILES ").append(field).append(' ').append(zip).append(' ');
+        for (int i = 0; i < percentiles.length; i++) {
+            if (i > 0) request.append(',');
+            request.append(percentiles[i]);
+        }
+
+        long scan = QueryTrace.start();
+        String reply = ask(ownerOf(zip), request.toString()).get(0);
+        QueryTrace.record(Phase.SCAN, scan);
+
+        String[] values = reply.split(" ");
+        int[] result = new int[percentiles.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = Integer.parseInt(values[i]);
+        }
+        return result;
+    }
+
+    public int calculateMarketValuePerCapita(String zip) {
+        QueryTrace.call("calculateMarketValuePerCapita");
+        loadPopulation();
+        PropertyStore totals = getPropertyTotals();
+        return MetricFormulas.marketValuePerCapita(totals.sum(zip, PropertyColumns.Field.MARKET_VALUE),
+                totals.count(zip), populationByZip.getOrDefault(zip, 0));
+    }
+
+    @Override
+    public Map<String, Double> getHealthRiskIndex(String date) {
+        QueryTrace.call("getHealthRiskIndex");
+        Map<String, Double> cached = healthRiskIndex.get(date);
+        if (cached != null) return cached;
+
+        loadPopulation();
+        Map<String, Integer> vaccinations = getVaccinationCounts("full", List.of(date)).get(date);
+        PropertyStore totals = getPropertyTotals();
+
+        long compute = QueryTrace.start();
+        Map<String, Double> result = MetricFormulas.healthRiskIndex(populationByZip, vaccinations,
+                zip -> totals.sum(zip, PropertyColumns.Field.TOTAL_LIVABLE_AREA));
+        QueryTrace.record(Phase.COMPUTE, compute);
+        healthRiskIndex.put(date, result);
+        return result;
+    }
+
+    @Override
+    public Map<String, Map<String, Double>> getHealthRiskIndex(Collection<String> dates) {
+        getVaccinationCounts("full", dates);
+        Map<String, Map<String, Double>> results = new LinkedHashMap<>();
+        for (String date : dates) {
+            results.put(date, getHealthRiskIndex(date));
+        }
+        return results;
+    }
+
+    @Override
+    public Map<String, Double> getMetricByZip(ZipMetric metric, String date) {
+        switch (metric) {
+            case HEALTH_RISK_INDEX:
+                return getHealthRiskIndex(date);
+            case PARTIAL_VACCINATIONS_PER_CAPITA:
+                return getVaccinationPerCapita("partial", date);
+            case FULL_VACCINATIONS_PER_CAPITA:
+                return getVaccinationPerCapita("full", date);
+            default:
+                break;
+        }
+
+        Map<String, Double> cached = propertyMetrics.get(metric);
+        if (cached != null) return cached;
+
+        PropertyStore totals = getPropertyTotals();
+        loadPopulation();
+        Map<String, Double> values = new HashMap<>();
+        for (String zip : totals.getZipCodes()) {
+            switch (metric) {
+                case AVERAGE_MARKET_VALUE:
+                    values.put(zip, (double) calculateAverageMarketValue(zip));
+                    break;
+                case AVERAGE_LIVABLE_AREA:
+                    values.put(zip, (double) calculateAverageLivableArea(zip));
+                    break;
+                case MARKET_VALUE_PER_CAPITA:
+                    if (populationByZip.getOrDefault(zip, 0) > 0) {
+                        values.put(zip, (double) calculateMarketValuePerCapita(zip));
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown metric: " + metric);
+            }
+        }
+        propertyMetrics.put(metric, values);
+        return values;
+    }
+
+    /**
+     * Evaluates the expression over the merged per-ZIP totals, which hold every aggregate an
+     * expression can use.
+     */
+    @Override
+    public Map<String, Double> evaluateMetric(MetricExpression expression, String date) {
+        QueryTrace.call("evaluateMetric");
+        PropertyStore totals = expression.usesProperties() ? getPropertyTotals() : null;
+        if (expression.usesPopulation()) loadPopulation();
+        Map<String, Integer> population = populationByZip != null ? populationByZip : Map.of();
+        Map<String, Integer> partial = expression.usesPartial() ? getVaccinationCounts("partial", List.of(date)).get(date) : Map.of();
+        Map<String, Integer> full = expression.usesFull() ? getVaccinationCounts("full", List.of(date)).get(date) : Map.of();
+
+        long compute = QueryTrace.start();
+        Map<String, Double> result = MetricFormulas.evaluate(expression, totals, population, partial, full);
+        QueryTrace.record(Phase.COMPUTE, compute);
+        return result;
+    }
+
+    @Override
+    public boolean isApproximate() {
+        return false;
+    }
+
+    @Override
+    public boolean upgradeToExact() {
+        return false;
+    }
+
+    @Override
+    public Set<String> getCachedVaccinationPerCapitaKeys() {
+        return vaccinationPerCapita.keySet();
+    }
+
+    @Override
+    public Set<String> getCachedHealthRiskDates() {
+        return healthRiskIndex.keySet();
+    }
+
+    @Override
+    public boolean hasPopulationData() {
+        return populationData;
+    }
+
+    @Override
+    public boolean hasPropertyData() {
+        return propertyData;
+    }
+
+    @Override
+    public boolean hasCovidData() {
+        return covidData;
+    }
+
+    /**
+     * @return the bytes of the merged per-ZIP totals fetched so far; the records are held by the workers
+     */
+    @Override
+    public long estimateBytes() {
+        long bytes = populationByZip != null ? HeapSizes.zipMap(populationByZip.size()) : 0;
+        return bytes + (propertyTotals != null ? propertyTotals.estimateBytes() : 0);
+    }
+
+    /**
+     * Shuts the workers down; a worker that does not exit in time is killed.
+     */
+    @Override
+    public void close() {
+        for (Worker worker : workers) {
+            worker.shutdown();
+        }
+    }
+
+    /**
+     * Returns the merged vaccination counts of several dates, asking the workers only for the
+     * dates not counted yet, all in one request.
+     */
+    private Map<String, Map<String, Integer>> getVaccinationCounts(String type, Collection<String> dates) {
+        String prefix = type.toLowerCase() + "|";
+        List<String> uncounted = new ArrayList<>();
+        for (String date : dates) {
+            if (!vaccinationCounts.containsKey(prefix + date) && !uncounted.contains(date)) uncounted.add(date);
+        }
+
+        if (!uncounted.isEmpty()) {
+            long scan = QueryTrace.start();
+            List<List<String>> replies = scatter("VACCINATIONS " + type.toLowerCase() + " " + String.join(" ", uncounted));
+            QueryTrace.record(Phase.SCAN, scan);
+
+            long compute = QueryTrace.start();
+            Map<String, Map<String, Integer>> merged = new HashMap<>();
+            for (String date : uncounted) merged.put(date, new HashMap<>());
+            for (List<String> reply : replies) {
+                for (String line : reply) {
+                    String[] fields = line.split(" ");
+                    merged.get(fields[0]).merge(fields[1], Integer.parseInt(fields[2]), Integer::sum);
+                }
+            }
+            merged.forEach((date, counts) -> vaccinationCounts.put(prefix + date, counts));
+            QueryTrace.record(Phase.COMPUTE, compute);
+        }
+
+        Map<String, Map<String, Integer>> countsByDate = new LinkedHashMap<>();
+        for (String date : dates) {
+            countsByDate.put(date, vaccinationCounts.get(prefix + date));
+        }
+        return countsByDate;
+    }
+
+    /**
+     * Fetches the population records of every shard once; later records of a ZIP replace earlier ones,
+     * as in {@link Processor}, while the total counts every record.
+     */
+    private synchronized void loadPopulation() {
+        if (populationByZip != null) return;
+
+        long scan = QueryTrace.start();
+        List<List<String>> replies = scatter("POPULATION");
+        QueryTrace.record(Phase.SCAN, scan);
+
+        int total = 0;
+        Map<String, Integer> byZip = new HashMap<>();
+        for (List<String> reply : replies) {
+            for (String line : reply) {
+                String[] fields = line.split(" ");
+                int population = Integer.parseInt(fields[1]);
+                byZip.put(fields[0], population);
+                total += population;
+            }
+        }
+        totalPopulation = total;
+        populationByZip = byZip;
+    }
+
+    /**
+     * Fetches the per-ZIP property sums, counts, minimums and maximums of every shard once.
+     *
+     * @return the totals of every ZIP with properties
+     */
+    private synchronized PropertyStore getPropertyTotals() {
+        if (propertyTotals == null) {
+            long scan = QueryTrace.start();
+            List<List<String>> replies = scatter("PROPERTIES");
+            QueryTrace.record(Phase.SCAN, scan);
+
+            Map<String, PropertyAccumulator> accumulators = new HashMap<>();
+            for (List<String> reply : replies) {
+                for (String line : reply) {
+                    String[] fields = line.split(" ");
+                    PropertyAccumulator accumulator = accumulators.computeIfAbsent(fields[0], key -> new PropertyAccumulator());
+                    accumulator.addCount(Integer.parseInt(fields[1]));
+                    addValues(accumulator, PropertyColumns.Field.MARKET_VALUE, fields, 2);
+                    addValues(accumulator, PropertyColumns.Field.TOTAL_LIVABLE_AREA, fields, 6);
+                }
+            }
+            propertyTotals = new StreamingPropertyStore(accumulators);
+        }
+        return propertyTotals;
+    }
+
+    /**
+     * Adds the "present sum min max" of a field, starting at the given word of a reply line.
+     */
+    private static void addValues(PropertyAccumulator accumulator, PropertyColumns.Field field, String[] fields, int first) {
+        int present = Integer.parseInt(fields[first]);
+        if (present == 0) return;
+        accumulator.addValues(field, present, Long.parseLong(fields[first + 1]),
+                Integer.parseInt(fields[first + 2]), Integer.parseInt(fields[first + 3]));
+    }
+
+    private Worker ownerOf(String zip) {
+        for (Worker worker : workers) {
+            if (worker.shard.contains(zip)) return worker;
+        }
+        throw new IllegalArgumentException("No shard holds ZIP " + zip);
+    }
+
+    private synchronized List<String> ask(Worker worker, String request) {
+        worker.send(request);
+        return worker.receive();
+    }
+
+    /**
+     * Sends a request to every worker, then collects the replies in shard order. Every worker the
+     * request reached is read to the end of its reply even after another one failed, so no stale
+     * reply is left on a connection for the next request; the first failure is then thrown.
+     */
+    private synchronized List<List<String>> scatter(String request) {
+        UncheckedIOException failure = null;
+        int sent = 0;
+        for (Worker worker : workers) {
+            try {
+                worker.send(request);
+                sent++;
+            } catch (UncheckedIOException e) {
+                failure = e;
+                break;
+            }
+        }
+        List<List<String>> replies = new ArrayList<>();
+        for (int i = 0; i < sent; i++) {
+            try {
+                replies.add(workers.get(i).receive());
+            } catch (UncheckedIOException e) {
+                if (failure == null) failure = e;
+            }
+        }
+        if (failure != null) throw failure;
+        return replies;
+    }
+
+    /**
+     * A worker process and its connection.
+     */
+    private static class Worker {
+        final ZipRange shard;
+        final Process process;
+        private Socket socket;
+        private BufferedReader in;
+        private PrintWriter out;
+
+        Worker(ZipRange shard, Process process) {
+            this.shard = shard;
+            this.process = process;
+        }
+
+        /**
+         * Waits for the worker to announce its port and connects to it.
+         */
+        void connect() throws IOException {
+            BufferedReader announcements = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+            StringBuilder output = new StringBuilder();
+            String line;
+            while ((line = announcements.readLine()) != null) {
+                if (line.startsWith(ShardWorker.READY)) {
+                    int port = Integer.parseInt(line.substring(ShardWorker.READY.length()).trim());
+                    socket = new Socket(InetAddress.getLoopbackAddress(), port);
+                    in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    out = new PrintWriter(new BufferedWriter(
+                            new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)));
+                    return;
+                }
+                // anything else the worker prints before it is ready explains why it failed
+                if (output.length() > 0) output.append(System.lineSeparator());
+                output.append(line);
+            }
+            throw new IOException(output.length() > 0 ? output.toString()
+                    : "Shard worker " + shard + " exited before it was ready");
+        }
+
+        void send(String request) {
+            out.println(request);
+            out.flush();
+            if (out.checkError()) {
+                throw new UncheckedIOException("Shard worker " + shard + " is not reachable",
+                        new IOException("write failed"));
+            }
+        }
+
+        List<String> receive() {
+            List<String> lines = new ArrayList<>();
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.equals(ShardWorker.END)) return lines;
+                    if (line.startsWith(ShardWorker.ERROR)) {
+                        // an error line is the whole reply, so the connection is ready for the next request
+                        throw new IOException(line.substring(ShardWorker.ERROR.length()));
+                    }
+                    lines.add(line);
+                }
+                throw new IOException("connection closed");
+            } catch (IOException e) {
+                throw new UncheckedIOException("Shard worker " + shard + " failed: " + e.getMessage(), e);
+            }
+        }
+
+        void shutdown() {
+            try {
+                if (out != null) {
+                    out.println("SHUTDOWN");
+                    out.flush();
+                } else {
+                    // never connected, e.g. another worker failed to start
+                    process.destroy();
+                }
+                if (!process.waitFor(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) process.destroyForcibly();
+                if (socket != null) socket.close();
+            } catch (IOException e) {
+                process.destroyForcibly();
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package dataanalysis.processor;
+
+/**
+ * A query answer that may come from a sample: the value, the half-width of its 95% confidence
+ * interval and the number of sampled values it rests on. An exact answer has a margin of 0.
+ */
+public final class Estimate {
+
+    private final double value;
+    private final double margin;
+    private final int sampleSize;
+    private final boolean exact;
+
+    private Estimate(double value, double margin, int sampleSize, boolean exact) {
+        this.value = value;
+        this.margin = margin;
+        this.sampleSize = sampleSize;
+        this.exact = exact;
+    }
+
+    /**
+     * @return an answer computed from all the data
+     */
+    public static Estimate exact(double value) {
+        return new Estimate(value, 0, -1, true);
+    }
+
+    /**
+     * @param margin the half-width of the 95% confidence interval, NaN if it cannot be estimated
+     * @param sampleSize the number of sampled values the estimate is based on
+     */
+    public static Estimate sampled(double value, double margin, int sampleSize) {
+        return new Estimate(value, margin, sampleSize, false);
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * @return the half-width of the 95% confidence interval; 0 when exact, NaN if unknown
+     */
+    public double getMargin() {
+        return margin;
+    }
+
+    /**
+     * @return the number of sampled values, or -1 for an exact answer
+     */
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    public boolean isExact() {
+        return exact;
+    }
+}
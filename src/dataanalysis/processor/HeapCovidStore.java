@@ -0,0 +1,101 @@
+package dataanalysis.processor;
+
+import dataanalysis.util.CovidRecord;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the COVID records as Java objects and filters them by date on every query.
+ */
+public class HeapCovidStore implements CovidStore {
+
+    private final List<CovidRecord> covidRecords = new ArrayList<>();
+
+    @Override
+    public void add(CovidRecord record) {
+        covidRecords.add(record);
+    }
+
+    @Override
+    public int size() {
+        return covidRecords.size();
+    }
+
+    @Override
+    public long estimateBytes() {
+        return covidRecords.size() * (HeapSizes.REFERENCE + HeapSizes.COVID_RECORD + HeapSizes.ZIP + HeapSizes.TIMESTAMP);
+    }
+
+    @Override
+    public Map<String, Integer> getVaccinationCounts(String type, String date) {
+        Map<String, Integer> vaccinationCounts = new HashMap<>();
+        for (CovidRecord record : covidRecords) {
+            String zip = record.getZipCode();
+            String timestamp = record.getEtlTimestamp();
+
+            // Extract only date part of timestamp (first 10 characters)
+            if (timestamp.length() < 10 || !timestamp.substring(0, 10).equals(date)) continue;
+
+            int vaccinationCount = 0;
+            String lower = type.toLowerCase();
+            if (lower.equals("partial")) {
+                vaccinationCount = record.getPartiallyVaccinated();
+            } else if (lower.equals("full")) {
+                vaccinationCount = record.getFullyVaccinated();
+            }
+
+            if (vaccinationCount <= 0) continue;
+
+            vaccinationCounts.put(zip, vaccinationCounts.getOrDefault(zip, 0) + vaccinationCount);
+        }
+        return vaccinationCounts;
+    }
+
+    /**
+     * Scans the records once, split across cores, and counts every requested date in the same pass.
+     */
+    @Override
+    public Map<String, Map<String, Integer>> getVaccinationCounts(String type, Collection<String> dates) {
+        Set<String> requested = new HashSet<>(dates);
+        String lower = type.toLowerCase();
+        boolean partial = lower.equals("partial");
+        boolean full = lower.equals("full");
+
+        List<Map<String, Map<String, Integer>>> slices = ParallelScan.run(covidRecords.size(), (from, to) -> {
+            Map<String, Map<String, Integer>> countsByDate = new HashMap<>();
+            if (!partial && !full) return countsByDate;
+
+            for (CovidRecord record : covidRecords.subList(from, to)) {
+                String timestamp = record.getEtlTimestamp();
+                if (timestamp.length() < 10) continue;
+                String date = timestamp.substring(0, 10);
+                if (!requested.contains(date)) continue;
+
+                int vaccinationCount = partial ? record.getPartiallyVaccinated() : record.getFullyVaccinated();
+                if (vaccinationCount <= 0) continue;
+
+                countsByDate.computeIfAbsent(date, d -> new HashMap<>())
+                        .merge(record.getZipCode(), vaccinationCount, Integer::sum);
+            }
+            return countsByDate;
+        });
+
+        Map<String, Map<String, Integer>> countsByDate = new HashMap<>();
+        for (String date : requested) {
+            countsByDate.put(date, new HashMap<>());
+        }
+        for (Map<String, Map<String, Integer>> slice : slices) {
+            for (Map.Entry<String, Map<String, Integer>> entry : slice.entrySet()) {
+                Map<String, Integer> counts = countsByDate.get(entry.getKey());
+                entry.getValue().forEach((zip, count) -> counts.merge(zip, count, Integer::sum));
+            }
+        }
+        return countsByDate;
+    }
+}
@@ -0,0 +1,143 @@
+package dataanalysis.processor;
+
+import dataanalysis.util.Property;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the properties as Java objects and sums them through per-ZIP primitive columns.
+ */
+public class HeapPropertyStore implements WritablePropertyStore, RetainingPropertyStore {
+
+    private final List<Property> properties = new ArrayList<>();
+
+    // Memoization caches to improve performance
+    private final Map<String, List<Property>> propertyDataByZip = new HashMap<>();
+    private final Map<String, PropertyColumns> propertyColumnsByZip = new HashMap<>();
+    private Set<String> zipCodes;
+    private AggregationKernel kernel = AggregationKernel.create();
+
+    @Override
+    public void add(Property property) {
+        properties.add(property);
+        zipCodes = null;
+    }
+
+    @Override
+    public int size() {
+        return properties.size();
+    }
+
+    /**
+     * Counts the properties, and the per-ZIP lists and columns of the ZIPs queried so far.
+     */
+    @Override
+    public long estimateBytes() {
+        long bytes = properties.size()
+                * (HeapSizes.REFERENCE + HeapSizes.PROPERTY + HeapSizes.ZIP + 2 * HeapSizes.BOXED);
+        for (List<Property> zipProperties : propertyDataByZip.values()) {
+            bytes += HeapSizes.MAP_ENTRY + zipProperties.size() * HeapSizes.REFERENCE;
+        }
+        for (PropertyColumns columns : propertyColumnsByZip.values()) {
+            // two value arrays and two presence arrays
+            bytes += HeapSizes.MAP_ENTRY + 4 * HeapSizes.ARRAY + columns.size() * 10L;
+        }
+        return bytes;
+    }
+
+    @Override
+    public int count(String zip) {
+        return getPropertyColumnsByZip(zip).size();
+    }
+
+    @Override
+    public long sum(String zip, PropertyColumns.Field field) {
+        PropertyColumns columns = getPropertyColumnsByZip(zip);
+        return kernel.maskedSum(columns.getValues(field), columns.getPresent(field), columns.size());
+    }
+
+    @Override
+    public int countPresent(String zip, PropertyColumns.Field field) {
+        PropertyColumns columns = getPropertyColumnsByZip(zip);
+        return kernel.countPresent(columns.getPresent(field), columns.size());
+    }
+
+    @Override
+    public void sumPresent(String zip, PropertyColumns.Field[] fields, long[] sums, int[] counts) {
+        PropertyColumns columns = getPropertyColumnsByZip(zip);
+        int[][] values = new int[fields.length][];
+        boolean[][] present = new boolean[fields.length][];
+        for (int f = 0; f < fields.length; f++) {
+            values[f] = columns.getValues(fields[f]);
+            present[f] = columns.getPresent(fields[f]);
+        }
+        kernel.maskedSums(values, present, columns.size(), sums, counts);
+    }
+
+    @Override
+    public int[] getPresentValues(String zip, PropertyColumns.Field field) {
+        PropertyColumns columns = getPropertyColumnsByZip(zip);
+        int[] values = columns.getValues(field);
+        boolean[] present = columns.getPresent(field);
+
+        int[] result = new int[kernel.countPresent(present, columns.size())];
+        int length = 0;
+        for (int i = 0; i < columns.size(); i++) {
+            if (present[i]) result[length++] = values[i];
+        }
+        return result;
+    }
+
+    @Override
+    public Set<String> getZipCodes() {
+        if (zipCodes == null) {
+            zipCodes = new HashSet<>();
+            for (Property property : properties) {
+                zipCodes.add(property.getZipCode());
+            }
+        }
+        return zipCodes;
+    }
+
+    /**
+     * Filters properties by ZIP code and memoizes the result.
+     */
+    @Override
+    public List<Property> getProperties(String zip) {
+        if (propertyDataByZip.containsKey(zip)) {
+            return propertyDataByZip.get(zip);
+        }
+
+        List<Property> result = new ArrayList<>();
+        for (Property property : properties) {
+            if (zip.equals(property.getZipCode())) {
+                result.add(property);
+            }
+        }
+
+        propertyDataByZip.put(zip, result); // update the cache
+        return result;
+    }
+
+    @Override
+    public void setAggregationKernel(AggregationKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    /**
+     * Returns the properties of a ZIP as primitive columns and memoizes the result.
+     */
+    private PropertyColumns getPropertyColumnsByZip(String zip) {
+        PropertyColumns columns = propertyColumnsByZip.get(zip);
+        if (columns == null) {
+            columns = PropertyColumns.of(getProperties(zip));
+            propertyColumnsByZip.put(zip, columns);
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,47 @@
+package dataanalysis.processor;
+
+/**
+ * Rough sizes of the objects the stores keep on the heap, on a 64-bit JVM with compressed
+ * references. The stores add them up in their estimateBytes, which lets {@link DatasetCatalog}
+ * budget its datasets without measuring the heap. They ignore sharing, e.g. of ZIP strings
+ * through a {@link StringDictionary}, so they err on the large side.
+ */
+final class HeapSizes {
+
+    // a reference in an array or list slot
+    static final long REFERENCE = 4;
+
+    // an array's header and length
+    static final long ARRAY = 16;
+
+    // a boxed Integer, Long or Double
+    static final long BOXED = 16;
+
+    // a hash map entry: its node and table slot, without its key and value
+    static final long MAP_ENTRY = 40;
+
+    // a ZIP code: the String and its five bytes
+    static final long ZIP = 48;
+
+    // a timestamp such as "2021-03-05 04:15:00": the String and its bytes
+    static final long TIMESTAMP = 64;
+
+    // a CovidRecord without its strings
+    static final long COVID_RECORD = 32;
+
+    // a Property without its ZIP and boxed values
+    static final long PROPERTY = 24;
+
+    // a Population without its ZIP
+    static final long POPULATION = 24;
+
+    private HeapSizes() {
+    }
+
+    /**
+     * @return the bytes of a map from ZIP code to a boxed number, with its keys
+     */
+    static long zipMap(int entries) {
+        return entries * (MAP_ENTRY + ZIP + BOXED);
+    }
+}
@@ -0,0 +1,107 @@
+package dataanalysis.processor;
+
+import dataanalysis.datamanagement.PropertySource;
+import dataanalysis.util.Property;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads the properties of a ZIP code from the file only when that ZIP is first
+ * queried, through the reader's per-ZIP index. Loaded ZIPs are kept in a heap store.
+ */
+public class LazyPropertyStore implements RetainingPropertyStore {
+
+    private final PropertySource reader;
+    private final HeapPropertyStore loaded = new HeapPropertyStore();
+    private final Set<String> loadedZips = new HashSet<>();
+    private int size;
+
+    /**
+     * @param reader a reader that can read by ZIP (see {@link PropertySource#canReadByZip()})
+     */
+    public LazyPropertyStore(PropertySource reader) {
+        this.reader = reader;
+        try {
+            // builds or loads the index, which also gives the row count without parsing the rows
+            this.size = reader.getIndexedRowCount();
+        } catch (IOException e) {
+            System.err.println("Error reading property CSV: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the bytes of the ZIPs loaded so far, which is little right after loading
+     */
+    @Override
+    public long estimateBytes() {
+        return loaded.estimateBytes() + loadedZips.size() * (HeapSizes.MAP_ENTRY + HeapSizes.ZIP);
+    }
+
+    @Override
+    public int count(String zip) {
+        ensureLoaded(zip);
+        return loaded.count(zip);
+    }
+
+    @Override
+    public long sum(String zip, PropertyColumns.Field field) {
+        ensureLoaded(zip);
+        return loaded.sum(zip, field);
+    }
+
+    @Override
+    public int countPresent(String zip, PropertyColumns.Field field) {
+        ensureLoaded(zip);
+        return loaded.countPresent(zip, field);
+    }
+
+    @Override
+    public void sumPresent(String zip, PropertyColumns.Field[] fields, long[] sums, int[] counts) {
+        ensureLoaded(zip);
+        loaded.sumPresent(zip, fields, sums, counts);
+    }
+
+    @Override
+    public int[] getPresentValues(String zip, PropertyColumns.Field field) {
+        ensureLoaded(zip);
+        return loaded.getPresentValues(zip, field);
+    }
+
+    /**
+     * Returns the ZIP codes of the per-ZIP index, without reading any rows.
+     */
+    @Override
+    public Set<String> getZipCodes() {
+        try {
+            return reader.getIndexedZipCodes();
+        } catch (IOException e) {
+            System.err.println("Error reading property CSV: " + e.getMessage());
+            return Set.of();
+        }
+    }
+
+    @Override
+    public List<Property> getProperties(String zip) {
+        ensureLoaded(zip);
+        return loaded.getProperties(zip);
+    }
+
+    @Override
+    public void setAggregationKernel(AggregationKernel kernel) {
+        loaded.setAggregationKernel(kernel);
+    }
+
+    private void ensureLoaded(String zip) {
+        if (loadedZips.add(zip)) {
+            reader.readPropertyData(zip, loaded::add);
+        }
+    }
+}
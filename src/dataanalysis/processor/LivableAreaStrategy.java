@@ -16,4 +16,20 @@ public class LivableAreaStrategy implements AverageCalculationStrategy {
         Integer area = property.getTotalLivableArea();
         return (area != null) ? area : 0; // Return 0 if livable area is not provided
     }
+
+    /**
+     * Extracts the total livable area of the given property.
+     *
+     * @param property The property from which to extract the value.
+     * @return The total livable area of the property, or null if the value is not provided.
+     */
+    @Override
+    public Integer extractNullableValue(Property property) {
+        return property.getTotalLivableArea();
+    }
+
+    @Override
+    public PropertyColumns.Field getField() {
+        return PropertyColumns.Field.TOTAL_LIVABLE_AREA;
+    }
 }
\ No newline at end of file
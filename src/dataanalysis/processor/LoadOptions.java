@@ -0,0 +1,93 @@
+package dataanalysis.processor;
+
+import dataanalysis.datamanagement.PropertySource;
+
+/**
+ * How a {@link Processor} loads its input files. The defaults read every record eagerly onto the heap.
+ */
+public class LoadOptions {
+
+    // Where the loaded property and covid records are kept
+    private StorageMode storageMode = StorageMode.HEAP;
+
+    // Read single dates and single ZIPs on demand when the readers can
+    private boolean lazy;
+
+    // The ZIP codes to keep, or null to keep every record
+    private ZipRange shard;
+
+    // The share of the property file to sample at startup, or 0 to load it all
+    private double propertySampleFraction;
+
+    // The shared strings of the loaded records, or null to keep the strings as read
+    private StringDictionary dictionary;
+
+    /**
+     * @return where the loaded property and covid records are kept
+     */
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    public void setStorageMode(StorageMode storageMode) {
+        this.storageMode = storageMode;
+    }
+
+    /**
+     * @return true if a covid reader that can read single dates and a property reader that can read
+     *         single ZIPs are not read up front; each queried date or ZIP is read on demand instead
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * Records outside the shard are dropped while the files are read, as a shard worker does.
+     * A sharded processor always loads eagerly, since the lazy readers cannot filter by ZIP.
+     *
+     * @return the ZIP codes to keep, or null to keep every record
+     */
+    public ZipRange getShard() {
+        return shard;
+    }
+
+    public void setShard(ZipRange shard) {
+        this.shard = shard;
+    }
+
+    /**
+     * In approximate mode only a random share of the property file's blocks is read at startup;
+     * the property averages and market value per capita are then estimated from it with confidence
+     * intervals. The full property data is loaded in the background when
+     * {@link Processor#upgradeToExact()} is called, or when another property query needs it.
+     * Sampling needs a reader that can seek (see {@link PropertySource#canReadByZip()}) and a
+     * storage mode that retains the property values.
+     *
+     * @return the share of the property file to sample, or 0 to load it all
+     */
+    public double getPropertySampleFraction() {
+        return propertySampleFraction;
+    }
+
+    public void setPropertySampleFraction(double propertySampleFraction) {
+        this.propertySampleFraction = propertySampleFraction;
+    }
+
+    /**
+     * Loaded records use the dictionary's instances of their ZIP codes and timestamps, so that
+     * processors sharing a dictionary hold each of these strings once.
+     *
+     * @return the shared strings, or null to keep the strings as read
+     */
+    public StringDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public void setDictionary(StringDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+}
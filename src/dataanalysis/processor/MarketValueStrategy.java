@@ -16,4 +16,20 @@ public class MarketValueStrategy implements AverageCalculationStrategy {
         Integer value = property.getMarketValue();
         return (value != null) ? value : 0; // Default to 0 if no market value is provided
     }
+
+    /**
+     * Extracts the market value of the given property.
+     *
+     * @param property The property from which to extract the value.
+     * @return The market value of the property, or null if the value is not provided.
+     */
+    @Override
+    public Integer extractNullableValue(Property property) {
+        return property.getMarketValue();
+    }
+
+    @Override
+    public PropertyColumns.Field getField() {
+        return PropertyColumns.Field.MARKET_VALUE;
+    }
 }
\ No newline at end of file
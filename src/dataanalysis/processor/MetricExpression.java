@@ -0,0 +1,401 @@
+package dataanalysis.processor;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A user-defined per-ZIP metric, e.g. {@code sum(market_value)/sum(total_livable_area)} or {@code full/population}.
+ *
+ * <p>The language has numbers, {@code + - * /}, unary minus and parentheses over these terms:
+ * <ul>
+ *   <li>{@code population}: the ZIP's population</li>
+ *   <li>{@code partial}, {@code full}: the ZIP's partial or full vaccinations on the queried date</li>
+ *   <li>{@code sum(f)}, {@code avg(f)}, {@code min(f)}, {@code max(f)}, {@code count(f)}: aggregates of the
+ *       present values of a property field in the ZIP, where f is {@code market_value} or {@code total_livable_area}</li>
+ *   <li>{@code count()}: the number of properties in the ZIP</li>
+ * </ul>
+ *
+ * <p>An expression is parsed once into a tree of method handles, which the JIT compiles into straight-line
+ * code like a hand-written strategy. The property aggregates go through the store's own sums and counts,
+ * so they use the same aggregation kernels as the built-in averages.
+ */
+public final class MetricExpression {
+
+    private static final MethodType EVALUATOR = MethodType.methodType(double.class, Context.class);
+    private static final MethodType OPERATOR = MethodType.methodType(double.class, double.class, double.class);
+
+    private final String text;
+    private final MethodHandle evaluator;
+    private final boolean usesProperties;
+    private final boolean usesPopulation;
+    private final boolean usesPartial;
+    private final boolean usesFull;
+
+    private MetricExpression(String text, Parser parser) {
+        this.text = text;
+        this.evaluator = parser.compile();
+        this.usesProperties = parser.usesProperties;
+        this.usesPopulation = parser.usesPopulation;
+        this.usesPartial = parser.usesPartial;
+        this.usesFull = parser.usesFull;
+    }
+
+    /**
+     * Parses and compiles an expression.
+     *
+     * @throws IllegalArgumentException with the position of the error if the expression is not valid
+     */
+    public static MetricExpression compile(String text) {
+        return new MetricExpression(text, new Parser(text));
+    }
+
+    /**
+     * @return true if the expression aggregates property fields
+     */
+    public boolean usesProperties() {
+        return usesProperties;
+    }
+
+    /**
+     * @return true if the expression refers to the population
+     */
+    public boolean usesPopulation() {
+        return usesPopulation;
+    }
+
+    /**
+     * @return true if the expression refers to vaccinations, which makes it depend on a date
+     */
+    public boolean usesVaccinations() {
+        return usesPartial || usesFull;
+    }
+
+    boolean usesPartial() {
+        return usesPartial;
+    }
+
+    boolean usesFull() {
+        return usesFull;
+    }
+
+    /**
+     * Evaluates the expression for each ZIP. A ZIP missing from a map counts as 0 there;
+     * ZIPs whose value is not a finite number, e.g. after a division by zero, are left out.
+     *
+     * @param store the properties, or null if the expression does not use them
+     * @return the value of each ZIP, ordered by ZIP
+     */
+    Map<String, Double> evaluate(Collection<String> zips, PropertyStore store, Map<String, Integer> population,
+                                 Map<String, Integer> partial, Map<String, Integer> full) {
+        Map<String, Double> result = new TreeMap<>();
+        Context context = new Context();
+        context.store = store;
+        for (String zip : zips) {
+            context.zip = zip;
+            context.population = population.getOrDefault(zip, 0);
+            context.partial = partial.getOrDefault(zip, 0);
+            context.full = full.getOrDefault(zip, 0);
+            double value;
+            try {
+                value = (double) evaluator.invokeExact(context);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+            if (Double.isFinite(value)) result.put(zip, value);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    /**
+     * The ZIP an evaluator is called for; one instance is reused for all ZIPs.
+     */
+    static final class Context {
+        String zip;
+        PropertyStore store;
+        double population;
+        double partial;
+        double full;
+    }
+
+    // ==== Operations the compiled handles call ====
+
+    private static double add(double left, double right) {
+        return left + right;
+    }
+
+    private static double subtract(double left, double right) {
+        return left - right;
+    }
+
+    private static double multiply(double left, double right) {
+        return left * right;
+    }
+
+    private static double divide(double left, double right) {
+        return left / right;
+    }
+
+    private static double negate(double value) {
+        return -value;
+    }
+
+    private static double sum(PropertyColumns.Field field, Context context) {
+        return context.store.sum(context.zip, field);
+    }
+
+    private static double count(PropertyColumns.Field field, Context context) {
+        return context.store.countPresent(context.zip, field);
+    }
+
+    private static double average(PropertyColumns.Field field, Context context) {
+        int count = context.store.countPresent(context.zip, field);
+        return count > 0 ? (double) context.store.sum(context.zip, field) / count : Double.NaN;
+    }
+
+    private static double minimum(PropertyColumns.Field field, Context context) {
+        Integer min = context.store.min(context.zip, field);
+        return min != null ? min : Double.NaN;
+    }
+
+    private static double maximum(PropertyColumns.Field field, Context context) {
+        Integer max = context.store.max(context.zip, field);
+        return max != null ? max : Double.NaN;
+    }
+
+    private static double properties(Context context) {
+        return context.store.count(context.zip);
+    }
+
+    /**
+     * Recursive descent parser that builds the evaluator handle as it goes:
+     * <pre>
+     * expression := term (('+' | '-') term)*
+     * term       := unary (('*' | '/') unary)*
+     * unary      := '-' unary | primary
+     * primary    := number | '(' expression ')' | name | name '(' [field] ')'
+     * </pre>
+     */
+    private static final class Parser {
+        private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+        private final String text;
+        private final MethodHandle root;
+        private int position;
+        boolean usesProperties;
+        boolean usesPopulation;
+        boolean usesPartial;
+        boolean usesFull;
+
+        Parser(String text) {
+            this.text = text;
+            skipSpaces();
+            if (position == text.length()) throw error("Empty expression");
+            this.root = expression();
+            if (position < text.length()) throw error("Unexpected '" + text.charAt(position) + "'");
+        }
+
+        MethodHandle compile() {
+            return root;
+        }
+
+        private MethodHandle expression() {
+            MethodHandle left = term();
+            while (true) {
+                if (accept('+')) left = combine("add", left, term());
+                else if (accept('-')) left = combine("subtract", left, term());
+                else return left;
+            }
+        }
+
+        private MethodHandle term() {
+            MethodHandle left = unary();
+            while (true) {
+                if (accept('*')) left = combine("multiply", left, unary());
+                else if (accept('/')) left = combine("divide", left, unary());
+                else return left;
+            }
+        }
+
+        private MethodHandle unary() {
+            if (accept('-')) {
+                return MethodHandles.filterReturnValue(unary(),
+                        find("negate", MethodType.methodType(double.class, double.class)));
+            }
+            return primary();
+        }
+
+        private MethodHandle primary() {
+            if (accept('(')) {
+                MethodHandle inner = expression();
+                expect(')');
+                return inner;
+            }
+
+            int start = position;
+            if (position < text.length() && (Character.isDigit(text.charAt(position)) || text.charAt(position) == '.')) {
+                while (position < text.length()
+                        && (Character.isDigit(text.charAt(position)) || text.charAt(position) == '.')) {
+                    position++;
+                }
+                double value;
+                try {
+                    value = Double.parseDouble(text.substring(start, position));
+                } catch (NumberFormatException e) {
+                    position = start;
+                    throw error("Invalid number");
+                }
+                skipSpaces();
+                return MethodHandles.dropArguments(MethodHandles.constant(double.class, value), 0, Context.class);
+            }
+
+            String name = name();
+            if (name.isEmpty()) {
+                throw error(position < text.length() ? "Unexpected '" + text.charAt(position) + "'" : "Unexpected end");
+            }
+            if (accept('(')) {
+                return aggregate(name, start);
+            }
+            switch (name) {
+                case "population":
+                    usesPopulation = true;
+                    return field("population");
+                case "partial":
+                    usesPartial = true;
+                    return field("partial");
+                case "full":
+                    usesFull = true;
+                    return field("full");
+                default:
+                    position = start;
+                    throw error("Unknown name '" + name + "'");
+            }
+        }
+
+        /**
+         * Parses the argument of an aggregate after its opening parenthesis.
+         */
+        private MethodHandle aggregate(String function, int start) {
+            usesProperties = true;
+            if (accept(')')) {
+                if (!function.equals("count")) {
+                    position = start;
+                    throw error(function + "() needs a property field");
+                }
+                return find("properties", EVALUATOR);
+            }
+
+            int fieldStart = position;
+            String fieldName = name();
+            PropertyColumns.Field field;
+            switch (fieldName) {
+                case "market_value":
+                    field = PropertyColumns.Field.MARKET_VALUE;
+                    break;
+                case "total_livable_area":
+                    field = PropertyColumns.Field.TOTAL_LIVABLE_AREA;
+                    break;
+                default:
+                    position = fieldStart;
+                    throw error(fieldName.isEmpty() ? "Expected a property field"
+                            : "Unknown property field '" + fieldName + "'");
+            }
+            expect(')');
+
+            String method;
+            switch (function) {
+                case "sum":
+                    method = "sum";
+                    break;
+                case "avg":
+                    method = "average";
+                    break;
+                case "min":
+                    method = "minimum";
+                    break;
+                case "max":
+                    method = "maximum";
+                    break;
+                case "count":
+                    method = "count";
+                    break;
+                default:
+                    position = start;
+                    throw error("Unknown function '" + function + "'");
+            }
+            MethodHandle handle = find(method,
+                    MethodType.methodType(double.class, PropertyColumns.Field.class, Context.class));
+            return MethodHandles.insertArguments(handle, 0, field);
+        }
+
+        /**
+         * @return (Context)double of the two operands combined by the named operator
+         */
+        private MethodHandle combine(String operator, MethodHandle left, MethodHandle right) {
+            // (double, double) -> (Context, Context) -> (Context)
+            MethodHandle both = MethodHandles.filterArguments(find(operator, OPERATOR), 0, left, right);
+            return MethodHandles.permuteArguments(both, EVALUATOR, 0, 0);
+        }
+
+        private MethodHandle field(String name) {
+            try {
+                return LOOKUP.findGetter(Context.class, name, double.class);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private static MethodHandle find(String name, MethodType type) {
+            try {
+                return LOOKUP.findStatic(MetricExpression.class, name, type);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private String name() {
+            int start = position;
+            while (position < text.length()
+                    && (Character.isLetterOrDigit(text.charAt(position)) || text.charAt(position) == '_')) {
+                position++;
+            }
+            String name = text.substring(start, position).toLowerCase();
+            skipSpaces();
+            return name;
+        }
+
+        private boolean accept(char expected) {
+            if (position < text.length() && text.charAt(position) == expected) {
+                position++;
+                skipSpaces();
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char expected) {
+            if (!accept(expected)) {
+                throw error(position < text.length() ? "Expected '" + expected + "' but found '" + text.charAt(position) + "'"
+                        : "Expected '" + expected + "'");
+            }
+        }
+
+        private void skipSpaces() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) position++;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + (position + 1));
+        }
+    }
+}
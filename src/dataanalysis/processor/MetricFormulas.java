@@ -0,0 +1,103 @@
+package dataanalysis.processor;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * The arithmetic that turns counts and sums into the answers of the queries. {@link Processor}
+ * and {@link DistributedProcessor} gather their counts differently but finish them here, so
+ * both give identical results.
+ */
+final class MetricFormulas {
+
+    private MetricFormulas() {
+    }
+
+    /**
+     * @return the vaccinations per person of each ZIP with vaccinations and a population,
+     *         rounded to 4 decimals and ordered by ZIP
+     */
+    static Map<String, Double> vaccinationPerCapita(Map<String, Integer> vaccinationsByZip,
+                                                    Map<String, Integer> populationByZip) {
+        Map<String, Double> result = new TreeMap<>();
+        for (String zip : vaccinationsByZip.keySet()) {
+            int vaccinated = vaccinationsByZip.get(zip);
+            int population = populationByZip.getOrDefault(zip, 0);
+            if (vaccinated == 0 || population == 0) continue;
+
+            double perCapita = (double) vaccinated / population;
+            result.put(zip, round(perCapita));
+        }
+        return result;
+    }
+
+    /**
+     * Computes the health risk index, the unvaccinated people per unit of livable area, of each ZIP
+     * with a population and livable area. If there are no vaccinations at all, e.g. for a date
+     * without data, every ZIP with a population reports 0.
+     *
+     * @param vaccinationsByZip the full vaccinations of each ZIP on the date
+     * @param livableArea the total livable area of a ZIP
+     * @return the index of each ZIP, rounded to 4 decimals and ordered by ZIP
+     */
+    static Map<String, Double> healthRiskIndex(Map<String, Integer> populationByZip, Map<String, Integer> vaccinationsByZip,
+                                               ToLongFunction<String> livableArea) {
+        Map<String, Double> result = new TreeMap<>();
+        if (vaccinationsByZip.isEmpty()) {
+            for (String zip : populationByZip.keySet()) {
+                result.put(zip, 0.0);
+            }
+            return result;
+        }
+
+        for (String zip : populationByZip.keySet()) {
+            int population = populationByZip.get(zip);
+            int vaccinated = vaccinationsByZip.getOrDefault(zip, 0);
+            long area = livableArea.applyAsLong(zip);
+            if (population == 0 || area == 0) continue;
+
+            double vaccinationRate = (double) vaccinated / population;
+            double index = ((1.0 - vaccinationRate) * population) / area;
+            result.put(zip, round(index));
+        }
+        return result;
+    }
+
+    /**
+     * @return the truncated average of a sum over count values, or 0 without values
+     */
+    static int average(long sum, int count) {
+        return count > 0 ? (int) (sum / count) : 0;
+    }
+
+    /**
+     * @return the truncated market value per person, or 0 without population or properties
+     */
+    static int marketValuePerCapita(long totalMarketValue, int properties, int population) {
+        if (population == 0 || properties == 0) return 0;
+        return (int) (totalMarketValue / population);
+    }
+
+    /**
+     * Evaluates a user-defined metric for every ZIP code that appears in the data the expression uses.
+     *
+     * @param store the property totals, or null if the expression uses no properties
+     */
+    static Map<String, Double> evaluate(MetricExpression expression, PropertyStore store,
+                                        Map<String, Integer> populationByZip,
+                                        Map<String, Integer> partial, Map<String, Integer> full) {
+        Set<String> zips = new HashSet<>();
+        if (store != null) zips.addAll(store.getZipCodes());
+        if (expression.usesPopulation()) zips.addAll(populationByZip.keySet());
+        zips.addAll(partial.keySet());
+        zips.addAll(full.keySet());
+        return expression.evaluate(zips, store, populationByZip, partial, full);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10000.0) / 10000.0;
+    }
+}
@@ -0,0 +1,167 @@
+package dataanalysis.processor;
+
+import dataanalysis.util.CovidRecord;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the COVID records as primitive columns outside the Java heap.
+ * ZIP codes are stored as ints and timestamps as their date (yyyymmdd), which is
+ * all the queries look at, so a date filter is a single int comparison per row.
+ */
+public class OffHeapCovidStore implements CovidStore {
+
+    private static final int CHUNK_ROWS = 1 << 16;
+
+    // chunk layout: zip ints, date ints, partially vaccinated ints, fully vaccinated ints
+    private static final long DATE_OFFSET = CHUNK_ROWS * 4L;
+    private static final long PARTIAL_OFFSET = CHUNK_ROWS * 8L;
+    private static final long FULL_OFFSET = CHUNK_ROWS * 12L;
+    private static final long CHUNK_BYTES = CHUNK_ROWS * 16L;
+
+    private final OffHeapMemory memory;
+    private final List<MemorySegment> chunks = new ArrayList<>();
+    private int size;
+
+    /**
+     * @param mapped if true, the columns live in memory-mapped temporary files instead of native memory
+     */
+    public OffHeapCovidStore(boolean mapped) {
+        this.memory = new OffHeapMemory(mapped);
+    }
+
+    @Override
+    public void add(CovidRecord record) {
+        int date = encodeDate(record.getEtlTimestamp());
+        if (date < 0) return;   // the readers only pass validated timestamps
+
+        int offset = size % CHUNK_ROWS;
+        if (offset == 0) {
+            chunks.add(memory.allocate(CHUNK_BYTES));
+        }
+        MemorySegment chunk = chunks.get(chunks.size() - 1);
+
+        chunk.setAtIndex(ValueLayout.JAVA_INT, offset, Integer.parseInt(record.getZipCode()));
+        chunk.set(ValueLayout.JAVA_INT, DATE_OFFSET + offset * 4L, date);
+        chunk.set(ValueLayout.JAVA_INT, PARTIAL_OFFSET + offset * 4L, record.getPartiallyVaccinated());
+        chunk.set(ValueLayout.JAVA_INT, FULL_OFFSET + offset * 4L, record.getFullyVaccinated());
+        size++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the bytes of the off-heap chunks; the records take no heap
+     */
+    @Override
+    public long estimateBytes() {
+        return memory.getAllocatedBytes();
+    }
+
+    @Override
+    public Map<String, Integer> getVaccinationCounts(String type, String date) {
+        Map<String, Integer> vaccinationCounts = new HashMap<>();
+
+        String lower = type.toLowerCase();
+        int target = date.length() == 10 ? encodeDate(date) : -1;
+        if (target < 0 || (!lower.equals("partial") && !lower.equals("full"))) return vaccinationCounts;
+        long countOffset = lower.equals("partial") ? PARTIAL_OFFSET : FULL_OFFSET;
+
+        Map<Integer, Integer> countsByZip = new HashMap<>();
+        for (int row = 0; row < size; row++) {
+            MemorySegment chunk = chunks.get(row / CHUNK_ROWS);
+            int offset = row % CHUNK_ROWS;
+
+            if (chunk.get(ValueLayout.JAVA_INT, DATE_OFFSET + offset * 4L) != target) continue;
+
+            int vaccinationCount = chunk.get(ValueLayout.JAVA_INT, countOffset + offset * 4L);
+            if (vaccinationCount <= 0) continue;
+
+            countsByZip.merge(chunk.getAtIndex(ValueLayout.JAVA_INT, offset), vaccinationCount, Integer::sum);
+        }
+
+        for (Map.Entry<Integer, Integer> entry : countsByZip.entrySet()) {
+            vaccinationCounts.put(String.format("%05d", entry.getKey()), entry.getValue());
+        }
+        return vaccinationCounts;
+    }
+
+    /**
+     * Scans the columns once, split across cores, and counts every requested date in the same pass.
+     */
+    @Override
+    public Map<String, Map<String, Integer>> getVaccinationCounts(String type, Collection<String> dates) {
+        Map<String, Map<String, Integer>> countsByDate = new HashMap<>();
+        Map<Integer, String> targets = new HashMap<>();
+        for (String date : dates) {
+            countsByDate.put(date, new HashMap<>());
+            int target = date.length() == 10 ? encodeDate(date) : -1;
+            if (target >= 0) targets.put(target, date);
+        }
+
+        String lower = type.toLowerCase();
+        if (targets.isEmpty() || (!lower.equals("partial") && !lower.equals("full"))) return countsByDate;
+        long countOffset = lower.equals("partial") ? PARTIAL_OFFSET : FULL_OFFSET;
+
+        List<Map<Integer, Map<Integer, Integer>>> slices = ParallelScan.run(size, (from, to) -> {
+            Map<Integer, Map<Integer, Integer>> sliceCounts = new HashMap<>();
+            for (int row = from; row < to; row++) {
+                MemorySegment chunk = chunks.get(row / CHUNK_ROWS);
+                int offset = row % CHUNK_ROWS;
+
+                int date = chunk.get(ValueLayout.JAVA_INT, DATE_OFFSET + offset * 4L);
+                if (!targets.containsKey(date)) continue;
+
+                int vaccinationCount = chunk.get(ValueLayout.JAVA_INT, countOffset + offset * 4L);
+                if (vaccinationCount <= 0) continue;
+
+                sliceCounts.computeIfAbsent(date, d -> new HashMap<>())
+                        .merge(chunk.getAtIndex(ValueLayout.JAVA_INT, offset), vaccinationCount, Integer::sum);
+            }
+            return sliceCounts;
+        });
+
+        for (Map<Integer, Map<Integer, Integer>> slice : slices) {
+            for (Map.Entry<Integer, Map<Integer, Integer>> entry : slice.entrySet()) {
+                Map<String, Integer> counts = countsByDate.get(targets.get(entry.getKey()));
+                entry.getValue().forEach((zip, count) -> counts.merge(String.format("%05d", zip), count, Integer::sum));
+            }
+        }
+        return countsByDate;
+    }
+
+    @Override
+    public void close() {
+        memory.close();
+    }
+
+    /**
+     * Encodes the YYYY-MM-DD prefix of a date or timestamp as yyyymmdd.
+     *
+     * @return the encoded date, or -1 if the prefix is not a date in that format
+     */
+    static int encodeDate(String value) {
+        if (value == null || value.length() < 10) return -1;
+
+        int encoded = 0;
+        for (int i = 0; i < 10; i++) {
+            char c = value.charAt(i);
+            if (i == 4 || i == 7) {
+                if (c != '-') return -1;
+            } else {
+                if (c < '0' || c > '9') return -1;
+                encoded = encoded * 10 + (c - '0');
+            }
+        }
+        return encoded;
+    }
+}
@@ -0,0 +1,70 @@
+package dataanalysis.processor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Allocates memory segments outside the Java heap, either from native memory
+ * or by mapping temporary files. All segments are released together on close.
+ */
+class OffHeapMemory implements AutoCloseable {
+
+    private final Arena arena = Arena.ofShared();
+    private final boolean mapped;
+    private long allocated;     // guarded by this
+
+    OffHeapMemory(boolean mapped) {
+        this.mapped = mapped;
+    }
+
+    /**
+     * Allocates a zero-filled segment of the given size.
+     */
+    MemorySegment allocate(long bytes) {
+        long size = Math.max(bytes, 8);
+        synchronized (this) {
+            allocated += size;
+        }
+        if (!mapped) {
+            return arena.allocate(size, 8);
+        }
+
+        try {
+            Path file = Files.createTempFile("dataanalysis-", ".bin");
+            MemorySegment segment;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size, arena);
+            }
+            // the mapping stays valid after the file is unlinked; fall back to deleting on exit where it is not
+            try {
+                Files.delete(file);
+            } catch (IOException e) {
+                file.toFile().deleteOnExit();
+            }
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map storage file", e);
+        }
+    }
+
+    /**
+     * @return the bytes allocated and not yet released by closing
+     */
+    synchronized long getAllocatedBytes() {
+        return allocated;
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+        synchronized (this) {
+            allocated = 0;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package dataanalysis.processor;
+
+import dataanalysis.util.Property;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Keeps the properties as primitive columns outside the Java heap.
+ * Rows are staged in fixed-size chunks while loading; {@link #finish()} then
+ * regroups them so that each ZIP occupies one contiguous range of the columns.
+ * The heap only holds the ZIP-to-range map, whatever the number of rows.
+ */
+public class OffHeapPropertyStore implements WritablePropertyStore, RetainingPropertyStore {
+
+    private static final int CHUNK_ROWS = 1 << 16;
+
+    // staging chunk layout: zip ints, market value ints, livable area ints, flag bytes
+    private static final long MARKET_OFFSET = CHUNK_ROWS * 4L;
+    private static final long AREA_OFFSET = CHUNK_ROWS * 8L;
+    private static final long FLAGS_OFFSET = CHUNK_ROWS * 12L;
+    private static final long CHUNK_BYTES = CHUNK_ROWS * 13L;
+
+    private static final byte MARKET_PRESENT = 1;
+    private static final byte AREA_PRESENT = 2;
+
+    private final OffHeapMemory memory;
+    private OffHeapMemory staging;
+    private final List<MemorySegment> chunks = new ArrayList<>();
+    private final Map<Integer, Integer> countsByZip = new HashMap<>();
+    private int size;
+
+    // final columns, grouped by ZIP
+    private MemorySegment marketValues;
+    private MemorySegment livableAreas;
+    private MemorySegment flags;
+    private final Map<String, int[]> rangesByZip = new HashMap<>();   // zip -> {start, length}
+
+    /**
+     * @param mapped if true, the columns live in memory-mapped temporary files instead of native memory
+     */
+    public OffHeapPropertyStore(boolean mapped) {
+        this.memory = new OffHeapMemory(mapped);
+        this.staging = new OffHeapMemory(mapped);
+    }
+
+    @Override
+    public void add(Property property) {
+        int offset = size % CHUNK_ROWS;
+        if (offset == 0) {
+            chunks.add(staging.allocate(CHUNK_BYTES));
+        }
+        MemorySegment chunk = chunks.get(chunks.size() - 1);
+
+        int zip = Integer.parseInt(property.getZipCode());
+        byte flag = 0;
+        chunk.setAtIndex(ValueLayout.JAVA_INT, offset, zip);
+        if (property.getMarketValue() != null) {
+            chunk.set(ValueLayout.JAVA_INT, MARKET_OFFSET + offset * 4L, property.getMarketValue());
+            flag |= MARKET_PRESENT;
+        }
+        if (property.getTotalLivableArea() != null) {
+            chunk.set(ValueLayout.JAVA_INT, AREA_OFFSET + offset * 4L, property.getTotalLivableArea());
+            flag |= AREA_PRESENT;
+        }
+        chunk.set(ValueLayout.JAVA_BYTE, FLAGS_OFFSET + offset, flag);
+
+        countsByZip.merge(zip, 1, Integer::sum);
+        size++;
+    }
+
+    /**
+     * Scatters the staged rows into per-ZIP ranges of the final columns and releases the staging chunks.
+     */
+    @Override
+    public void finish() {
+        marketValues = memory.allocate(size * 4L);
+        livableAreas = memory.allocate(size * 4L);
+        flags = memory.allocate(size);
+
+        // assign each ZIP a contiguous range, in ZIP order
+        Map<Integer, Integer> cursors = new TreeMap<>();
+        int start = 0;
+        for (Map.Entry<Integer, Integer> entry : new TreeMap<>(countsByZip).entrySet()) {
+            rangesByZip.put(formatZip(entry.getKey()), new int[]{start, entry.getValue()});
+            cursors.put(entry.getKey(), start);
+            start += entry.getValue();
+        }
+
+        for (int row = 0; row < size; row++) {
+            MemorySegment chunk = chunks.get(row / CHUNK_ROWS);
+            int offset = row % CHUNK_ROWS;
+
+            int zip = chunk.getAtIndex(ValueLayout.JAVA_INT, offset);
+            int target = cursors.merge(zip, 1, Integer::sum) - 1;
+
+            marketValues.setAtIndex(ValueLayout.JAVA_INT, target, chunk.get(ValueLayout.JAVA_INT, MARKET_OFFSET + offset * 4L));
+            livableAreas.setAtIndex(ValueLayout.JAVA_INT, target, chunk.get(ValueLayout.JAVA_INT, AREA_OFFSET + offset * 4L));
+            flags.set(ValueLayout.JAVA_BYTE, target, chunk.get(ValueLayout.JAVA_BYTE, FLAGS_OFFSET + offset));
+        }
+
+        chunks.clear();
+        countsByZip.clear();
+        staging.close();
+        staging = null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the bytes of the off-heap columns, and of the staging chunks while loading, plus the per-ZIP ranges
+     */
+    @Override
+    public long estimateBytes() {
+        long bytes = memory.getAllocatedBytes() + (staging != null ? staging.getAllocatedBytes() : 0);
+        return bytes + rangesByZip.size() * (HeapSizes.MAP_ENTRY + HeapSizes.ZIP + HeapSizes.ARRAY + 8)
+                + countsByZip.size() * (HeapSizes.MAP_ENTRY + 2 * HeapSizes.BOXED);
+    }
+
+    @Override
+    public int count(String zip) {
+        int[] range = rangesByZip.get(zip);
+        return range != null ? range[1] : 0;
+    }
+
+    @Override
+    public long sum(String zip, PropertyColumns.Field field) {
+        int[] range = rangesByZip.get(zip);
+        if (range == null) return 0;
+
+        MemorySegment values = column(field);
+        byte mask = mask(field);
+        long total = 0;
+        for (int i = range[0]; i < range[0] + range[1]; i++) {
+            if ((flags.get(ValueLayout.JAVA_BYTE, i) & mask) != 0) {
+                total += values.getAtIndex(ValueLayout.JAVA_INT, i);
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public int countPresent(String zip, PropertyColumns.Field field) {
+        int[] range = rangesByZip.get(zip);
+        if (range == null) return 0;
+
+        byte mask = mask(field);
+        int count = 0;
+        for (int i = range[0]; i < range[0] + range[1]; i++) {
+            if ((flags.get(ValueLayout.JAVA_BYTE, i) & mask) != 0) count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void sumPresent(String zip, PropertyColumns.Field[] fields, long[] sums, int[] counts) {
+        int[] range = rangesByZip.get(zip);
+        if (range == null) return;
+
+        MemorySegment[] values = new MemorySegment[fields.length];
+        byte[] masks = new byte[fields.length];
+        for (int f = 0; f < fields.length; f++) {
+            values[f] = column(fields[f]);
+            masks[f] = mask(fields[f]);
+        }
+        for (int i = range[0]; i < range[0] + range[1]; i++) {
+            byte flag = flags.get(ValueLayout.JAVA_BYTE, i);
+            for (int f = 0; f < fields.length; f++) {
+                if ((flag & masks[f]) != 0) {
+                    sums[f] += values[f].getAtIndex(ValueLayout.JAVA_INT, i);
+                    counts[f]++;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int[] getPresentValues(String zip, PropertyColumns.Field field) {
+        int[] range = rangesByZip.get(zip);
+        if (range == null) return new int[0];
+
+        MemorySegment values = column(field);
+        byte mask = mask(field);
+        int[] result = new int[countPresent(zip, field)];
+        int length = 0;
+        for (int i = range[0]; i < range[0] + range[1]; i++) {
+            if ((flags.get(ValueLayout.JAVA_BYTE, i) & mask) != 0) {
+                result[length++] = values.getAtIndex(ValueLayout.JAVA_INT, i);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Set<String> getZipCodes() {
+        return rangesByZip.keySet();
+    }
+
+    /**
+     * Materializes the properties of a ZIP. The list is built on every call and not retained.
+     */
+    @Override
+    public List<Property> getProperties(String zip) {
+        int[] range = rangesByZip.get(zip);
+        List<Property> result = new ArrayList<>();
+        if (range == null) return result;
+
+        for (int i = range[0]; i < range[0] + range[1]; i++) {
+            byte flag = flags.get(ValueLayout.JAVA_BYTE, i);
+            Integer marketValue = (flag & MARKET_PRESENT) != 0 ? marketValues.getAtIndex(ValueLayout.JAVA_INT, i) : null;
+            Integer livableArea = (flag & AREA_PRESENT) != 0 ? livableAreas.getAtIndex(ValueLayout.JAVA_INT, i) : null;
+            result.add(new Property(zip, marketValue, livableArea));
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        if (staging != null) staging.close();
+        memory.close();
+    }
+
+    private MemorySegment column(PropertyColumns.Field field) {
+        return field == PropertyColumns.Field.MARKET_VALUE ? marketValues : livableAreas;
+    }
+
+    private static byte mask(PropertyColumns.Field field) {
+        return field == PropertyColumns.Field.MARKET_VALUE ? MARKET_PRESENT : AREA_PRESENT;
+    }
+
+    private static String formatZip(int zip) {
+        return String.format("%05d", zip);
+    }
+}
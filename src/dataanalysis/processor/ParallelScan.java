@@ -0,0 +1,62 @@
+package dataanalysis.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Splits a scan over rows [0, size) into contiguous slices, one per core, and runs them in parallel.
+ * All scans share one pool of daemon threads, whichever processor or dataset they belong to.
+ */
+final class ParallelScan {
+
+    // below this many rows per slice the thread handoff costs more than the scan
+    private static final int MIN_SLICE_ROWS = 1 << 15;
+
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), task -> {
+                Thread thread = new Thread(task, "parallel-scan");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    interface SliceTask<T> {
+        T scan(int from, int to);
+    }
+
+    private ParallelScan() {
+    }
+
+    /**
+     * @return the result of each slice, in row order
+     */
+    static <T> List<T> run(int size, SliceTask<T> task) {
+        int slices = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), size / MIN_SLICE_ROWS));
+        List<T> results = new ArrayList<>();
+        if (slices == 1) {
+            results.add(task.scan(0, size));
+            return results;
+        }
+
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            for (int i = 0; i < slices; i++) {
+                int from = (int) ((long) size * i / slices);
+                int to = (int) ((long) size * (i + 1) / slices);
+                futures.add(POOL.submit(() -> task.scan(from, to)));
+            }
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while scanning records", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to scan records: " + e.getCause().getMessage(), e.getCause());
+        }
+        return results;
+    }
+}
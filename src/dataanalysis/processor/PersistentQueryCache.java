@@ -0,0 +1,180 @@
+package dataanalysis.processor;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Query result cache kept on local disk, so repeated queries survive process restarts.
+ * Each entry is keyed by the query plus the content fingerprint (SHA-256) of the input
+ * files the query depends on; changing an input changes the key, so stale entries are
+ * simply never read again.
+ *
+ * <p>Hashing a large input is costly, so file fingerprints are themselves remembered
+ * in the cache directory by path, size and modification time.
+ */
+public class PersistentQueryCache {
+
+    private static final String FINGERPRINTS_FILE = "fingerprints.properties";
+    private static final String ENTRY_EXTENSION = ".result";
+
+    private final Path directory;
+    private final Map<String, List<Path>> sources = new HashMap<>();
+    private final Map<String, String> sourceFingerprints = new HashMap<>();
+    private final Properties fileFingerprints = new Properties();
+
+    /**
+     * @param directory the cache directory; it is created if missing
+     */
+    public PersistentQueryCache(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+
+        Path fingerprints = directory.resolve(FINGERPRINTS_FILE);
+        if (Files.exists(fingerprints)) {
+            try (BufferedReader in = Files.newBufferedReader(fingerprints, StandardCharsets.UTF_8)) {
+                fileFingerprints.load(in);
+            }
+        }
+    }
+
+    /**
+     * Registers the input files of a dataset, e.g. "covid" and its partition files.
+     */
+    public void addSource(String name, List<Path> files) {
+        sources.put(name, new ArrayList<>(files));
+    }
+
+    /**
+     * Returns a cached per-ZIP result, or null if there is none for the current inputs.
+     *
+     * @param query identifies the query and its arguments
+     * @param sourceNames the datasets the query depends on
+     */
+    public Map<String, Double> getMap(String query, String... sourceNames) {
+        try {
+            Path entry = entryPath(query, sourceNames);
+            if (entry == null || !Files.exists(entry)) return null;
+
+            Map<String, Double> result = new TreeMap<>();
+            for (String line : Files.readAllLines(entry, StandardCharsets.UTF_8)) {
+                int space = line.indexOf(' ');
+                if (space < 0) continue;
+                result.put(line.substring(0, space), Double.parseDouble(line.substring(space + 1)));
+            }
+            return result;
+        } catch (IOException | NumberFormatException e) {
+            return null;    // an unreadable entry is a miss
+        }
+    }
+
+    /**
+     * Stores a per-ZIP result for the current inputs. Failures are reported and otherwise ignored.
+     */
+    public void putMap(String query, Map<String, Double> result, String... sourceNames) {
+        try {
+            Path entry = entryPath(query, sourceNames);
+            if (entry == null) return;
+
+            // write to a temporary file first so readers never see a partial entry
+            Path temp = Files.createTempFile(directory, "entry", ".tmp");
+            try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Double> e : result.entrySet()) {
+                    out.write(e.getKey() + " " + e.getValue());
+                    out.newLine();
+                }
+            }
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Warning: could not write query cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the entry file for the query, or null if a source is not registered
+     */
+    private Path entryPath(String query, String... sourceNames) throws IOException {
+        StringBuilder key = new StringBuilder(query);
+        for (String name : sourceNames) {
+            String fingerprint = getSourceFingerprint(name);
+            if (fingerprint == null) return null;
+            key.append('|').append(name).append('=').append(fingerprint);
+        }
+        return directory.resolve(sha256(key.toString().getBytes(StandardCharsets.UTF_8)) + ENTRY_EXTENSION);
+    }
+
+    private String getSourceFingerprint(String name) throws IOException {
+        if (sourceFingerprints.containsKey(name)) return sourceFingerprints.get(name);
+
+        List<Path> files = sources.get(name);
+        if (files == null) return null;
+
+        StringBuilder combined = new StringBuilder();
+        for (Path file : files) {
+            combined.append(getFileFingerprint(file)).append(';');
+        }
+        String fingerprint = sha256(combined.toString().getBytes(StandardCharsets.UTF_8));
+        sourceFingerprints.put(name, fingerprint);
+        return fingerprint;
+    }
+
+    /**
+     * Returns the SHA-256 of the file's content, reusing the remembered value while its size and mtime are unchanged.
+     */
+    private String getFileFingerprint(Path file) throws IOException {
+        Path absolute = file.toAbsolutePath().normalize();
+        String stamp = Files.size(absolute) + ":" + Files.getLastModifiedTime(absolute).toMillis();
+        String remembered = fileFingerprints.getProperty(absolute.toString());
+        if (remembered != null && remembered.startsWith(stamp + ":")) {
+            return remembered.substring(stamp.length() + 1);
+        }
+
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(absolute)) {
+            int n;
+            while ((n = in.read(buffer)) != -1) digest.update(buffer, 0, n);
+        }
+        String fingerprint = toHex(digest.digest());
+
+        fileFingerprints.setProperty(absolute.toString(), stamp + ":" + fingerprint);
+        Path temp = Files.createTempFile(directory, "fingerprints", ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            fileFingerprints.store(out, "content fingerprints of input files: size:mtime:sha256");
+        }
+        Files.move(temp, directory.resolve(FINGERPRINTS_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        return fingerprint;
+    }
+
+    private static String sha256(byte[] bytes) {
+        return toHex(newDigest().digest(bytes));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+}
@@ -1,61 +1,259 @@
 package dataanalysis.processor;
 
 import dataanalysis.datamanagement.*;
+import dataanalysis.logging.QueryTrace;
+import dataanalysis.logging.QueryTrace.Phase;
 import dataanalysis.util.*;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
-public class Processor {
+public class Processor implements DatasetQueries {
 
     // Data readers for each type of input data
     protected Reader covidDataReader;
-    protected PopulationReader populationReader;
-    protected PropertyReader propertyReader;
+    protected PopulationSource populationReader;
+    protected PropertySource propertyReader;
 
-    // List of data records
-    protected List<CovidRecord> covidRecords;
+    // Loaded data records; covid and property records are held by a storage backend
+    protected CovidStore covidStore;
     protected List<Population> populationRecords;
-    protected List<Property> propertyRecords;
+    protected PropertyStore propertyStore;
 
     // Memoization caches to improve performance
     private Integer totalPopulationCache;
-    private Map<String, List<Property>> propertyDataByZip = new HashMap<>();
     private Map<String, Integer> populationByZip = new HashMap<>();
     private Map<String, Map<String, Integer>> vaccinationCountsCache = new HashMap<>();
-    private final Map<String, Map<String, Double>> vaccinationPerCapitaCache = new HashMap<>();
-    private Map<String, Map<String, Double>> healthRiskIndexCache = new HashMap<>();
+    // concurrent so that a reload can read the cached dates while queries are answered
+    private final Map<String, Map<String, Double>> vaccinationPerCapitaCache = new ConcurrentHashMap<>();
+    private Map<String, Map<String, Double>> healthRiskIndexCache = new ConcurrentHashMap<>();
     private final Map<String, Integer> avgMarketValueCache = new HashMap<>();
     private final Map<String, Integer> avgLivableAreaCache = new HashMap<>();
     private final Map<String, Integer> marketValuePerCapitaCache = new HashMap<>();
+    private final Map<ZipMetric, Map<String, Double>> propertyMetricCache = new EnumMap<>(ZipMetric.class);
+
+    // Optional on-disk cache that keeps per-date results across restarts
+    private PersistentQueryCache queryCache;
+
+    // In lazy mode, covid records are read per queried date and properties per queried ZIP
+    private DateSelectiveReader lazyCovidReader;
+    private boolean lazyProperties;
+
+    // Approximate mode: estimates come from a block sample until the exact store has been loaded
+    private PropertySample propertySample;
+    private BackgroundPropertyStore exactProperties;
+
+    // When true, missing property values are averaged in as zeros (original behaviour)
+    private boolean legacyAverages = false;
+
+    // Per-ZIP quantile sketches, built once while the property data is loaded
+    private final Map<String, QuantileSketch> marketValueSketches = new HashMap<>();
+    private final Map<String, QuantileSketch> livableAreaSketches = new HashMap<>();
+
+    // When true, percentiles are computed exactly with quickselect instead of from the sketches
+    private boolean exactQuantiles = false;
 
     /**
      * Constructor loads data using available readers.
      * Null readers are skipped to allow partial data loading.
      */
-    public Processor(Reader covidDataReader, PopulationReader populationReader, PropertyReader propertyReader) {
+    public Processor(Reader covidDataReader, PopulationSource populationReader, PropertySource propertyReader) {
+        this(covidDataReader, populationReader, propertyReader, new LoadOptions());
+    }
+
+    /**
+     * Constructor loads data using available readers as the options say.
+     * Null readers are skipped to allow partial data loading.
+     *
+     * @throws IllegalArgumentException if sampling is asked for with a storage mode that drops the property values
+     */
+    public Processor(Reader covidDataReader, PopulationSource populationReader, PropertySource propertyReader,
+                     LoadOptions options) {
         this.covidDataReader = covidDataReader;
         this.populationReader = populationReader;
         this.propertyReader = propertyReader;
 
+        StorageMode storageMode = options.getStorageMode();
+        ZipRange shard = options.getShard();
+        boolean lazy = options.isLazy() && shard == null;
+        double propertySampleFraction = options.getPropertySampleFraction();
+        StringDictionary dictionary = options.getDictionary();
+        if (propertySampleFraction > 0 && !storageMode.retainsPropertyValues()) {
+            // the sampled ZIPs are sketched from the loaded values once the exact data is there
+            throw new IllegalArgumentException("Approximate mode is not available with " + storageMode + " storage");
+        }
+
         // Null readers are skipped
-        if (this.covidDataReader != null){
-            this.covidRecords = covidDataReader.getCovidData();
+        if (this.covidDataReader != null && lazy && covidDataReader instanceof DateSelectiveReader) {
+            this.lazyCovidReader = (DateSelectiveReader) covidDataReader;
+        } else if (this.covidDataReader != null){
+            this.covidStore = createCovidStore(storageMode);
+            covidDataReader.readCovidData(record -> {
+                if (shard == null || shard.contains(record.getZipCode())) covidStore.add(share(record, dictionary));
+            });
+            covidStore.finish();
         }
         if (this.populationReader != null){
-            this.populationRecords = populationReader.getPopulationData();
+            // the ZIP index is filled while the file is parsed
+            this.populationRecords = new ArrayList<>();
+            populationReader.readPopulationData(population -> {
+                if (shard != null && !shard.contains(population.getZipCode())) return;
+                population = share(population, dictionary);
+                populationRecords.add(population);
+                populationByZip.put(population.getZipCode(), population.getPopulation());
+            });
         }
-        if (this.propertyReader != null){
-            this.propertyRecords = propertyReader.getPropertyData();
+        if (this.propertyReader != null && propertySampleFraction > 0 && shard == null) {
+            this.propertySample = new PropertySample();
+            try {
+                int blocks = propertyReader.readPropertyBlocks(propertySampleFraction, new Random(), propertySample::addBlock);
+                propertySample.finish(blocks);
+            } catch (IOException e) {
+                System.err.println("Error reading property CSV: " + e.getMessage());
+            }
+            this.exactProperties = new BackgroundPropertyStore(() -> {
+                WritablePropertyStore store = createPropertyStore(storageMode);
+                propertyReader.readPropertyData(property -> store.add(share(property, dictionary)));
+                store.finish();
+                // sampling was refused above for storage modes that do not retain the values
+                return (RetainingPropertyStore) store;
+            });
+            // nothing is sketched while loading; each ZIP is sketched from the loaded values on first use
+            this.propertyStore = exactProperties;
+            this.lazyProperties = true;
+        } else if (this.propertyReader != null && lazy && propertyReader.canReadByZip()) {
+            // each ZIP is read on first use; its sketches are then built from the loaded values
+            this.propertyStore = new LazyPropertyStore(propertyReader);
+            this.lazyProperties = true;
+        } else if (this.propertyReader != null){
+            WritablePropertyStore store = createPropertyStore(storageMode);
+            propertyReader.readPropertyData(property -> {
+                if (shard != null && !shard.contains(property.getZipCode())) return;
+                property = share(property, dictionary);
+                store.add(property);
+                addToSketches(property);
+            });
+            store.finish();
+            this.propertyStore = store;
         }
     }
 
+    /**
+     * @return the record with the dictionary's instances of its strings, or the record itself without a dictionary
+     */
+    private static CovidRecord share(CovidRecord record, StringDictionary dictionary) {
+        if (dictionary == null) return record;
+        return new CovidRecord(dictionary.canonical(record.getZipCode()), dictionary.canonical(record.getEtlTimestamp()),
+                record.getPartiallyVaccinated(), record.getFullyVaccinated());
+    }
+
+    private static Population share(Population population, StringDictionary dictionary) {
+        if (dictionary == null) return population;
+        return new Population(dictionary.canonical(population.getZipCode()), population.getPopulation());
+    }
+
+    private static Property share(Property property, StringDictionary dictionary) {
+        if (dictionary == null) return property;
+        return new Property(dictionary.canonical(property.getZipCode()), property.getMarketValue(),
+                property.getTotalLivableArea());
+    }
+
+    private static CovidStore createCovidStore(StorageMode storageMode) {
+        switch (storageMode) {
+            case OFF_HEAP:
+                return new OffHeapCovidStore(false);
+            case MAPPED:
+                return new OffHeapCovidStore(true);
+            case COMPRESSED:
+                return new CompressedCovidStore();
+            default:
+                return new HeapCovidStore();
+        }
+    }
+
+    private static WritablePropertyStore createPropertyStore(StorageMode storageMode) {
+        switch (storageMode) {
+            case OFF_HEAP:
+                return new OffHeapPropertyStore(false);
+            case MAPPED:
+                return new OffHeapPropertyStore(true);
+            case STREAMING:
+                return new StreamingPropertyStore();
+            default:
+                return new HeapPropertyStore();
+        }
+    }
+
+    /**
+     * Adds a property to its ZIP's market value and livable area sketches while the data is loaded.
+     */
+    private void addToSketches(Property property) {
+        String zip = property.getZipCode();
+        if (property.getMarketValue() != null) {
+            marketValueSketches.computeIfAbsent(zip, z -> new QuantileSketch()).add(property.getMarketValue());
+        }
+        if (property.getTotalLivableArea() != null) {
+            livableAreaSketches.computeIfAbsent(zip, z -> new QuantileSketch()).add(property.getTotalLivableArea());
+        }
+    }
+
+    /**
+     * Sets the on-disk cache consulted for per-date results before they are computed.
+     * The cache's sources must be registered as "covid", "population" and "properties".
+     */
+    public void setQueryCache(PersistentQueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
+    @Override
+    public Set<String> getCachedVaccinationPerCapitaKeys() {
+        return vaccinationPerCapitaCache.keySet();
+    }
+
+    @Override
+    public Set<String> getCachedHealthRiskDates() {
+        return healthRiskIndexCache.keySet();
+    }
+
+    @Override
+    public long estimateBytes() {
+        long bytes = 0;
+        if (covidStore != null) bytes += covidStore.estimateBytes();
+        if (propertyStore != null) bytes += propertyStore.estimateBytes();
+        if (propertySample != null) bytes += propertySample.estimateBytes();
+        if (populationRecords != null) {
+            bytes += populationRecords.size() * (HeapSizes.REFERENCE + HeapSizes.POPULATION + HeapSizes.ZIP);
+        }
+        bytes += HeapSizes.zipMap(populationByZip.size());
+        for (QuantileSketch sketch : marketValueSketches.values()) bytes += HeapSizes.MAP_ENTRY + sketch.estimateBytes();
+        for (QuantileSketch sketch : livableAreaSketches.values()) bytes += HeapSizes.MAP_ENTRY + sketch.estimateBytes();
+        return bytes;
+    }
+
+    /**
+     * Releases the storage held outside the Java heap and the files the readers keep open.
+     * The processor must not be queried afterwards.
+     */
+    @Override
+    public void close() {
+        if (covidStore != null) covidStore.close();
+        if (propertyStore != null) propertyStore.close();
+        if (covidDataReader != null) covidDataReader.close();
+        if (populationReader != null) populationReader.close();
+        if (propertyReader != null) propertyReader.close();
+    }
+
     /**
      * Returns total population.
      */
+    @Override
     public int getTotalPopulation() {
+        QueryTrace.call("getTotalPopulation");
 
         if (totalPopulationCache != null) return totalPopulationCache;
 
+        long scan = QueryTrace.start();
         int total = 0;
         for (Population pop : populationRecords) {
 
@@ -65,22 +263,26 @@ public class Processor {
             total += pop.getPopulation();
         }
         totalPopulationCache = total;   // update cache of total population
+        QueryTrace.record(Phase.SCAN, scan);
         return total;
     }
 
     /**
      * Returns vaccination per capita by ZIP code for a given date and type.
      */
+    @Override
     public Map<String, Double> getVaccinationPerCapita(String type, String date) {
+        QueryTrace.call("getVaccinationPerCapita");
         String cacheKey = type.toLowerCase() + "|" + date;
 
         // Return cached value if available
-        if (vaccinationPerCapitaCache.containsKey(cacheKey)) {
-            return vaccinationPerCapitaCache.get(cacheKey);
-        }
+        long lookup = QueryTrace.start();
+        Map<String, Double> cached = getCachedVaccinationPerCapita(cacheKey);
+        QueryTrace.record(Phase.CACHE_LOOKUP, lookup);
+        if (cached != null) return cached;
 
         Map<String, Integer> vaccinationsByZip = getVaccinationCountsByZip(type, date);
-        Map<String, Double> result = new TreeMap<>();
+        long compute = QueryTrace.start();
 
         // Initialize population cache if empty
         if (populationByZip.isEmpty()) {
@@ -89,50 +291,113 @@ public class Processor {
             }
         }
 
-        for (String zip : vaccinationsByZip.keySet()) {
-            int vaccinated = vaccinationsByZip.get(zip);
-            int population = populationByZip.getOrDefault(zip, 0);
-            if (vaccinated == 0 || population == 0) continue;
-
-            double perCapita = (double) vaccinated / population;
-            result.put(zip, Math.round(perCapita * 10000.0) / 10000.0);
-        }
+        Map<String, Double> result = MetricFormulas.vaccinationPerCapita(vaccinationsByZip, populationByZip);
+        QueryTrace.record(Phase.COMPUTE, compute);
         vaccinationPerCapitaCache.put(cacheKey, result);
+        if (queryCache != null) {
+            queryCache.putMap("vaccinationPerCapita|" + cacheKey, result, "covid", "population");
+        }
         return result;
     }
 
     /**
-     * Helper function to return a cached or newly computed map of vaccination counts by ZIP.
-     * Filters covidRecords by date and type.
+     * Returns vaccination per capita by ZIP code for several dates of one type.
+     * The dates that are not cached yet are counted together in a single scan of the covid records.
+     *
+     * @return the per-ZIP result for each date, in the order the dates were given
      */
-    private Map<String, Integer> getVaccinationCountsByZip(String type, String date) {
-        String cacheKey = type.toLowerCase() + "|" + date;
+    @Override
+    public Map<String, Map<String, Double>> getVaccinationPerCapita(String type, Collection<String> dates) {
+        List<String> missing = new ArrayList<>();
+        for (String date : dates) {
+            if (getCachedVaccinationPerCapita(type.toLowerCase() + "|" + date) == null) missing.add(date);
+        }
+        prefetchVaccinationCounts(type, missing);
 
-        if (vaccinationCountsCache.containsKey(cacheKey)) {
-            return vaccinationCountsCache.get(cacheKey);
+        Map<String, Map<String, Double>> results = new LinkedHashMap<>();
+        for (String date : dates) {
+            results.put(date, getVaccinationPerCapita(type, date));
         }
+        return results;
+    }
 
-        Map<String, Integer> vaccinationCounts = new HashMap<>();
-        for (CovidRecord record : covidRecords) {
-            String zip = record.getZipCode();
-            String timestamp = record.getEtlTimestamp();
+    /**
+     * Returns the vaccination per capita result from memory or, failing that, from the on-disk cache.
+     *
+     * @return the cached result, or null if it has to be computed
+     */
+    private Map<String, Double> getCachedVaccinationPerCapita(String cacheKey) {
+        if (vaccinationPerCapitaCache.containsKey(cacheKey)) {
+            return vaccinationPerCapitaCache.get(cacheKey);
+        }
+        if (queryCache != null) {
+            Map<String, Double> stored = queryCache.getMap("vaccinationPerCapita|" + cacheKey, "covid", "population");
+            if (stored != null) {
+                vaccinationPerCapitaCache.put(cacheKey, stored);
+                return stored;
+            }
+        }
+        return null;
+    }
 
-            // Extract only date part of timestamp (first 10 characters)
-            if (timestamp.length() < 10 || !timestamp.substring(0, 10).equals(date)) continue;
+    /**
+     * Counts the vaccinations of several dates in one scan and puts them in the vaccination counts cache.
+     * In lazy mode each date is read through the reader's index instead.
+     */
+    private void prefetchVaccinationCounts(String type, Collection<String> dates) {
+        List<String> uncounted = new ArrayList<>();
+        for (String date : dates) {
+            if (!vaccinationCountsCache.containsKey(type.toLowerCase() + "|" + date)) uncounted.add(date);
+        }
+        if (uncounted.isEmpty() || lazyCovidReader != null) return;
 
-            int vaccinationCount = 0;
-            String lower = type.toLowerCase();
-            if (lower.equals("partial")) {
-                vaccinationCount = record.getPartiallyVaccinated();
-            } else if (lower.equals("full")) {
-                vaccinationCount = record.getFullyVaccinated();
-            }
+        Map<String, Map<String, Integer>> countsByDate = covidStore.getVaccinationCounts(type, uncounted);
+        for (Map.Entry<String, Map<String, Integer>> entry : countsByDate.entrySet()) {
+            vaccinationCountsCache.put(type.toLowerCase() + "|" + entry.getKey(), entry.getValue());
+        }
+    }
 
-            if (vaccinationCount <= 0) continue;
+    /**
+     * Returns the vaccination counts by ZIP for several dates, counting the uncached dates in one scan.
+     */
+    Map<String, Map<String, Integer>> getVaccinationCountsByZip(String type, Collection<String> dates) {
+        prefetchVaccinationCounts(type, dates);
+        Map<String, Map<String, Integer>> countsByDate = new LinkedHashMap<>();
+        for (String date : dates) {
+            countsByDate.put(date, getVaccinationCountsByZip(type, date));
+        }
+        return countsByDate;
+    }
 
-            vaccinationCounts.put(zip, vaccinationCounts.getOrDefault(zip, 0) + vaccinationCount);
+    /**
+     * Helper function to return a cached or newly computed map of vaccination counts by ZIP.
+     * Filters the covid records by date and type.
+     */
+    private Map<String, Integer> getVaccinationCountsByZip(String type, String date) {
+        String cacheKey = type.toLowerCase() + "|" + date;
+
+        long lookup = QueryTrace.start();
+        Map<String, Integer> cached = vaccinationCountsCache.get(cacheKey);
+        QueryTrace.record(Phase.CACHE_LOOKUP, lookup);
+        if (cached != null) return cached;
+
+        long scan = QueryTrace.start();
+        Map<String, Integer> vaccinationCounts;
+        if (lazyCovidReader != null) {
+            // read only the records for this date into a temporary store
+            CovidStore dateStore = new HeapCovidStore();
+            lazyCovidReader.readCovidData(date, dateStore::add);
+
+            // both vaccination types come from the same records, so cache both
+            for (String cachedType : new String[]{"partial", "full"}) {
+                vaccinationCountsCache.putIfAbsent(cachedType + "|" + date, dateStore.getVaccinationCounts(cachedType, date));
+            }
+            vaccinationCounts = dateStore.getVaccinationCounts(type, date);
+        } else {
+            vaccinationCounts = covidStore.getVaccinationCounts(type, date);
         }
 
+        QueryTrace.record(Phase.SCAN, scan);
         vaccinationCountsCache.put(cacheKey, vaccinationCounts); // update the cache
         return vaccinationCounts;
     }
@@ -142,16 +407,13 @@ public class Processor {
      * Relies on a cached calculation if it exists, else it calculates it
      */
     public int calculateAverageMarketValue(String zip) {
+        QueryTrace.call("calculateAverageMarketValue");
 
-        // if the average house market value for this zip is already cached, then return the cached value
-        if (avgMarketValueCache.containsKey(zip)){
-            return avgMarketValueCache.get(zip);
-        } else {
-            // else calculate the new value, add it to cache, and return it
-            int averageHousePriceInZip = calculateAverageByStrategy(zip, new MarketValueStrategy());
-            avgMarketValueCache.put(zip, averageHousePriceInZip);
-            return averageHousePriceInZip;
+        // if the average house market value for this zip is not cached yet, compute both averages together
+        if (!avgMarketValueCache.containsKey(zip)) {
+            cachePropertyAverages(zip);
         }
+        return avgMarketValueCache.get(zip);
     }
 
     /**
@@ -159,58 +421,234 @@ public class Processor {
      * Relies on a cached calculation if it exists, else it calculates it
      */
     public int calculateAverageLivableArea(String zip) {
+        QueryTrace.call("calculateAverageLivableArea");
 
-        // if the average house size for this zip is already cached, then return the cached value
-        if (avgLivableAreaCache.containsKey(zip)){
-            return avgLivableAreaCache.get(zip);
-        } else {
-            // else calculate the new value, add it to cache, and return it
-            int averageHouseSizeInZip = calculateAverageByStrategy(zip, new LivableAreaStrategy());
-            avgLivableAreaCache.put(zip, averageHouseSizeInZip);
-            return averageHouseSizeInZip;
+        // if the average house size for this zip is not cached yet, compute both averages together
+        if (!avgLivableAreaCache.containsKey(zip)) {
+            cachePropertyAverages(zip);
         }
+        return avgLivableAreaCache.get(zip);
+    }
+
+    /**
+     * Computes the average market value and livable area of a ZIP in one pass over its properties
+     * and stores both in their caches.
+     */
+    private void cachePropertyAverages(String zip) {
+        long scan = QueryTrace.start();
+        PropertyColumns.Field[] fields = {PropertyColumns.Field.MARKET_VALUE, PropertyColumns.Field.TOTAL_LIVABLE_AREA};
+        long[] sums = new long[fields.length];
+        int[] counts = new int[fields.length];
+        propertyStore.sumPresent(zip, fields, sums, counts);
+
+        // legacy averages divide by all properties, counting missing values as zeros
+        int properties = legacyAverages ? propertyStore.count(zip) : 0;
+        avgMarketValueCache.put(zip, MetricFormulas.average(sums[0], legacyAverages ? properties : counts[0]));
+        avgLivableAreaCache.put(zip, MetricFormulas.average(sums[1], legacyAverages ? properties : counts[1]));
+        QueryTrace.record(Phase.SCAN, scan);
+    }
+
+    /**
+     * @return true while property answers are estimated from a sample, i.e. in approximate mode
+     *         until the exact property data has been loaded
+     */
+    @Override
+    public boolean isApproximate() {
+        return propertySample != null && !exactProperties.isLoaded();
+    }
+
+    /**
+     * Starts loading the exact property data in the background, after which the estimates
+     * become exact answers. Queries are answered from the sample meanwhile.
+     *
+     * @return false if the processor is not approximate or the load has already been started
+     */
+    @Override
+    public boolean upgradeToExact() {
+        return exactProperties != null && exactProperties.start();
+    }
+
+    /**
+     * Returns the average market value of properties for a given ZIP, estimated from the
+     * sample in approximate mode and exact otherwise.
+     */
+    @Override
+    public Estimate estimateAverageMarketValue(String zip) {
+        if (!isApproximate()) return Estimate.exact(calculateAverageMarketValue(zip));
+        QueryTrace.call("estimateAverageMarketValue");
+        return propertySample.estimateAverage(zip, PropertyColumns.Field.MARKET_VALUE, legacyAverages);
+    }
+
+    /**
+     * Returns the average livable area of properties for a given ZIP, estimated from the
+     * sample in approximate mode and exact otherwise.
+     */
+    @Override
+    public Estimate estimateAverageLivableArea(String zip) {
+        if (!isApproximate()) return Estimate.exact(calculateAverageLivableArea(zip));
+        QueryTrace.call("estimateAverageLivableArea");
+        return propertySample.estimateAverage(zip, PropertyColumns.Field.TOTAL_LIVABLE_AREA, legacyAverages);
+    }
+
+    /**
+     * Returns the market value per capita for a given ZIP, estimated from the sample in
+     * approximate mode and exact otherwise. Only the market value total is estimated; the
+     * population is known exactly.
+     */
+    @Override
+    public Estimate estimateMarketValuePerCapita(String zip) {
+        if (!isApproximate()) return Estimate.exact(calculateMarketValuePerCapita(zip));
+        QueryTrace.call("estimateMarketValuePerCapita");
+
+        int population = getPopulationByZip(zip);
+        if (population == 0) return Estimate.exact(0);
+        Estimate total = propertySample.estimateTotal(zip, PropertyColumns.Field.MARKET_VALUE);
+        if (total.isExact()) return Estimate.exact(Math.floor(total.getValue() / population));
+        return Estimate.sampled(total.getValue() / population, total.getMargin() / population, total.getSampleSize());
     }
 
     /**
      * Strategy-based average calculator.
-     * Applies the strategy to each property in the ZIP.
+     * Strategies backed by a primitive column are summed with the aggregation kernel;
+     * any other strategy is applied to each property in the ZIP, which needs
+     * {@link #retainsPropertyValues()}.
+     *
+     * @throws IllegalStateException for a strategy without a column if the properties are not retained
      */
     public int calculateAverageByStrategy(String zip, AverageCalculationStrategy strategy) {
-        List<Property> properties = getPropertiesByZip(zip);
-        if (properties.isEmpty()) return 0;
+        PropertyColumns.Field field = strategy.getField();
+        if (field == null) {
+            return getPropertyStatistics(zip, strategy)[0].getAverage(legacyAverages);
+        }
 
-        long total = 0;
-        int count = 0;
+        long total = propertyStore.sum(zip, field);
+        int count = legacyAverages ? propertyStore.count(zip) : propertyStore.countPresent(zip, field);
+        return MetricFormulas.average(total, count);
+    }
 
-        for (Property property : properties) {
-            Integer value = strategy.extractValue(property);
-            if (property != null && value != null) {
-                total += value;
-                count++;
-            }
+    /**
+     * Evaluates several strategies over the properties of a ZIP in a single pass.
+     * Only available if {@link #retainsPropertyValues()}.
+     *
+     * @param zip the ZIP code to aggregate
+     * @param strategies the strategies to evaluate
+     * @return count, null count, sum, min, max and mean for each strategy, in the same order
+     * @throws IllegalStateException if the properties are not retained, as in streaming storage mode
+     */
+    public PropertyStatistics[] getPropertyStatistics(String zip, AverageCalculationStrategy... strategies) {
+        if (!(propertyStore instanceof RetainingPropertyStore retained)) {
+            throw new IllegalStateException("Property statistics need the properties, which are not retained");
         }
-        return count > 0 ? (int)(total / count) : 0;
+        return StatisticsAggregator.aggregate(retained.getProperties(zip), strategies);
     }
 
     /**
-     * Filters properties by ZIP code and memoizes the result.
+     * @return false if only per-ZIP property totals are kept, as in streaming storage mode;
+     *         exact percentiles and per-property statistics are then not available
      */
-    private List<Property> getPropertiesByZip(String zip) {
-        if (propertyDataByZip.containsKey(zip)) {
-            return propertyDataByZip.get(zip);
+    public boolean retainsPropertyValues() {
+        return propertyStore == null || propertyStore instanceof RetainingPropertyStore;
+    }
+
+    /**
+     * Selects how missing property values are treated by the averages.
+     * In legacy mode they are averaged in as zeros, matching the original results;
+     * otherwise they are left out of the average.
+     */
+    public void setLegacyAverages(boolean legacyAverages) {
+        if (this.legacyAverages != legacyAverages) {
+            avgMarketValueCache.clear();
+            avgLivableAreaCache.clear();
         }
+        this.legacyAverages = legacyAverages;
+    }
+
+    /**
+     * Returns the market value of properties in a ZIP at each of the given percentiles.
+     * Missing market values are ignored; a ZIP without values reports 0.
+     */
+    @Override
+    public int[] getMarketValuePercentiles(String zip, double[] percentiles) {
+        QueryTrace.call("getMarketValuePercentiles");
+        return getPercentiles(zip, percentiles, PropertyColumns.Field.MARKET_VALUE, marketValueSketches);
+    }
+
+    /**
+     * Returns the livable area of properties in a ZIP at each of the given percentiles.
+     * Missing livable areas are ignored; a ZIP without values reports 0.
+     */
+    @Override
+    public int[] getLivableAreaPercentiles(String zip, double[] percentiles) {
+        QueryTrace.call("getLivableAreaPercentiles");
+        return getPercentiles(zip, percentiles, PropertyColumns.Field.TOTAL_LIVABLE_AREA, livableAreaSketches);
+    }
 
-        List<Property> result = new ArrayList<>();
-        for (Property property : propertyRecords) {
-            if (zip.equals(property.getZipCode())) {
-                result.add(property);
+    /**
+     * Answers percentiles from the ZIP's sketch, or exactly with quickselect when exact quantiles are enabled.
+     */
+    private int[] getPercentiles(String zip, double[] percentiles, PropertyColumns.Field field,
+                                 Map<String, QuantileSketch> sketches) {
+        int[] result = new int[percentiles.length];
+
+        if (!exactQuantiles) {
+            long compute = QueryTrace.start();
+            QuantileSketch sketch = sketches.get(zip);
+            if (sketch == null && lazyProperties) {
+                // nothing was sketched at startup; sketch the ZIP's values now that they are needed
+                sketch = new QuantileSketch();
+                for (int value : getPresentValues(zip, field)) sketch.add(value);
+                sketches.put(zip, sketch);
+            }
+            for (int i = 0; i < percentiles.length; i++) {
+                result[i] = sketch != null ? sketch.getPercentile(percentiles[i]) : 0;
             }
+            QueryTrace.record(Phase.COMPUTE, compute);
+            return result;
         }
 
-        propertyDataByZip.put(zip, result); // update the cache
+        long scan = QueryTrace.start();
+        int[] values = getPresentValues(zip, field);
+        QueryTrace.record(Phase.SCAN, scan);
+
+        long compute = QueryTrace.start();
+        for (int i = 0; i < percentiles.length; i++) {
+            result[i] = QuickSelect.percentile(values, values.length, percentiles[i]);
+        }
+        QueryTrace.record(Phase.COMPUTE, compute);
         return result;
     }
 
+    /**
+     * @return the present values of the field in the ZIP
+     * @throws IllegalStateException if the properties are not retained; exact percentiles are then refused
+     *         and nothing is sketched on demand, so queries do not get here
+     */
+    private int[] getPresentValues(String zip, PropertyColumns.Field field) {
+        if (!(propertyStore instanceof RetainingPropertyStore retained)) {
+            throw new IllegalStateException("Property values are not retained");
+        }
+        return retained.getPresentValues(zip, field);
+    }
+
+    /**
+     * Replaces the kernel used for the property sums, e.g. to force the scalar implementation.
+     */
+    public void setAggregationKernel(AggregationKernel kernel) {
+        if (propertyStore != null) propertyStore.setAggregationKernel(kernel);
+    }
+
+    /**
+     * Selects whether percentiles are computed exactly (quickselect over the ZIP's properties)
+     * or estimated from the per-ZIP sketches built at load time.
+     *
+     * @throws IllegalStateException when enabling them if the properties are not retained
+     */
+    public void setExactQuantiles(boolean exactQuantiles) {
+        if (exactQuantiles && !retainsPropertyValues()) {
+            throw new IllegalStateException("Exact percentiles need the property values, which are not retained");
+        }
+        this.exactQuantiles = exactQuantiles;
+    }
 
     /**
      * Looks up population for a ZIP, populating cache if necessary.
@@ -237,10 +675,12 @@ public class Processor {
      * Returns 0 if population or property data is missing.
      */
     public int calculateMarketValuePerCapita(String zip) {
+        QueryTrace.call("calculateMarketValuePerCapita");
 
         if (marketValuePerCapitaCache.containsKey(zip)) {
             return marketValuePerCapitaCache.get(zip);
         }
+        long scan = QueryTrace.start();
 
         int population;
 
@@ -251,29 +691,18 @@ public class Processor {
             population = getPopulationByZip(zip);
         }
 
-        // if either the population for this zip is 0 or there are no properties in this zip code then return 0
+        // if the population for this zip is 0 there is nothing to sum
         if (population == 0) {
             marketValuePerCapitaCache.put(zip, 0);
             return 0;
         }
 
-        List<Property> properties = getPropertiesByZip(zip);
-
-        if (properties.isEmpty()) {
-            marketValuePerCapitaCache.put(zip, 0);
-            return 0;
-        }
-
         // calculate the total Market Value per capita
-        long totalMarketValue = 0;
-        for (Property property : properties) {
-            Integer mv = property.getMarketValue();
-            if (property != null && mv != null) {
-                totalMarketValue += mv;
-            }
-        }
+        long totalMarketValue = propertyStore.sum(zip, PropertyColumns.Field.MARKET_VALUE);
+        int properties = propertyStore.count(zip);
+        QueryTrace.record(Phase.SCAN, scan);
 
-        int valuePerCapita = (int)(totalMarketValue / population);
+        int valuePerCapita = MetricFormulas.marketValuePerCapita(totalMarketValue, properties, population);
         marketValuePerCapitaCache.put(zip, valuePerCapita);
         return valuePerCapita;
     }
@@ -282,10 +711,14 @@ public class Processor {
      * Computes the health risk index for each ZIP code on a given date.
      * Uses memoization to cache results by date.
      */
+    @Override
     public Map<String, Double> getHealthRiskIndex(String date) {
-        if (healthRiskIndexCache.containsKey(date)) {
-            return healthRiskIndexCache.get(date);
-        }
+        QueryTrace.call("getHealthRiskIndex");
+
+        long lookup = QueryTrace.start();
+        Map<String, Double> cached = getCachedHealthRiskIndex(date);
+        QueryTrace.record(Phase.CACHE_LOOKUP, lookup);
+        if (cached != null) return cached;
 
         if (populationByZip.isEmpty()) {
             for (Population pop : populationRecords) {
@@ -295,32 +728,120 @@ public class Processor {
 
         Map<String, Integer> vaccinations = getVaccinationCountsByZip("full", date);
 
-        // If no vaccination data found for the date, return 0 for all ZIPs
-        if (vaccinations.isEmpty()) {
-            Map<String, Double> zeroMap = new TreeMap<>();
-            for (String zip : populationByZip.keySet()) {
-                zeroMap.put(zip, 0.0);
-            }
-            healthRiskIndexCache.put(date, zeroMap);
-            return zeroMap;
+        // If no vaccination data found for the date, every ZIP reports 0
+        long compute = QueryTrace.start();
+        Map<String, Double> result = MetricFormulas.healthRiskIndex(populationByZip, vaccinations, this::getTotalLivableArea);
+        QueryTrace.record(Phase.COMPUTE, compute);
+
+        healthRiskIndexCache.put(date, result);
+        if (queryCache != null) {
+            queryCache.putMap("healthRiskIndex|" + date, result, "covid", "population", "properties");
         }
+        return result;
+    }
 
-        Map<String, Double> result = new TreeMap<>();
+    /**
+     * Computes the health risk index for each ZIP code on several dates.
+     * The dates that are not cached yet are counted together in a single scan of the covid records.
+     *
+     * @return the per-ZIP index for each date, in the order the dates were given
+     */
+    @Override
+    public Map<String, Map<String, Double>> getHealthRiskIndex(Collection<String> dates) {
+        List<String> missing = new ArrayList<>();
+        for (String date : dates) {
+            if (getCachedHealthRiskIndex(date) == null) missing.add(date);
+        }
+        prefetchVaccinationCounts("full", missing);
 
-        for (String zip : populationByZip.keySet()) {
-            int population = populationByZip.get(zip);
-            int vaccinated = vaccinations.getOrDefault(zip, 0);
-            long livableArea = getTotalLivableArea(zip);
+        Map<String, Map<String, Double>> results = new LinkedHashMap<>();
+        for (String date : dates) {
+            results.put(date, getHealthRiskIndex(date));
+        }
+        return results;
+    }
 
-            if (population == 0 || livableArea == 0) continue;
+    /**
+     * Returns the health risk index from memory or, failing that, from the on-disk cache.
+     *
+     * @return the cached index, or null if it has to be computed
+     */
+    private Map<String, Double> getCachedHealthRiskIndex(String date) {
+        if (healthRiskIndexCache.containsKey(date)) {
+            return healthRiskIndexCache.get(date);
+        }
+        if (queryCache != null) {
+            Map<String, Double> stored = queryCache.getMap("healthRiskIndex|" + date, "covid", "population", "properties");
+            if (stored != null) {
+                healthRiskIndexCache.put(date, stored);
+                return stored;
+            }
+        }
+        return null;
+    }
 
-            double vaccinationRate = (double) vaccinated / population;
-            double index = ((1.0 - vaccinationRate) * population) / livableArea;
+    /**
+     * Returns the value of a metric for every ZIP code that has one.
+     * Property metrics only cover ZIPs with properties, and market value per capita
+     * only those that also have a population; the per-ZIP results are memoized.
+     *
+     * @param date the date of a dated metric, ignored otherwise
+     */
+    @Override
+    public Map<String, Double> getMetricByZip(ZipMetric metric, String date) {
+        switch (metric) {
+            case HEALTH_RISK_INDEX:
+                return getHealthRiskIndex(date);
+            case PARTIAL_VACCINATIONS_PER_CAPITA:
+                return getVaccinationPerCapita("partial", date);
+            case FULL_VACCINATIONS_PER_CAPITA:
+                return getVaccinationPerCapita("full", date);
+            default:
+                break;
+        }
 
-            result.put(zip, Math.round(index * 10000.0) / 10000.0);
+        Map<String, Double> cached = propertyMetricCache.get(metric);
+        if (cached != null) return cached;
+
+        Map<String, Double> values = new HashMap<>();
+        for (String zip : propertyStore.getZipCodes()) {
+            switch (metric) {
+                case AVERAGE_MARKET_VALUE:
+                    values.put(zip, (double) calculateAverageMarketValue(zip));
+                    break;
+                case AVERAGE_LIVABLE_AREA:
+                    values.put(zip, (double) calculateAverageLivableArea(zip));
+                    break;
+                case MARKET_VALUE_PER_CAPITA:
+                    if (getPopulationByZip(zip) > 0) {
+                        values.put(zip, (double) calculateMarketValuePerCapita(zip));
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown metric: " + metric);
+            }
         }
+        propertyMetricCache.put(metric, values);
+        return values;
+    }
 
-        healthRiskIndexCache.put(date, result);
+    /**
+     * Evaluates a user-defined metric for every ZIP code that appears in the data the expression uses.
+     * ZIPs for which the expression has no finite value are left out.
+     *
+     * @param date the date of the vaccination counts, ignored if the expression uses none
+     * @return the value of each ZIP, ordered by ZIP
+     */
+    @Override
+    public Map<String, Double> evaluateMetric(MetricExpression expression, String date) {
+        QueryTrace.call("evaluateMetric");
+        PropertyStore store = expression.usesProperties() ? propertyStore : null;
+        Map<String, Integer> partial = expression.usesPartial() ? getVaccinationCountsByZip("partial", date) : Map.of();
+        Map<String, Integer> full = expression.usesFull() ? getVaccinationCountsByZip("full", date) : Map.of();
+
+        long compute = QueryTrace.start();
+        Map<String, Double> result = MetricFormulas.evaluate(expression, store, populationByZip, partial, full);
+        QueryTrace.record(Phase.COMPUTE, compute);
         return result;
     }
 
@@ -328,27 +849,27 @@ public class Processor {
      * Returns the total livable area for properties in a ZIP code.
      */
     private long getTotalLivableArea(String zip) {
-        List<Property> properties = getPropertiesByZip(zip);
-        long total = 0;
-        for (Property p : properties) {
-            if (p != null && p.getTotalLivableArea() != null) {
-                total += p.getTotalLivableArea();
-            }
-        }
-        return total;
+        return propertyStore.sum(zip, PropertyColumns.Field.TOTAL_LIVABLE_AREA);
     }
 
     // ==== Utility methods to check availability of each dataset ====
 
+    @Override
     public boolean hasPopulationData() {
         return populationRecords != null && !populationRecords.isEmpty();
     }
 
+    @Override
     public boolean hasPropertyData() {
-        return propertyRecords != null && !propertyRecords.isEmpty();
+        // the sample stands in for the data until the background load is done, so asking does not wait for it
+        if (isApproximate()) return propertySample.size() > 0;
+        return propertyStore != null && propertyStore.size() > 0;
     }
 
+    @Override
     public boolean hasCovidData() {
-        return covidRecords != null && !covidRecords.isEmpty();
+        // in lazy mode nothing is read until a date is queried, so availability is assumed
+        if (lazyCovidReader != null) return true;
+        return covidStore != null && covidStore.size() > 0;
     }
 }
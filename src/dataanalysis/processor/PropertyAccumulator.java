@@ -0,0 +1,107 @@
+package dataanalysis.processor;
+
+import dataanalysis.util.Property;
+
+/**
+ * Running per-ZIP totals of the property fields: the number of properties and,
+ * for each field, the sum, count, minimum and maximum of the present values.
+ */
+public class PropertyAccumulator {
+
+    // the bytes of an accumulator: its header and fields
+    static final long BYTES = 56;
+
+    private int count;
+    private long marketValueSum;
+    private int marketValueCount;
+    private long livableAreaSum;
+    private int livableAreaCount;
+    private int marketValueMin = Integer.MAX_VALUE;
+    private int marketValueMax = Integer.MIN_VALUE;
+    private int livableAreaMin = Integer.MAX_VALUE;
+    private int livableAreaMax = Integer.MIN_VALUE;
+
+    /**
+     * Adds a single property to the totals.
+     */
+    public void add(Property property) {
+        count++;
+        if (property.getMarketValue() != null) {
+            marketValueSum += property.getMarketValue();
+            marketValueCount++;
+            marketValueMin = Math.min(marketValueMin, property.getMarketValue());
+            marketValueMax = Math.max(marketValueMax, property.getMarketValue());
+        }
+        if (property.getTotalLivableArea() != null) {
+            livableAreaSum += property.getTotalLivableArea();
+            livableAreaCount++;
+            livableAreaMin = Math.min(livableAreaMin, property.getTotalLivableArea());
+            livableAreaMax = Math.max(livableAreaMax, property.getTotalLivableArea());
+        }
+    }
+
+    /**
+     * Adds properties without values, e.g. those of another share of the ZIP; see {@link #addValues}.
+     */
+    void addCount(int properties) {
+        count += properties;
+    }
+
+    /**
+     * Adds the totals of a field over another share of the ZIP, e.g. one loaded by a shard worker.
+     *
+     * @param min the smallest of the present values, ignored if there are none
+     * @param max the largest of the present values, ignored if there are none
+     */
+    void addValues(PropertyColumns.Field field, int present, long sum, int min, int max) {
+        if (present == 0) return;
+        if (field == PropertyColumns.Field.MARKET_VALUE) {
+            marketValueSum += sum;
+            marketValueCount += present;
+            marketValueMin = Math.min(marketValueMin, min);
+            marketValueMax = Math.max(marketValueMax, max);
+        } else {
+            livableAreaSum += sum;
+            livableAreaCount += present;
+            livableAreaMin = Math.min(livableAreaMin, min);
+            livableAreaMax = Math.max(livableAreaMax, max);
+        }
+    }
+
+    /**
+     * @return the number of properties added
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the sum of the present values of the field
+     */
+    public long getSum(PropertyColumns.Field field) {
+        return field == PropertyColumns.Field.MARKET_VALUE ? marketValueSum : livableAreaSum;
+    }
+
+    /**
+     * @return the number of properties with a value for the field
+     */
+    public int getPresentCount(PropertyColumns.Field field) {
+        return field == PropertyColumns.Field.MARKET_VALUE ? marketValueCount : livableAreaCount;
+    }
+
+    /**
+     * @return the smallest present value of the field, or null if no property has one
+     */
+    public Integer getMin(PropertyColumns.Field field) {
+        if (getPresentCount(field) == 0) return null;
+        return field == PropertyColumns.Field.MARKET_VALUE ? marketValueMin : livableAreaMin;
+    }
+
+    /**
+     * @return the largest present value of the field, or null if no property has one
+     */
+    public Integer getMax(PropertyColumns.Field field) {
+        if (getPresentCount(field) == 0) return null;
+        return field == PropertyColumns.Field.MARKET_VALUE ? marketValueMax : livableAreaMax;
+    }
+}
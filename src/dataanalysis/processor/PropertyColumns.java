@@ -0,0 +1,85 @@
+package dataanalysis.processor;
+
+import dataanalysis.util.Property;
+
+import java.util.List;
+
+/**
+ * Primitive column view of the properties in one ZIP code.
+ * Each nullable field is stored as an int array plus a presence mask;
+ * missing values are stored as 0 and marked absent in the mask.
+ */
+public class PropertyColumns {
+
+    /**
+     * The numeric property fields available as columns.
+     */
+    public enum Field {
+        MARKET_VALUE, TOTAL_LIVABLE_AREA
+    }
+
+    private final int size;
+    private final int[] marketValues;
+    private final boolean[] marketValuePresent;
+    private final int[] livableAreas;
+    private final boolean[] livableAreaPresent;
+
+    private PropertyColumns(int size) {
+        this.size = size;
+        this.marketValues = new int[size];
+        this.marketValuePresent = new boolean[size];
+        this.livableAreas = new int[size];
+        this.livableAreaPresent = new boolean[size];
+    }
+
+    /**
+     * Copies the given properties into primitive columns. Null properties are skipped.
+     */
+    public static PropertyColumns of(List<Property> properties) {
+        int size = 0;
+        for (Property property : properties) {
+            if (property != null) size++;
+        }
+
+        PropertyColumns columns = new PropertyColumns(size);
+        int i = 0;
+        for (Property property : properties) {
+            if (property == null) continue;
+
+            Integer marketValue = property.getMarketValue();
+            if (marketValue != null) {
+                columns.marketValues[i] = marketValue;
+                columns.marketValuePresent[i] = true;
+            }
+
+            Integer livableArea = property.getTotalLivableArea();
+            if (livableArea != null) {
+                columns.livableAreas[i] = livableArea;
+                columns.livableAreaPresent[i] = true;
+            }
+            i++;
+        }
+        return columns;
+    }
+
+    /**
+     * @return the number of rows in the columns
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the values of the given field; absent values are 0
+     */
+    public int[] getValues(Field field) {
+        return field == Field.MARKET_VALUE ? marketValues : livableAreas;
+    }
+
+    /**
+     * @return the presence mask of the given field
+     */
+    public boolean[] getPresent(Field field) {
+        return field == Field.MARKET_VALUE ? marketValuePresent : livableAreaPresent;
+    }
+}
@@ -0,0 +1,181 @@
+package dataanalysis.processor;
+
+import dataanalysis.util.Property;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-ZIP property aggregates of a random sample of the property file's blocks, from which
+ * averages and totals are estimated with 95% confidence intervals.
+ *
+ * <p>Rows of a ZIP are often clustered in the file, so the blocks rather than the rows are
+ * treated as the sampling units: averages use the ratio estimator and totals the expansion
+ * estimator of one-stage cluster sampling, both with the finite population correction
+ * and Student's t quantiles for small block counts.
+ * A block without rows of a ZIP counts as a zero for that ZIP.
+ */
+public class PropertySample {
+
+    private static final double Z_95 = 1.959964;
+
+    // two-sided 95% quantiles of Student's t for 1 to 30 degrees of freedom; few blocks make the normal one too narrow
+    private static final double[] T_95 = {
+            12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+            2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+            2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042};
+
+    // per-block aggregate slots
+    private static final int ROWS = 0;
+    private static final int MARKET_VALUES = 1;
+    private static final int MARKET_VALUE_SUM = 2;
+    private static final int LIVABLE_AREAS = 3;
+    private static final int LIVABLE_AREA_SUM = 4;
+
+    // ZIP -> aggregates of each sampled block holding rows of the ZIP
+    private final Map<String, List<long[]>> blocksByZip = new HashMap<>();
+    private int sampledBlocks;
+    private int totalBlocks;
+    private int size;
+
+    /**
+     * Adds the properties of one sampled block.
+     */
+    public void addBlock(List<Property> properties) {
+        sampledBlocks++;
+        Map<String, long[]> block = new HashMap<>();
+        for (Property property : properties) {
+            long[] totals = block.computeIfAbsent(property.getZipCode(), zip -> new long[5]);
+            totals[ROWS]++;
+            if (property.getMarketValue() != null) {
+                totals[MARKET_VALUES]++;
+                totals[MARKET_VALUE_SUM] += property.getMarketValue();
+            }
+            if (property.getTotalLivableArea() != null) {
+                totals[LIVABLE_AREAS]++;
+                totals[LIVABLE_AREA_SUM] += property.getTotalLivableArea();
+            }
+            size++;
+        }
+        block.forEach((zip, totals) -> blocksByZip.computeIfAbsent(zip, key -> new ArrayList<>()).add(totals));
+    }
+
+    /**
+     * Called once all sampled blocks have been added.
+     *
+     * @param totalBlocks the number of blocks in the whole file
+     */
+    public void finish(int totalBlocks) {
+        this.totalBlocks = totalBlocks;
+    }
+
+    /**
+     * @return the number of sampled properties
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the bytes of the per-ZIP block totals; the sampled properties themselves are not kept
+     */
+    public long estimateBytes() {
+        long bytes = 0;
+        for (List<long[]> blocks : blocksByZip.values()) {
+            bytes += HeapSizes.MAP_ENTRY + HeapSizes.ZIP + HeapSizes.ARRAY
+                    + blocks.size() * (HeapSizes.REFERENCE + HeapSizes.ARRAY + 5 * 8L);
+        }
+        return bytes;
+    }
+
+    /**
+     * @return true if every block of the file was sampled, so the estimates are exact
+     */
+    public boolean isComplete() {
+        return sampledBlocks >= totalBlocks;
+    }
+
+    /**
+     * Estimates the average of a field in a ZIP.
+     *
+     * @param legacy average missing values in as zeros, as {@link Processor#setLegacyAverages} does
+     */
+    public Estimate estimateAverage(String zip, PropertyColumns.Field field, boolean legacy) {
+        int sumSlot = sumSlot(field);
+        int countSlot = legacy ? ROWS : sumSlot - 1;
+        List<long[]> blocks = blocksByZip.getOrDefault(zip, List.of());
+
+        double sum = 0;
+        double count = 0;
+        for (long[] totals : blocks) {
+            sum += totals[sumSlot];
+            count += totals[countSlot];
+        }
+        if (count == 0) return Estimate.sampled(0, Double.NaN, 0);
+
+        double ratio = sum / count;
+        if (isComplete()) return Estimate.exact(ratio);
+
+        // residuals of the blocks without the ZIP are all zero
+        double residuals = 0;
+        for (long[] totals : blocks) {
+            double residual = totals[sumSlot] - ratio * totals[countSlot];
+            residuals += residual * residual;
+        }
+        double meanCount = count / sampledBlocks;
+        double variance = correction() * residuals / (sampledBlocks - 1) / (sampledBlocks * meanCount * meanCount);
+        return Estimate.sampled(ratio, quantile() * Math.sqrt(variance), (int) count);
+    }
+
+    /**
+     * Estimates the sum of the present values of a field in a ZIP.
+     */
+    public Estimate estimateTotal(String zip, PropertyColumns.Field field) {
+        int sumSlot = sumSlot(field);
+        List<long[]> blocks = blocksByZip.getOrDefault(zip, List.of());
+
+        double sum = 0;
+        double squares = 0;
+        long count = 0;
+        for (long[] totals : blocks) {
+            sum += totals[sumSlot];
+            squares += (double) totals[sumSlot] * totals[sumSlot];
+            count += totals[sumSlot - 1];
+        }
+        double total = sum * totalBlocks / sampledBlocks;
+        if (isComplete()) return Estimate.exact(total);
+        if (count == 0) return Estimate.sampled(0, Double.NaN, 0);
+
+        double blockVariance = (squares - sum * sum / sampledBlocks) / (sampledBlocks - 1);
+        double variance = (double) totalBlocks * totalBlocks * correction() * blockVariance / sampledBlocks;
+        return Estimate.sampled(total, quantile() * Math.sqrt(variance), (int) count);
+    }
+
+    /**
+     * @return the 95% quantile for the sampled blocks' degrees of freedom
+     */
+    private double quantile() {
+        int degreesOfFreedom = sampledBlocks - 1;
+        return degreesOfFreedom <= T_95.length ? T_95[degreesOfFreedom - 1] : Z_95;
+    }
+
+    /**
+     * @return the finite population correction for sampling blocks without replacement
+     */
+    private double correction() {
+        return 1.0 - (double) sampledBlocks / totalBlocks;
+    }
+
+    private static int sumSlot(PropertyColumns.Field field) {
+        switch (field) {
+            case MARKET_VALUE:
+                return MARKET_VALUE_SUM;
+            case TOTAL_LIVABLE_AREA:
+                return LIVABLE_AREA_SUM;
+            default:
+                throw new IllegalArgumentException("Unsupported field: " + field);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package dataanalysis.processor;
+
+/**
+ * Summary statistics of a single strategy over the properties of one ZIP code.
+ * Missing values are counted separately and excluded from sum, min, max and mean.
+ */
+public class PropertyStatistics {
+
+    private final int count;        // number of properties with a value
+    private final int nullCount;    // number of properties without a value
+    private final long sum;
+    private final int min;
+    private final int max;
+
+    public PropertyStatistics(int count, int nullCount, long sum, int min, int max) {
+        this.count = count;
+        this.nullCount = nullCount;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * @return the number of properties with a value
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the number of properties without a value
+     */
+    public int getNullCount() {
+        return nullCount;
+    }
+
+    /**
+     * @return the sum of all present values
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * @return the smallest present value, or 0 if there is none
+     */
+    public int getMin() {
+        return count > 0 ? min : 0;
+    }
+
+    /**
+     * @return the largest present value, or 0 if there is none
+     */
+    public int getMax() {
+        return count > 0 ? max : 0;
+    }
+
+    /**
+     * @return the mean of all present values, or 0 if there is none
+     */
+    public double getMean() {
+        return count > 0 ? (double) sum / count : 0.0;
+    }
+
+    /**
+     * Returns the truncated average of the present values.
+     *
+     * @param nullsAsZero if true, missing values are averaged in as zeros (the original behaviour)
+     * @return the truncated average, or 0 if there is nothing to average
+     */
+    public int getAverage(boolean nullsAsZero) {
+        int divisor = nullsAsZero ? count + nullCount : count;
+        return divisor > 0 ? (int) (sum / divisor) : 0;
+    }
+}
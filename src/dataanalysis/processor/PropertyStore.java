@@ -0,0 +1,72 @@
+package dataanalysis.processor;
+
+import java.util.Set;
+
+/**
+ * Storage backend for the loaded properties, as seen by the queries. Stores that are filled
+ * while the file is read implement {@link WritablePropertyStore}; others load their properties
+ * themselves, e.g. per ZIP or on a background thread. Stores that keep the individual values
+ * implement {@link RetainingPropertyStore}.
+ */
+public interface PropertyStore {
+
+    /**
+     * @return the total number of properties loaded
+     */
+    int size();
+
+    /**
+     * @return the estimated bytes the store holds, on the heap and outside it
+     */
+    long estimateBytes();
+
+    /**
+     * @return the number of properties in the ZIP
+     */
+    int count(String zip);
+
+    /**
+     * @return the sum of the present values of the field in the ZIP
+     */
+    long sum(String zip, PropertyColumns.Field field);
+
+    /**
+     * @return the number of properties in the ZIP that have a value for the field
+     */
+    int countPresent(String zip, PropertyColumns.Field field);
+
+    /**
+     * Sums and counts the present values of several fields of the ZIP in one pass over its properties.
+     *
+     * @param sums the sum of the present values of each field is added here, in the order of the fields
+     * @param counts the number of present values of each field is added here
+     */
+    void sumPresent(String zip, PropertyColumns.Field[] fields, long[] sums, int[] counts);
+
+    /**
+     * @return the smallest present value of the field in the ZIP, or null if it has none
+     */
+    Integer min(String zip, PropertyColumns.Field field);
+
+    /**
+     * @return the largest present value of the field in the ZIP, or null if it has none
+     */
+    Integer max(String zip, PropertyColumns.Field field);
+
+    /**
+     * @return the ZIP codes that have at least one property
+     */
+    Set<String> getZipCodes();
+
+    /**
+     * Replaces the kernel used for the sums. Stores that do not sum primitive arrays ignore it.
+     */
+    default void setAggregationKernel(AggregationKernel kernel) {
+    }
+
+    /**
+     * Releases any memory held outside the Java heap.
+     */
+    default void close() {
+    }
+}
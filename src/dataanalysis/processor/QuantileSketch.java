@@ -0,0 +1,171 @@
+package dataanalysis.processor;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Mergeable streaming quantile sketch for int values (a KLL sketch).
+ * Values are kept in a stack of compactors; level h holds items of weight 2^h.
+ * When the sketch is over capacity, the lowest full level is sorted and every
+ * other item is promoted to the next level, so memory stays bounded by roughly
+ * 3k items no matter how many values are added.
+ */
+public class QuantileSketch {
+
+    public static final int DEFAULT_K = 200;
+
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+    private static final int MIN_LEVEL_CAPACITY = 8;
+
+    private final int k;
+    private final Random random;
+    private int[][] levels = new int[1][MIN_LEVEL_CAPACITY];
+    private int[] sizes = new int[1];
+    private long count;
+    private int min = Integer.MAX_VALUE;   // exact extremes, reported for the lowest and highest ranks
+    private int max = Integer.MIN_VALUE;
+
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    public QuantileSketch(int k) {
+        this.k = k;
+        // fixed seed so repeated runs on the same input report the same percentiles
+        this.random = new Random(k);
+    }
+
+    /**
+     * @return the estimated bytes of the sketch and its levels
+     */
+    long estimateBytes() {
+        long bytes = 64 + 2 * HeapSizes.ARRAY + levels.length * (HeapSizes.REFERENCE + 4);
+        for (int[] level : levels) {
+            bytes += HeapSizes.ARRAY + level.length * 4L;
+        }
+        return bytes;
+    }
+
+    /**
+     * Adds a single value to the sketch.
+     */
+    public void add(int value) {
+        append(0, value);
+        count++;
+        if (value < min) min = value;
+        if (value > max) max = value;
+        if (retainedItems() > totalCapacity()) compress();
+    }
+
+    /**
+     * Merges another sketch into this one. The other sketch is left unchanged.
+     */
+    public void merge(QuantileSketch other) {
+        for (int h = 0; h < other.levels.length; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) {
+                append(h, other.levels[h][i]);
+            }
+        }
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        while (retainedItems() > totalCapacity()) compress();
+    }
+
+    /**
+     * @return the number of values added to the sketch
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the approximate value at the given percentile using the nearest-rank definition.
+     *
+     * @param percentile a percentile in the range (0, 100]
+     * @return the estimated value, or 0 if the sketch is empty
+     */
+    public int getPercentile(double percentile) {
+        if (count == 0) return 0;
+        // compaction keeps the total weight equal to the count, so the rank is known before sorting
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        if (rank == 1) return min;
+        if (rank >= count) return max;
+
+        int n = retainedItems();
+        long[] weighted = new long[n];      // value in the high 32 bits, level in the low bits
+        int idx = 0;
+        for (int h = 0; h < levels.length; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                weighted[idx++] = ((long) levels[h][i] << 32) | h;
+            }
+        }
+        Arrays.sort(weighted);
+
+        long cumulative = 0;
+        for (long item : weighted) {
+            cumulative += 1L << (int) item;
+            if (cumulative >= rank) return (int) (item >> 32);
+        }
+        return (int) (weighted[n - 1] >> 32);
+    }
+
+    private void append(int level, int value) {
+        if (level >= levels.length) {
+            levels = Arrays.copyOf(levels, level + 1);
+            sizes = Arrays.copyOf(sizes, level + 1);
+            for (int h = 0; h <= level; h++) {
+                if (levels[h] == null) levels[h] = new int[MIN_LEVEL_CAPACITY];
+            }
+        }
+        if (sizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], levels[level].length * 2);
+        }
+        levels[level][sizes[level]++] = value;
+    }
+
+    /**
+     * Compacts the lowest level that is over its capacity, promoting half of its items.
+     */
+    private void compress() {
+        for (int h = 0; h < levels.length; h++) {
+            if (sizes[h] < levelCapacity(h)) continue;
+
+            int[] items = levels[h];
+            int size = sizes[h];
+            Arrays.sort(items, 0, size);
+
+            // an odd item out stays on this level so no weight is lost
+            int keep = size % 2;
+            int offset = random.nextBoolean() ? 1 : 0;
+            int pairs = size / 2;
+            int[] promoted = new int[pairs];
+            for (int i = 0; i < pairs; i++) {
+                promoted[i] = items[keep + 2 * i + offset];
+            }
+            sizes[h] = keep;
+
+            for (int value : promoted) {
+                append(h + 1, value);
+            }
+            return;
+        }
+    }
+
+    private int levelCapacity(int level) {
+        int depth = levels.length - level - 1;
+        return Math.max(MIN_LEVEL_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)));
+    }
+
+    private int totalCapacity() {
+        int total = 0;
+        for (int h = 0; h < levels.length; h++) total += levelCapacity(h);
+        return total;
+    }
+
+    private int retainedItems() {
+        int total = 0;
+        for (int size : sizes) total += size;
+        return total;
+    }
+}
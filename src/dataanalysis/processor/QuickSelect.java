@@ -0,0 +1,65 @@
+package dataanalysis.processor;
+
+/**
+ * Exact percentile selection over an int array in expected linear time.
+ */
+public class QuickSelect {
+
+    private QuickSelect() {
+    }
+
+    /**
+     * Returns the exact value at the given percentile using the nearest-rank definition.
+     * The first {@code length} elements of the array are reordered in place.
+     *
+     * @param values the values to select from
+     * @param length the number of values in use
+     * @param percentile a percentile in the range (0, 100]
+     * @return the value at the percentile, or 0 if there are no values
+     */
+    public static int percentile(int[] values, int length, double percentile) {
+        if (length == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * length));
+        return select(values, 0, length - 1, (int) Math.min(rank, length) - 1);
+    }
+
+    /**
+     * Returns the k-th smallest value (0-based) within values[left..right].
+     */
+    private static int select(int[] values, int left, int right, int k) {
+        while (left < right) {
+            // median of three pivot to avoid the quadratic case on sorted input
+            int mid = (left + right) >>> 1;
+            int pivot = medianOfThree(values[left], values[mid], values[right]);
+
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) i++;
+                while (values[j] > pivot) j--;
+                if (i <= j) {
+                    int tmp = values[i];
+                    values[i] = values[j];
+                    values[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return values[k];
+            }
+        }
+        return values[left];
+    }
+
+    private static int medianOfThree(int a, int b, int c) {
+        if (a > b) { int t = a; a = b; b = t; }
+        if (b > c) { b = c; }
+        return Math.max(a, b);
+    }
+}
@@ -0,0 +1,45 @@
+package dataanalysis.processor;
+
+import dataanalysis.util.Property;
+
+import java.util.List;
+
+/**
+ * A property store that keeps the individual property values, so exact percentiles, per-property
+ * statistics and on-demand sketches can be computed from it. Stores that keep only per-ZIP totals,
+ * like {@link StreamingPropertyStore}, do not implement it.
+ */
+public interface RetainingPropertyStore extends PropertyStore {
+
+    /**
+     * @return a new array holding the present values of the field in the ZIP
+     */
+    int[] getPresentValues(String zip, PropertyColumns.Field field);
+
+    /**
+     * @return the properties of the ZIP
+     */
+    List<Property> getProperties(String zip);
+
+    @Override
+    default Integer min(String zip, PropertyColumns.Field field) {
+        int[] values = getPresentValues(zip, field);
+        if (values.length == 0) return null;
+        int min = values[0];
+        for (int value : values) {
+            if (value < min) min = value;
+        }
+        return min;
+    }
+
+    @Override
+    default Integer max(String zip, PropertyColumns.Field field) {
+        int[] values = getPresentValues(zip, field);
+        if (values.length == 0) return null;
+        int max = values[0];
+        for (int value : values) {
+            if (value > max) max = value;
+        }
+        return max;
+    }
+}
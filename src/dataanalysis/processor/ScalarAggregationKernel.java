@@ -0,0 +1,37 @@
+package dataanalysis.processor;
+
+/**
+ * Plain loop implementation of the aggregation kernel.
+ */
+public class ScalarAggregationKernel implements AggregationKernel {
+
+    @Override
+    public long maskedSum(int[] values, boolean[] present, int length) {
+        long total = 0;
+        for (int i = 0; i < length; i++) {
+            if (present[i]) total += values[i];
+        }
+        return total;
+    }
+
+    @Override
+    public int countPresent(boolean[] present, int length) {
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if (present[i]) count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void maskedSums(int[][] values, boolean[][] present, int length, long[] sums, int[] counts) {
+        for (int i = 0; i < length; i++) {
+            for (int c = 0; c < values.length; c++) {
+                if (present[c][i]) {
+                    sums[c] += values[c][i];
+                    counts[c]++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package dataanalysis.processor;
+
+import dataanalysis.util.Population;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Serves one ZIP-range shard of the data to a {@link DistributedProcessor} over a localhost socket.
+ *
+ * <p>The worker answers with partial aggregates that the coordinator merges: population records,
+ * vaccination counts by ZIP and per-ZIP property sums, counts, minimums and maximums. Since every ZIP lives in exactly
+ * one shard, percentiles are answered by the owning worker directly.
+ *
+ * <p>The protocol is line based. Each request is one line of space-separated words; the reply is
+ * zero or more lines followed by {@link #END}, or a single line starting with {@link #ERROR}.
+ * <ul>
+ *   <li>{@code STATUS}: one line "covid population properties", each 1 if loaded, else 0</li>
+ *   <li>{@code POPULATION}: "zip population" for each population record, in file order</li>
+ *   <li>{@code VACCINATIONS type date...}: "date zip count" for each date and ZIP with vaccinations</li>
+ *   <li>{@code PROPERTIES}: "zip count marketValues marketValueSum marketValueMin marketValueMax livableAreas
+ *       livableAreaSum livableAreaMin livableAreaMax" for each ZIP, with "-" for the minimum and maximum
+ *       of a field without values</li>
+ *   <li>{@code PERCENTILES market_value|livable_area zip p1,p2,...}: one line with the values</li>
+ *   <li>{@code SHUTDOWN}: ends the worker</li>
+ * </ul>
+ */
+public final class ShardWorker {
+
+    // printed to stdout once the worker listens, followed by the port
+    public static final String READY = "WORKER PORT ";
+
+    static final String END = "END";
+    static final String ERROR = "ERROR ";
+
+    // a coordinator that has not connected by then has gone away
+    private static final int ACCEPT_TIMEOUT_MILLIS = 60_000;
+
+    private ShardWorker() {
+    }
+
+    /**
+     * Listens on an ephemeral localhost port, announces it on stdout and answers the requests
+     * of one coordinator until it sends SHUTDOWN or disconnects. Closes the processor when done.
+     */
+    public static void serve(Processor processor) throws IOException {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(ACCEPT_TIMEOUT_MILLIS);
+            System.out.println(READY + server.getLocalPort());
+            System.out.flush();
+
+            try (Socket socket = server.accept();
+                 BufferedReader in = new BufferedReader(
+                         new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                 PrintWriter out = new PrintWriter(new BufferedWriter(
+                         new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)))) {
+                String request;
+                while ((request = in.readLine()) != null) {
+                    if (request.equals("SHUTDOWN")) {
+                        out.println(END);
+                        out.flush();
+                        return;
+                    }
+                    try {
+                        answer(processor, request.trim().split(" +"), out);
+                        out.println(END);
+                    } catch (RuntimeException e) {
+                        out.println(ERROR + e);
+                    }
+                    out.flush();
+                }
+            }
+        } finally {
+            processor.close();
+        }
+    }
+
+    private static void answer(Processor processor, String[] request, PrintWriter out) {
+        switch (request[0]) {
+            case "STATUS":
+                out.println(flag(processor.hasCovidData()) + " " + flag(processor.hasPopulationData())
+                        + " " + flag(processor.hasPropertyData()));
+                break;
+            case "POPULATION":
+                if (processor.populationRecords == null) break;
+                for (Population population : processor.populationRecords) {
+                    out.println(population.getZipCode() + " " + population.getPopulation());
+                }
+                break;
+            case "VACCINATIONS":
+                if (!processor.hasCovidData()) break;
+                Map<String, Map<String, Integer>> countsByDate = processor.getVaccinationCountsByZip(
+                        request[1], Arrays.asList(request).subList(2, request.length));
+                countsByDate.forEach((date, counts) ->
+                        counts.forEach((zip, count) -> out.println(date + " " + zip + " " + count)));
+                break;
+            case "PROPERTIES":
+                PropertyStore store = processor.propertyStore;
+                if (store == null) break;
+                for (String zip : store.getZipCodes()) {
+                    out.println(zip + " " + store.count(zip)
+                            + " " + totals(store, zip, PropertyColumns.Field.MARKET_VALUE)
+                            + " " + totals(store, zip, PropertyColumns.Field.TOTAL_LIVABLE_AREA));
+                }
+                break;
+            case "PERCENTILES":
+                double[] percentiles = Arrays.stream(request[3].split(",")).mapToDouble(Double::parseDouble).toArray();
+                int[] values = request[1].equals("market_value")
+                        ? processor.getMarketValuePercentiles(request[2], percentiles)
+                        : processor.getLivableAreaPercentiles(request[2], percentiles);
+                StringBuilder line = new StringBuilder();
+                for (int value : values) {
+                    if (line.length() > 0) line.append(' ');
+                    line.append(value);
+                }
+                out.println(line);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown request " + request[0]);
+        }
+    }
+
+    /**
+     * @return "present sum min max" of the field in the ZIP
+     */
+    private static String totals(PropertyStore store, String zip, PropertyColumns.Field field) {
+        Integer min = store.min(zip, field);
+        Integer max = store.max(zip, field);
+        return store.countPresent(zip, field) + " " + store.sum(zip, field)
+                + " " + (min != null ? min : "-") + " " + (max != null ? max : "-");
+    }
+
+    private static String flag(boolean value) {
+        return value ? "1" : "0";
+    }
+}
@@ -0,0 +1,60 @@
+package dataanalysis.processor;
+
+import dataanalysis.util.Property;
+
+import java.util.List;
+
+/**
+ * Evaluates several strategies over a list of properties in a single pass.
+ * Running totals are kept in primitive arrays indexed by strategy.
+ */
+public class StatisticsAggregator {
+
+    private StatisticsAggregator() {
+    }
+
+    /**
+     * Computes count, null count, sum, min, max and mean for each strategy.
+     *
+     * @param properties the properties to aggregate
+     * @param strategies the strategies to evaluate on every property
+     * @return one PropertyStatistics per strategy, in the same order
+     */
+    public static PropertyStatistics[] aggregate(List<Property> properties, AverageCalculationStrategy... strategies) {
+        int n = strategies.length;
+        int[] counts = new int[n];
+        int[] nullCounts = new int[n];
+        long[] sums = new long[n];
+        int[] mins = new int[n];
+        int[] maxs = new int[n];
+
+        for (int s = 0; s < n; s++) {
+            mins[s] = Integer.MAX_VALUE;
+            maxs[s] = Integer.MIN_VALUE;
+        }
+
+        for (Property property : properties) {
+            if (property == null) continue;
+
+            for (int s = 0; s < n; s++) {
+                Integer value = strategies[s].extractNullableValue(property);
+                if (value == null) {
+                    nullCounts[s]++;
+                    continue;
+                }
+
+                int v = value;
+                counts[s]++;
+                sums[s] += v;
+                if (v < mins[s]) mins[s] = v;
+                if (v > maxs[s]) maxs[s] = v;
+            }
+        }
+
+        PropertyStatistics[] result = new PropertyStatistics[n];
+        for (int s = 0; s < n; s++) {
+            result[s] = new PropertyStatistics(counts[s], nullCounts[s], sums[s], mins[s], maxs[s]);
+        }
+        return result;
+    }
+}
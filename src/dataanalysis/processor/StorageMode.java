@@ -0,0 +1,30 @@
+package dataanalysis.processor;
+
+/**
+ * Where Processor keeps the loaded property and COVID records.
+ */
+public enum StorageMode {
+
+    // Java objects on the heap (the original behaviour)
+    HEAP,
+
+    // Primitive columns in native memory outside the Java heap
+    OFF_HEAP,
+
+    // Primitive columns in memory-mapped temporary files, paged in by the OS
+    MAPPED,
+
+    // Per-ZIP property totals only; properties are dropped once added (covid records stay on the heap)
+    STREAMING,
+
+    // Covid records run-length, dictionary and bit-packed encoded on the heap (properties stay on the heap)
+    COMPRESSED;
+
+    /**
+     * @return false if the property values are not kept, so that exact percentiles, per-property
+     *         statistics and the approximate mode's on-demand sketches cannot be computed
+     */
+    public boolean retainsPropertyValues() {
+        return this != STREAMING;
+    }
+}
@@ -0,0 +1,96 @@
+package dataanalysis.processor;
+
+import dataanalysis.util.Property;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Folds each property into per-ZIP accumulators as it is read and then drops it,
+ * so memory depends on the number of ZIP codes rather than the number of rows.
+ * Sums, counts, averages, minimums and maximums are identical to the other stores;
+ * the individual properties are not kept, so it is not a {@link RetainingPropertyStore}.
+ */
+public class StreamingPropertyStore implements WritablePropertyStore {
+
+    private final Map<String, PropertyAccumulator> accumulatorsByZip = new HashMap<>();
+    private int size;
+
+    public StreamingPropertyStore() {
+    }
+
+    /**
+     * Creates a store over totals that were accumulated elsewhere, e.g. merged from shard workers.
+     */
+    StreamingPropertyStore(Map<String, PropertyAccumulator> accumulatorsByZip) {
+        this.accumulatorsByZip.putAll(accumulatorsByZip);
+        for (PropertyAccumulator accumulator : accumulatorsByZip.values()) {
+            size += accumulator.getCount();
+        }
+    }
+
+    @Override
+    public void add(Property property) {
+        accumulatorsByZip.computeIfAbsent(property.getZipCode(), z -> new PropertyAccumulator()).add(property);
+        size++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the bytes of the per-ZIP accumulators, whatever the number of properties
+     */
+    @Override
+    public long estimateBytes() {
+        return accumulatorsByZip.size() * (HeapSizes.MAP_ENTRY + HeapSizes.ZIP + PropertyAccumulator.BYTES);
+    }
+
+    @Override
+    public int count(String zip) {
+        PropertyAccumulator accumulator = accumulatorsByZip.get(zip);
+        return accumulator != null ? accumulator.getCount() : 0;
+    }
+
+    @Override
+    public long sum(String zip, PropertyColumns.Field field) {
+        PropertyAccumulator accumulator = accumulatorsByZip.get(zip);
+        return accumulator != null ? accumulator.getSum(field) : 0;
+    }
+
+    @Override
+    public int countPresent(String zip, PropertyColumns.Field field) {
+        PropertyAccumulator accumulator = accumulatorsByZip.get(zip);
+        return accumulator != null ? accumulator.getPresentCount(field) : 0;
+    }
+
+    @Override
+    public void sumPresent(String zip, PropertyColumns.Field[] fields, long[] sums, int[] counts) {
+        PropertyAccumulator accumulator = accumulatorsByZip.get(zip);
+        if (accumulator == null) return;
+        for (int f = 0; f < fields.length; f++) {
+            sums[f] += accumulator.getSum(fields[f]);
+            counts[f] += accumulator.getPresentCount(fields[f]);
+        }
+    }
+
+    @Override
+    public Integer min(String zip, PropertyColumns.Field field) {
+        PropertyAccumulator accumulator = accumulatorsByZip.get(zip);
+        return accumulator != null ? accumulator.getMin(field) : null;
+    }
+
+    @Override
+    public Integer max(String zip, PropertyColumns.Field field) {
+        PropertyAccumulator accumulator = accumulatorsByZip.get(zip);
+        return accumulator != null ? accumulator.getMax(field) : null;
+    }
+
+    @Override
+    public Set<String> getZipCodes() {
+        return accumulatorsByZip.keySet();
+    }
+}
@@ -0,0 +1,49 @@
+package dataanalysis.processor;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical instances of the strings that repeat across records, i.e. ZIP codes and ETL
+ * timestamps. Processors that share a dictionary hold each distinct string once, however many
+ * records and datasets contain it.
+ *
+ * <p>Once the dictionary is full, new strings are returned as they are, so input with unexpectedly
+ * many distinct values cannot make it grow without bound.
+ */
+public final class StringDictionary {
+
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final ConcurrentHashMap<String, String> strings = new ConcurrentHashMap<>();
+    private final int capacity;
+
+    public StringDictionary() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the most distinct strings kept
+     */
+    public StringDictionary(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return the dictionary's instance equal to the value, or the value itself if it has none and is full
+     */
+    public String canonical(String value) {
+        if (value == null) return null;
+        String existing = strings.get(value);
+        if (existing != null) return existing;
+        if (strings.size() >= capacity) return value;
+        existing = strings.putIfAbsent(value, value);
+        return existing != null ? existing : value;
+    }
+
+    /**
+     * @return the number of distinct strings kept
+     */
+    public int size() {
+        return strings.size();
+    }
+}
@@ -0,0 +1,51 @@
+package dataanalysis.processor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Top-K selection over per-key values in O(n log k) time and O(k) extra space.
+ */
+public class TopK {
+
+    private TopK() {
+    }
+
+    /**
+     * Returns the k entries with the highest (or lowest) values, best first.
+     * Ties are broken by key in ascending order, so the result does not depend on map order.
+     *
+     * @param values the values to select from
+     * @param k the number of entries to return
+     * @param highest true for the highest values, false for the lowest
+     * @return at most k entries, ordered from best to worst
+     */
+    public static <K extends Comparable<K>> List<Map.Entry<K, Double>> select(Map<K, Double> values, int k,
+                                                                               boolean highest) {
+        if (k <= 0 || values.isEmpty()) return new ArrayList<>();
+
+        Comparator<Map.Entry<K, Double>> byValue = Map.Entry.comparingByValue();
+        Comparator<Map.Entry<K, Double>> rank = (highest ? byValue.reversed() : byValue)
+                .thenComparing(Map.Entry.comparingByKey());
+
+        // the heap is ordered worst first, so its head is the entry the next better one replaces
+        PriorityQueue<Map.Entry<K, Double>> heap = new PriorityQueue<>(Math.min(k, values.size()) + 1,
+                rank.reversed());
+        for (Map.Entry<K, Double> entry : values.entrySet()) {
+            if (heap.size() < k) {
+                heap.add(Map.entry(entry.getKey(), entry.getValue()));
+            } else if (rank.compare(entry, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+
+        List<Map.Entry<K, Double>> result = new ArrayList<>(heap);
+        Collections.sort(result, rank);
+        return result;
+    }
+}
@@ -0,0 +1,92 @@
+package dataanalysis.processor;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+
+/**
+ * Aggregation kernel built on the JDK Vector API.
+ * Values are loaded under the presence mask and widened to longs before
+ * being accumulated, so large sums cannot overflow. Only instantiate through
+ * {@link AggregationKernel#create()}, which checks that the module is present.
+ */
+public class VectorAggregationKernel implements AggregationKernel {
+
+    private static final VectorSpecies<Integer> INT_SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONG_SPECIES = LongVector.SPECIES_PREFERRED;
+
+    // number of long vectors needed to hold one widened int vector
+    private static final int PARTS = INT_SPECIES.length() / LONG_SPECIES.length();
+
+    @Override
+    public long maskedSum(int[] values, boolean[] present, int length) {
+        LongVector acc = LongVector.zero(LONG_SPECIES);
+        int upper = INT_SPECIES.loopBound(length);
+
+        int i = 0;
+        for (; i < upper; i += INT_SPECIES.length()) {
+            VectorMask<Integer> mask = VectorMask.fromArray(INT_SPECIES, present, i);
+            IntVector v = IntVector.fromArray(INT_SPECIES, values, i, mask);
+            for (int part = 0; part < PARTS; part++) {
+                acc = acc.add((LongVector) v.convertShape(VectorOperators.I2L, LONG_SPECIES, part));
+            }
+        }
+
+        long total = acc.reduceLanes(VectorOperators.ADD);
+        // scalar tail for the rows that do not fill a whole vector
+        for (; i < length; i++) {
+            if (present[i]) total += values[i];
+        }
+        return total;
+    }
+
+    @Override
+    public int countPresent(boolean[] present, int length) {
+        int upper = INT_SPECIES.loopBound(length);
+
+        int count = 0;
+        int i = 0;
+        for (; i < upper; i += INT_SPECIES.length()) {
+            count += VectorMask.fromArray(INT_SPECIES, present, i).trueCount();
+        }
+        for (; i < length; i++) {
+            if (present[i]) count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void maskedSums(int[][] values, boolean[][] present, int length, long[] sums, int[] counts) {
+        LongVector[] acc = new LongVector[values.length];
+        Arrays.fill(acc, LongVector.zero(LONG_SPECIES));
+        int upper = INT_SPECIES.loopBound(length);
+
+        int i = 0;
+        for (; i < upper; i += INT_SPECIES.length()) {
+            for (int c = 0; c < values.length; c++) {
+                VectorMask<Integer> mask = VectorMask.fromArray(INT_SPECIES, present[c], i);
+                IntVector v = IntVector.fromArray(INT_SPECIES, values[c], i, mask);
+                for (int part = 0; part < PARTS; part++) {
+                    acc[c] = acc[c].add((LongVector) v.convertShape(VectorOperators.I2L, LONG_SPECIES, part));
+                }
+                counts[c] += mask.trueCount();
+            }
+        }
+
+        for (int c = 0; c < values.length; c++) {
+            sums[c] += acc[c].reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < length; i++) {
+            for (int c = 0; c < values.length; c++) {
+                if (present[c][i]) {
+                    sums[c] += values[c][i];
+                    counts[c]++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package dataanalysis.processor;
+
+import dataanalysis.util.Property;
+
+/**
+ * A property store that is filled while the file is read. Properties are added one at a time,
+ * then {@link #finish()} is called once before any query.
+ */
+public interface WritablePropertyStore extends PropertyStore {
+
+    /**
+     * Adds a property during loading.
+     */
+    void add(Property property);
+
+    /**
+     * Called once after the last property has been added.
+     */
+    default void finish() {
+    }
+}
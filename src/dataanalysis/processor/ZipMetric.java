@@ -0,0 +1,56 @@
+package dataanalysis.processor;
+
+/**
+ * The per-ZIP metrics that ZIP codes can be ranked by.
+ */
+public enum ZipMetric {
+
+    // Health risk index on a date (see Processor.getHealthRiskIndex)
+    HEALTH_RISK_INDEX("health risk index", true, false),
+
+    // Partial vaccinations per capita on a date
+    PARTIAL_VACCINATIONS_PER_CAPITA("partial vaccinations per capita", true, false),
+
+    // Full vaccinations per capita on a date
+    FULL_VACCINATIONS_PER_CAPITA("full vaccinations per capita", true, false),
+
+    // Average market value of the properties in the ZIP
+    AVERAGE_MARKET_VALUE("average market value", false, true),
+
+    // Average total livable area of the properties in the ZIP
+    AVERAGE_LIVABLE_AREA("average livable area", false, true),
+
+    // Total market value divided by population
+    MARKET_VALUE_PER_CAPITA("market value per capita", false, true);
+
+    private final String label;
+    private final boolean dated;
+    private final boolean integral;
+
+    ZipMetric(String label, boolean dated, boolean integral) {
+        this.label = label;
+        this.dated = dated;
+        this.integral = integral;
+    }
+
+    /**
+     * @return the name shown to the user
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @return true if the metric is computed for a date and needs one to be given
+     */
+    public boolean isDated() {
+        return dated;
+    }
+
+    /**
+     * @return true if the metric's values are whole numbers
+     */
+    public boolean isIntegral() {
+        return integral;
+    }
+}
@@ -0,0 +1,84 @@
+package dataanalysis.processor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * A contiguous range of ZIP codes, from a lower bound (inclusive) to an upper bound (exclusive).
+ * ZIP codes are compared as strings; a null bound leaves that side of the range open.
+ */
+public final class ZipRange {
+
+    private final String from;
+    private final String to;
+
+    public ZipRange(String from, String to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * @return true if the ZIP falls within the range
+     */
+    public boolean contains(String zip) {
+        if (zip == null) return false;
+        return (from == null || zip.compareTo(from) >= 0) && (to == null || zip.compareTo(to) < 0);
+    }
+
+    /**
+     * Splits the ZIP codes into at most n ranges holding about the same number of the given ZIPs.
+     * Together the ranges cover every ZIP code, including ones not in the sample.
+     * Without a sample the 5-digit ZIP space is split evenly.
+     *
+     * @param sample ZIP codes whose distribution the ranges should follow, may be empty
+     * @param n the number of ranges wanted
+     */
+    public static List<ZipRange> split(Collection<String> sample, int n) {
+        List<String> bounds = new ArrayList<>();
+        if (sample.isEmpty()) {
+            for (int i = 1; i < n; i++) {
+                bounds.add(String.format("%05d", i * 100000 / n));
+            }
+        } else {
+            List<String> zips = new ArrayList<>(new TreeSet<>(sample));
+            for (int i = 1; i < n; i++) {
+                String bound = zips.get(i * zips.size() / n);
+                // with fewer ZIPs than ranges some bounds repeat; skip them rather than leave ranges empty
+                if (!bound.equals(zips.get(0)) && (bounds.isEmpty() || !bounds.get(bounds.size() - 1).equals(bound))) {
+                    bounds.add(bound);
+                }
+            }
+        }
+
+        List<ZipRange> ranges = new ArrayList<>();
+        String from = null;
+        for (String bound : bounds) {
+            ranges.add(new ZipRange(from, bound));
+            from = bound;
+        }
+        ranges.add(new ZipRange(from, null));
+        return ranges;
+    }
+
+    /**
+     * Parses the form written by {@link #toString()}, e.g. "19100-19130", "-19100" or "19130-".
+     *
+     * @throws IllegalArgumentException if the text is not a range
+     */
+    public static ZipRange parse(String text) {
+        int dash = text.indexOf('-');
+        if (dash < 0 || text.indexOf('-', dash + 1) >= 0) {
+            throw new IllegalArgumentException("Invalid ZIP range '" + text + "'. Expected FROM-TO.");
+        }
+        String from = text.substring(0, dash).trim();
+        String to = text.substring(dash + 1).trim();
+        return new ZipRange(from.isEmpty() ? null : from, to.isEmpty() ? null : to);
+    }
+
+    @Override
+    public String toString() {
+        return (from != null ? from : "") + "-" + (to != null ? to : "");
+    }
+}
@@ -0,0 +1,97 @@
+package dataanalysis.replay;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The latencies of replayed actions, grouped by action. Each latency is kept, so the
+ * percentiles are exact. Replay threads record into one report concurrently.
+ */
+public final class LatencyReport {
+
+    private final Map<String, Latencies> latenciesByAction = new LinkedHashMap<>();
+    private long wallNanos;
+
+    /**
+     * Records how long one run of an action took.
+     */
+    public synchronized void record(String action, long nanos) {
+        latencies(action).add(nanos);
+    }
+
+    /**
+     * Records a run of an action that failed; the first failure's message is kept.
+     */
+    public synchronized void recordError(String action, String message) {
+        Latencies latencies = latencies(action);
+        latencies.errors++;
+        if (latencies.firstError == null) latencies.firstError = message;
+    }
+
+    synchronized void setWallNanos(long wallNanos) {
+        this.wallNanos = wallNanos;
+    }
+
+    /**
+     * Prints one line per action with its count, errors and latency distribution in milliseconds,
+     * followed by the first error of each action that had any.
+     */
+    public synchronized void print(PrintStream out) {
+        long total = 0;
+        for (Latencies latencies : latenciesByAction.values()) total += latencies.size;
+        out.printf("%d runs in %.1f s (%.1f per second)%n", total, wallNanos / 1e9,
+                wallNanos > 0 ? total * 1e9 / wallNanos : 0.0);
+        out.printf("%-18s %7s %7s %10s %10s %10s %10s %10s%n",
+                "action", "count", "errors", "mean ms", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        for (Map.Entry<String, Latencies> entry : latenciesByAction.entrySet()) {
+            Latencies latencies = entry.getValue();
+            long[] sorted = Arrays.copyOf(latencies.nanos, latencies.size);
+            Arrays.sort(sorted);
+            long sum = 0;
+            for (long nanos : sorted) sum += nanos;
+            out.printf("%-18s %7d %7d %10s %10s %10s %10s %10s%n", entry.getKey(), sorted.length, latencies.errors,
+                    sorted.length > 0 ? millis((double) sum / sorted.length) : "-",
+                    percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99),
+                    sorted.length > 0 ? millis(sorted[sorted.length - 1]) : "-");
+        }
+        for (Map.Entry<String, Latencies> entry : latenciesByAction.entrySet()) {
+            if (entry.getValue().firstError != null) {
+                out.println("First error of " + entry.getKey() + ": " + entry.getValue().firstError);
+            }
+        }
+    }
+
+    private Latencies latencies(String action) {
+        return latenciesByAction.computeIfAbsent(action, name -> new Latencies());
+    }
+
+    /**
+     * @return the nearest-rank percentile of sorted latencies in milliseconds, or "-" if there are none
+     */
+    private static String percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) return "-";
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return millis(sorted[Math.max(0, rank - 1)]);
+    }
+
+    private static String millis(double nanos) {
+        return String.format("%.3f", nanos / 1e6);
+    }
+
+    /**
+     * The latencies of one action, in a growable array.
+     */
+    private static final class Latencies {
+        long[] nanos = new long[16];
+        int size;
+        int errors;
+        String firstError;
+
+        void add(long value) {
+            if (size == nanos.length) nanos = Arrays.copyOf(nanos, size * 2);
+            nanos[size++] = value;
+        }
+    }
+}
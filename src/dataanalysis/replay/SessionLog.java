@@ -0,0 +1,219 @@
+package dataanalysis.replay;
+
+import dataanalysis.logging.LogFileWriter;
+import dataanalysis.ui.MenuAction;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The sessions of a log written by {@link LogFileWriter}, rebuilt into the actions their users ran.
+ *
+ * <p>A session starts with its command line arguments. The user interface logs every prompt answer
+ * as it is typed and, once an action has been answered, one {@link LogFileWriter#ACTION_TAG} line
+ * with its menu number and the answers it ran with. Only the argument and action lines are read,
+ * so a log written before actions were logged yields no sessions. Action lines that name no menu
+ * action or do not fit its prompts are skipped, as are the actions of sessions run with a dataset
+ * catalog, which each name a dataset that a replay would have no processor for.
+ */
+public final class SessionLog {
+
+    private final List<Session> sessions = new ArrayList<>();
+    private int skippedLines;
+
+    private SessionLog() {
+    }
+
+    /**
+     * Reads and parses a log file.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    public static SessionLog read(Path file) throws IOException {
+        SessionLog log = new SessionLog();
+        Parser parser = log.new Parser();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                parser.accept(line);
+            }
+        }
+        parser.finish();
+        return log;
+    }
+
+    /**
+     * @return the sessions with at least one action, in log order
+     */
+    public List<Session> getSessions() {
+        return Collections.unmodifiableList(sessions);
+    }
+
+    /**
+     * @return the number of action lines that could not be replayed
+     */
+    public int getSkippedLines() {
+        return skippedLines;
+    }
+
+    /**
+     * @return the number of actions in all sessions
+     */
+    public int getActionCount() {
+        int count = 0;
+        for (Session session : sessions) count += session.actions.size();
+        return count;
+    }
+
+    /**
+     * One run of the program, from its start to its exit.
+     */
+    public static final class Session {
+        private final long start;
+        private final List<String> arguments;
+        private final List<Action> actions = new ArrayList<>();
+
+        Session(long start, List<String> arguments) {
+            this.start = start;
+            this.arguments = arguments;
+        }
+
+        /**
+         * @return the time the session started, in milliseconds since the epoch
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * @return the command line arguments of the session
+         */
+        public List<String> getArguments() {
+            return Collections.unmodifiableList(arguments);
+        }
+
+        public List<Action> getActions() {
+            return Collections.unmodifiableList(actions);
+        }
+    }
+
+    /**
+     * One menu action with the answers it ran with, in prompt order.
+     */
+    public static final class Action {
+        private final int choice;
+        private final List<String> inputs = new ArrayList<>();
+        private final long timestamp;
+
+        Action(int choice, long timestamp) {
+            this.choice = choice;
+            this.timestamp = timestamp;
+        }
+
+        /**
+         * @return the menu number of the action
+         */
+        public int getChoice() {
+            return choice;
+        }
+
+        /**
+         * @return the prompt answers, e.g. the type and date of option 3
+         */
+        public List<String> getInputs() {
+            return Collections.unmodifiableList(inputs);
+        }
+
+        /**
+         * @return the time the action was answered and ran, in milliseconds since the epoch
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+
+    /**
+     * Follows the log line by line: the arguments line that starts a session, then one line for
+     * each action the session completed.
+     */
+    private final class Parser {
+        private Session session;
+        private boolean skipping;   // in a catalog session, until the next arguments line
+
+        void accept(String line) {
+            int space = line.indexOf(' ');
+            long timestamp;
+            try {
+                timestamp = Long.parseLong(space < 0 ? line : line.substring(0, space));
+            } catch (NumberFormatException e) {
+                skippedLines++;
+                return;
+            }
+            String message = space < 0 ? "" : line.substring(space + 1).trim();
+
+            if (message.startsWith("--") && message.contains("=")) {
+                // Main logs the arguments as its first line, so a new session begins
+                finish();
+                skipping = Arrays.stream(message.split(" ")).anyMatch(arg -> arg.startsWith("--catalog="));
+                if (!skipping) session = new Session(timestamp, new ArrayList<>(Arrays.asList(message.split(" "))));
+                return;
+            }
+            if (!message.startsWith(LogFileWriter.ACTION_TAG + "\t")) {
+                // file names, prompt answers, slow queries and dataset loads; the action lines repeat what was answered
+                return;
+            }
+            if (skipping) {
+                skippedLines++;
+                return;
+            }
+
+            Action action = parseAction(message, timestamp);
+            if (action == null) {
+                skippedLines++;
+                return;
+            }
+            if (session == null) {
+                // a session run without arguments logs no first line; it begins with its first action
+                session = new Session(timestamp, new ArrayList<>());
+            }
+            session.actions.add(action);
+        }
+
+        /**
+         * Ends the current session.
+         */
+        void finish() {
+            if (session != null && !session.actions.isEmpty()) {
+                sessions.add(session);
+            }
+            session = null;
+        }
+
+        /**
+         * @return the action of an action line, or null if it names no menu action or has the wrong answers
+         */
+        private Action parseAction(String message, long timestamp) {
+            String[] fields = message.split("\t", -1);
+            if (fields.length < 2 || !fields[1].matches("\\d{1,2}")) return null;
+            MenuAction menuAction = MenuAction.of(Integer.parseInt(fields[1]));
+            if (menuAction == null) return null;
+
+            Action action = new Action(menuAction.getNumber(), timestamp);
+            action.inputs.addAll(Arrays.asList(fields).subList(2, fields.length));
+            // an action the data could not answer was logged with the answers given before it was refused
+            int refused = menuAction == MenuAction.TOP_ZIPS || menuAction == MenuAction.CUSTOM_METRIC ? 1 : 0;
+            try {
+                if (!menuAction.isAnswered(action.inputs) && action.inputs.size() != refused) return null;
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                return null;
+            }
+            return action;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package dataanalysis.replay;
+
+import dataanalysis.processor.DatasetQueries;
+import dataanalysis.processor.DatasetReloader;
+import dataanalysis.ui.MenuAction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays the sessions of a log against processors as a load test and measures each action.
+ *
+ * <p>Like the program it replays, every session loads its own processor, so each session starts
+ * with cold caches and the load is measured too. Actions run at the time they ran in the log,
+ * relative to its first session and divided by the speed; an action that falls behind runs at once.
+ * At speed 0 the actions run back to back. Several users each replay the whole log on their own
+ * thread at the same time, which is how many people running the program on one machine behave;
+ * a processor is never shared between threads.
+ *
+ * <p>The latency of an action is the time {@link MenuAction#run} takes for it, which makes the
+ * processor calls of the user interface and formats their output, without printing. Reloads (option 9) load a new processor in the foreground and count as their
+ * load time.
+ */
+public final class SessionReplay {
+
+    private final DatasetReloader.Loader loader;
+    private final double speed;
+    private final int users;
+
+    /**
+     * @param loader loads the processor of each replayed session from the input files
+     * @param speed how many times faster than logged the actions run, or 0 to run them back to back
+     * @param users how many copies of the log are replayed concurrently
+     */
+    public SessionReplay(DatasetReloader.Loader loader, double speed, int users) {
+        this.loader = loader;
+        this.speed = speed;
+        this.users = users;
+    }
+
+    /**
+     * Replays the log with every user and waits for all of them to finish.
+     *
+     * @return the latencies of the loads and actions of all users
+     */
+    public LatencyReport run(SessionLog log) throws InterruptedException {
+        LatencyReport report = new LatencyReport();
+        if (log.getSessions().isEmpty()) return report;
+
+        long origin = log.getSessions().get(0).getStart();
+        long started = System.nanoTime();
+        List<Thread> threads = new ArrayList<>();
+        for (int user = 0; user < users; user++) {
+            Thread thread = new Thread(() -> replay(log, origin, started, report), "replay-" + user);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        report.setWallNanos(System.nanoTime() - started);
+        return report;
+    }
+
+    /**
+     * Replays every session of the log in order on the current thread.
+     */
+    private void replay(SessionLog log, long origin, long started, LatencyReport report) {
+        for (SessionLog.Session session : log.getSessions()) {
+            waitUntil(session.getStart() - origin, started);
+            DatasetQueries processor = load(report, "load");
+            if (processor == null) continue;
+
+            try {
+                for (SessionLog.Action action : session.getActions()) {
+                    waitUntil(action.getTimestamp() - origin, started);
+                    MenuAction menuAction = MenuAction.of(action.getChoice());
+                    String name = menuAction.getName();
+                    if (menuAction == MenuAction.RELOAD) {
+                        DatasetQueries reloaded = load(report, name);
+                        if (reloaded != null) {
+                            processor.close();
+                            processor = reloaded;
+                        }
+                        continue;
+                    }
+
+                    long start = System.nanoTime();
+                    try {
+                        execute(processor, menuAction, action.getInputs());
+                        report.record(name, System.nanoTime() - start);
+                    } catch (RuntimeException e) {
+                        report.recordError(name, e.toString());
+                    }
+                }
+            } finally {
+                processor.close();
+            }
+        }
+    }
+
+    /**
+     * @return a newly loaded processor, or null if loading failed
+     */
+    private DatasetQueries load(LatencyReport report, String name) {
+        long start = System.nanoTime();
+        try {
+            DatasetQueries processor = loader.load();
+            report.record(name, System.nanoTime() - start);
+            return processor;
+        } catch (Exception e) {
+            report.recordError(name, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Sleeps until the logged offset, scaled by the speed, has passed since the replay started.
+     */
+    private void waitUntil(long offsetMillis, long started) {
+        if (speed == 0) return;
+        long due = started + (long) (offsetMillis * 1_000_000 / speed);
+        long remaining;
+        while ((remaining = due - System.nanoTime()) > 0) {
+            try {
+                Thread.sleep(remaining / 1_000_000, (int) (remaining % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs an action as the user interface does, unless the replay's data cannot answer it or the
+     * logged session had data this replay has not, and so was given other answers.
+     */
+    private static void execute(DatasetQueries processor, MenuAction action, List<String> inputs) {
+        if (action.isAvailable(processor, inputs) && action.isAnswered(inputs)) {
+            action.run(processor, inputs);
+        }
+    }
+}
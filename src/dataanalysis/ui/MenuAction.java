@@ -0,0 +1,272 @@
+package dataanalysis.ui;
+
+import dataanalysis.processor.DatasetQueries;
+import dataanalysis.processor.Estimate;
+import dataanalysis.processor.MetricExpression;
+import dataanalysis.processor.ZipMetric;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The actions of the menu: the data each needs, the answers its prompts collect and the query it runs.
+ * The user interface and the session replay both run actions from this table, so a replayed action
+ * makes the same calls the user interface made.
+ *
+ * <p>Answers are kept as the strings the prompts accepted, in prompt order, e.g. the type and date
+ * of {@link #VACCINATIONS_PER_CAPITA}. That is how they are logged with a completed action.
+ */
+public enum MenuAction {
+
+    // Lists the actions the loaded data can answer
+    SHOW_ACTIONS(1, "actions", null),
+
+    // Total population of all ZIP codes
+    TOTAL_POPULATION(2, "population", "Population data not available."),
+
+    // Vaccinations per capita of each ZIP code; answers: type, date
+    VACCINATIONS_PER_CAPITA(3, "vaccinations", "Vaccination or population data not available."),
+
+    // Average market value in a ZIP code; answers: ZIP
+    AVERAGE_MARKET_VALUE(4, "market value", "Property data not available."),
+
+    // Average livable area in a ZIP code; answers: ZIP
+    AVERAGE_LIVABLE_AREA(5, "livable area", "Property data not available."),
+
+    // Market value per capita of a ZIP code; answers: ZIP
+    MARKET_VALUE_PER_CAPITA(6, "value/capita", "Required data not available."),
+
+    // Health risk index of each ZIP code; answers: date
+    HEALTH_RISK_INDEX(7, "health risk", "Required data not available."),
+
+    // Market value and livable area percentiles in a ZIP code; answers: ZIP, percentiles
+    PROPERTY_PERCENTILES(8, "percentiles", "Property data not available."),
+
+    // Reloads the input files; the dataset is replaced by whoever holds it
+    RELOAD(9, "reload", null),
+
+    // The ZIP codes with the highest or lowest value of a metric; answers: metric number, date if dated, count, top|bottom
+    TOP_ZIPS(10, "top zips", "Required data not available."),
+
+    // Starts loading the exact property values
+    EXACT_LOAD(11, "exact load", "The exact property values are already loaded."),
+
+    // A user-defined metric of each ZIP code; answers: expression, date if it uses vaccinations
+    CUSTOM_METRIC(12, "metric", "Required data not available.");
+
+    private final int number;
+    private final String name;
+    private final String unavailableMessage;
+
+    MenuAction(int number, String name, String unavailableMessage) {
+        this.number = number;
+        this.name = name;
+        this.unavailableMessage = unavailableMessage;
+    }
+
+    /**
+     * @return the action with the menu number, or null if there is none
+     */
+    public static MenuAction of(int number) {
+        for (MenuAction action : values()) {
+            if (action.number == number) return action;
+        }
+        return null;
+    }
+
+    /**
+     * @return the menu number
+     */
+    public int getNumber() {
+        return number;
+    }
+
+    /**
+     * @return the menu number and a short name, e.g. "3 vaccinations"
+     */
+    public String getName() {
+        return number + " " + name;
+    }
+
+    /**
+     * @return what the user is told when {@link #isAvailable} is false
+     */
+    public String getUnavailableMessage() {
+        return unavailableMessage;
+    }
+
+    /**
+     * Tells whether the loaded data can answer the action. For {@link #TOP_ZIPS} and {@link #CUSTOM_METRIC}
+     * this depends on the first answer; without one, on whether any metric could be answered.
+     */
+    public boolean isAvailable(DatasetQueries processor, List<String> answers) {
+        boolean covid = processor.hasCovidData();
+        boolean population = processor.hasPopulationData();
+        boolean properties = processor.hasPropertyData();
+        switch (this) {
+            case TOTAL_POPULATION:
+                return population;
+            case VACCINATIONS_PER_CAPITA:
+                return covid && population;
+            case AVERAGE_MARKET_VALUE:
+            case AVERAGE_LIVABLE_AREA:
+            case PROPERTY_PERCENTILES:
+                return properties;
+            case MARKET_VALUE_PER_CAPITA:
+                return properties && population;
+            case HEALTH_RISK_INDEX:
+                return properties && population && covid;
+            case TOP_ZIPS:
+                if (answers.isEmpty()) return properties || covid && population;
+                ZipMetric metric = metric(answers);
+                return metric.isDated()
+                        ? covid && population && (metric != ZipMetric.HEALTH_RISK_INDEX || properties)
+                        : properties && (metric != ZipMetric.MARKET_VALUE_PER_CAPITA || population);
+            case EXACT_LOAD:
+                return processor.isApproximate();
+            case CUSTOM_METRIC:
+                if (answers.isEmpty()) return properties || population || covid;
+                MetricExpression expression = MetricExpression.compile(answers.get(0));
+                return !(expression.usesProperties() && !properties
+                        || expression.usesPopulation() && !population
+                        || expression.usesVaccinations() && !covid);
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * @return true if the answers are all the prompts of the action collect, given the earlier answers
+     */
+    public boolean isAnswered(List<String> answers) {
+        switch (this) {
+            case VACCINATIONS_PER_CAPITA:
+            case PROPERTY_PERCENTILES:
+                return answers.size() == 2;
+            case AVERAGE_MARKET_VALUE:
+            case AVERAGE_LIVABLE_AREA:
+            case MARKET_VALUE_PER_CAPITA:
+            case HEALTH_RISK_INDEX:
+                return answers.size() == 1;
+            case TOP_ZIPS:
+                return !answers.isEmpty() && answers.size() == (metric(answers).isDated() ? 4 : 3);
+            case CUSTOM_METRIC:
+                return !answers.isEmpty()
+                        && answers.size() == (MetricExpression.compile(answers.get(0)).usesVaccinations() ? 2 : 1);
+            default:
+                return answers.isEmpty();
+        }
+    }
+
+    /**
+     * Runs the action's query on an answered, available action.
+     *
+     * @return the lines to show between the output markers; none for {@link #RELOAD}, whose new
+     *         dataset is loaded by the caller
+     */
+    public List<String> run(DatasetQueries processor, List<String> answers) {
+        List<String> lines = new ArrayList<>();
+        switch (this) {
+            case SHOW_ACTIONS:
+                lines.add("0");
+                for (MenuAction action : values()) {
+                    if (action.isAvailable(processor, List.of())) lines.add(String.valueOf(action.number));
+                }
+                break;
+            case TOTAL_POPULATION:
+                lines.add(String.valueOf(processor.getTotalPopulation()));
+                break;
+            case VACCINATIONS_PER_CAPITA:
+                Map<String, Double> perCapita = processor.getVaccinationPerCapita(answers.get(0), answers.get(1));
+                if (perCapita.isEmpty()) lines.add("0");
+                addValues(lines, perCapita);
+                break;
+            case AVERAGE_MARKET_VALUE:
+                lines.add(formatEstimate(processor.estimateAverageMarketValue(answers.get(0))));
+                break;
+            case AVERAGE_LIVABLE_AREA:
+                lines.add(formatEstimate(processor.estimateAverageLivableArea(answers.get(0))));
+                break;
+            case MARKET_VALUE_PER_CAPITA:
+                lines.add(formatEstimate(processor.estimateMarketValuePerCapita(answers.get(0))));
+                break;
+            case HEALTH_RISK_INDEX:
+                addValues(lines, processor.getHealthRiskIndex(answers.get(0)));
+                break;
+            case PROPERTY_PERCENTILES:
+                double[] percentiles = percentiles(answers.get(1));
+                int[] marketValues = processor.getMarketValuePercentiles(answers.get(0), percentiles);
+                int[] livableAreas = processor.getLivableAreaPercentiles(answers.get(0), percentiles);
+                for (int i = 0; i < percentiles.length; i++) {
+                    lines.add(formatPercentile(percentiles[i]) + " " + marketValues[i] + " " + livableAreas[i]);
+                }
+                break;
+            case TOP_ZIPS:
+                ZipMetric metric = metric(answers);
+                int last = answers.size() - 1;
+                String date = metric.isDated() ? answers.get(1) : null;
+                List<Map.Entry<String, Double>> top = processor.getTopZips(metric, date,
+                        Integer.parseInt(answers.get(last - 1)), answers.get(last).equals("top"));
+                for (Map.Entry<String, Double> entry : top) {
+                    lines.add(metric.isIntegral() ? entry.getKey() + " " + Math.round(entry.getValue())
+                            : String.format("%s %.4f", entry.getKey(), entry.getValue()));
+                }
+                break;
+            case EXACT_LOAD:
+                lines.add(processor.upgradeToExact() ? "Exact property load started."
+                        : "The exact property values are already loading.");
+                break;
+            case CUSTOM_METRIC:
+                MetricExpression expression = MetricExpression.compile(answers.get(0));
+                addValues(lines, processor.evaluateMetric(expression, expression.usesVaccinations() ? answers.get(1) : null));
+                break;
+            default:
+                break;
+        }
+        return lines;
+    }
+
+    /**
+     * @return the metric picked by its number in the first answer
+     */
+    private static ZipMetric metric(List<String> answers) {
+        return ZipMetric.values()[Integer.parseInt(answers.get(0)) - 1];
+    }
+
+    /**
+     * @return the comma-separated percentiles of an answer, e.g. "50,90"
+     */
+    static double[] percentiles(String answer) {
+        String[] parts = answer.split(",");
+        double[] percentiles = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            percentiles[i] = Double.parseDouble(parts[i].trim());
+        }
+        return percentiles;
+    }
+
+    private static void addValues(List<String> lines, Map<String, Double> values) {
+        for (Map.Entry<String, Double> entry : values.entrySet()) {
+            lines.add(String.format("%s %.4f", entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * Formats an answer: an exact one as the whole number alone, an estimate followed by its
+     * 95% confidence interval and sample size, e.g. "183200 +/- 9100 (95% CI, n=412)".
+     */
+    private static String formatEstimate(Estimate estimate) {
+        if (estimate.isExact()) return String.valueOf((long) estimate.getValue());
+        if (estimate.getSampleSize() == 0) return "0 (no properties in the sample)";
+        String margin = Double.isNaN(estimate.getMargin()) ? "?" : String.valueOf(Math.round(estimate.getMargin()));
+        return Math.round(estimate.getValue()) + " +/- " + margin + " (95% CI, n=" + estimate.getSampleSize() + ")";
+    }
+
+    /**
+     * Formats a percentile without a trailing ".0" for whole numbers.
+     */
+    private static String formatPercentile(double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+}
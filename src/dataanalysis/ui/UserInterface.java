@@ -1,19 +1,51 @@
 package dataanalysis.ui;
 
 import dataanalysis.logging.LogFileWriter;
-import dataanalysis.processor.Processor;
+import dataanalysis.logging.QueryTrace;
+import dataanalysis.processor.DatasetCatalog;
+import dataanalysis.processor.DatasetQueries;
+import dataanalysis.processor.DatasetReloader;
+import dataanalysis.processor.MetricExpression;
+import dataanalysis.processor.ZipMetric;
 
-import java.util.Map;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 public class UserInterface {
 
-    private final Processor processor;
+    // the processor of the snapshot the current action runs against
+    private DatasetQueries processor;
+    private final DatasetReloader reloader;
+    private final DatasetCatalog catalog;
     private final Scanner scanner = new Scanner(System.in);
     private final LogFileWriter logger = LogFileWriter.getInstance();
+    // whether the menu last shown offered the exact load, whose end is reported with the next menu
+    private boolean exactLoadOffered;
 
-    public UserInterface(Processor processor) {
+    public UserInterface(DatasetQueries processor) {
         this.processor = processor;
+        this.reloader = null;
+        this.catalog = null;
+    }
+
+    /**
+     * Creates a user interface whose actions each run against the reloader's current snapshot,
+     * and which offers reloading the data as an extra action.
+     */
+    public UserInterface(DatasetReloader reloader) {
+        this.reloader = reloader;
+        this.catalog = null;
+    }
+
+    /**
+     * Creates a user interface that asks for the dataset of each action and runs the action
+     * against it, loading the dataset first if the catalog has not loaded it yet.
+     */
+    public UserInterface(DatasetCatalog catalog) {
+        this.reloader = null;
+        this.catalog = catalog;
     }
 
     /**
@@ -27,42 +59,37 @@ public class UserInterface {
             System.out.flush();
             String input = scanner.nextLine().trim();
 
-            // Validate input: must be a single digit from 0 to 7
-            if (!input.matches("[0-7]")) {
-                System.out.println("Invalid input. Please enter a number between 0 and 7.");
+            // Validate input: must be a number from 0 to 12, where 9 needs reloading to be available
+            // and 11 is only offered while property answers are estimated
+            if (!input.matches("\\d{1,2}") || !isOffered(Integer.parseInt(input))) {
+                System.out.println("Invalid input. Please enter a number between 0 and 12.");
                 continue;
             }
 
             int choice = Integer.parseInt(input);
+            if (choice == 0) return;    // Exit program
 
-            // Execute corresponding action based on user choice
-            switch (choice) {
-                case 0: // Exit program
-                    return;
-                case 1: // Show available actions
-                    showAvailableActions();
-                    break;
-                case 2: // Show total population for all ZIP Codes
-                    showTotalPopulation();
-                    break;
-                case 3: // Show total vaccinations per capita for each ZIP Code for specified date
-                    showVaccinationsPerCapita();
-                    break;
-                case 4: // Show average market value for properties in a specified ZIP Code
-                    showAverageMarketValue();
-                    break;
-                case 5: // Show average livable area for properties in a specified ZIP Code
-                    showAverageLivableArea();
-                    break;
-                case 6: // Show total market value per capita for a specified ZIP Code
-                    showMarketValuePerCapita();
-                    break;
-                case 7: // Show health risk index for a specified ZIP Code
-                    showHealthRiskIndex();
-                    break;
-                default:
-                    System.out.println("Invalid selection.");
-                    break;
+            // the whole action sees one dataset, even if a reload swaps in a new one meanwhile
+            DatasetReloader.Snapshot snapshot = reloader != null ? reloader.acquire() : null;
+            if (snapshot != null) processor = snapshot.getProcessor();
+            QueryTrace.begin(String.valueOf(choice));
+            DatasetCatalog.Handle dataset = null;
+            try {
+                if (catalog != null) {
+                    dataset = catalog.acquire(promptForDataset());
+                    processor = dataset.getProcessor();
+                }
+                runAction(choice);
+            } catch (UncheckedIOException e) {
+                // e.g. a shard worker of a distributed load has failed
+                System.out.println("Error: " + e.getMessage());
+            } finally {
+                QueryTrace.end();
+                if (snapshot != null) snapshot.close();
+                if (dataset != null) {
+                    dataset.close();
+                    processor = null;
+                }
             }
 
             // Reprint menu after action completes
@@ -70,10 +97,35 @@ public class UserInterface {
         }
     }
 
+    /**
+     * Executes the action for a menu choice other than exit.
+     */
+    private void runAction(int choice) {
+        MenuAction action = MenuAction.of(choice);
+        switch (action) {
+            case SHOW_ACTIONS: // Show available actions
+                showAvailableActions();
+                break;
+            case RELOAD: // Reload the input files in the background
+                reloadData();
+                break;
+            default: // Prompt for the answers of a query and show its result
+                runQuery(action);
+                break;
+        }
+    }
+
     /**
      * Prints the main menu options to the user.
      */
     private void printMenu() {
+        // the exact property data is loaded in the background; report it once the menu stops offering it
+        boolean exactLoad = offersExactLoad();
+        if (exactLoadOffered && !exactLoad) System.out.println("Exact property data loaded.");
+        exactLoadOffered = exactLoad;
+        String reloadStatus = reloader != null ? reloader.takeStatus() : null;
+        if (reloadStatus != null) System.out.println(reloadStatus);
+
         System.out.println("0. Exit the program.");
         System.out.println("1. Show the available actions.");
         System.out.println("2. Show the total population for all ZIP Codes.");
@@ -82,6 +134,31 @@ public class UserInterface {
         System.out.println("5. Show the average total livable area for properties in a specified ZIP Code.");
         System.out.println("6. Show the total market value of properties, per capita, for a specified ZIP Code.");
         System.out.println("7. Show the health risk index for a specified ZIP Code.");
+        System.out.println("8. Show market value and livable area percentiles for properties in a specified ZIP Code.");
+        if (reloader != null) System.out.println("9. Reload the input files.");
+        System.out.println("10. Show the ZIP Codes with the highest or lowest value of a metric.");
+        if (exactLoad) System.out.println("11. Load the exact property values in the background.");
+        System.out.println("12. Show a custom metric, e.g. sum(market_value)/population, for each ZIP Code.");
+    }
+
+    /**
+     * @return true if the menu currently offers the choice
+     */
+    private boolean isOffered(int choice) {
+        if (choice == MenuAction.RELOAD.getNumber()) return reloader != null;
+        if (choice == MenuAction.EXACT_LOAD.getNumber()) return offersExactLoad();
+        return choice <= 12;
+    }
+
+    /**
+     * @return true if the current processor estimates property answers from a sample
+     */
+    private boolean offersExactLoad() {
+        if (catalog != null) return false;    // the datasets of a catalog are loaded exactly
+        if (reloader == null) return processor.isApproximate();
+        try (DatasetReloader.Snapshot snapshot = reloader.acquire()) {
+            return snapshot.getProcessor().isApproximate();
+        }
     }
 
     /**
@@ -89,131 +166,236 @@ public class UserInterface {
      * Uses the helper method to wrap output between BEGIN OUTPUT and END OUTPUT.
      */
     private void showAvailableActions() {
-        printBeginEndOutput(() -> {
-            System.out.println("0");
-            System.out.println("1");
-            if (processor.hasPopulationData()) System.out.println("2");
-            if (processor.hasCovidData() && processor.hasPopulationData()) System.out.println("3");
-            if (processor.hasPropertyData()) System.out.println("4");
-            if (processor.hasPropertyData()) System.out.println("5");
-            if (processor.hasPropertyData() && processor.hasPopulationData()) System.out.println("6");
-            if (processor.hasPropertyData() && processor.hasPopulationData() && processor.hasCovidData()) System.out.println("7");
-        });
+        logger.logAction(MenuAction.SHOW_ACTIONS.getNumber(), List.of());
+        List<String> lines = MenuAction.SHOW_ACTIONS.run(processor, List.of());
+        // reloading needs a reloader, which the loaded data knows nothing of
+        if (reloader == null) lines.remove(String.valueOf(MenuAction.RELOAD.getNumber()));
+        printBeginEndOutput(() -> lines.forEach(System.out::println));
     }
 
     /**
-     * Displays the total population across all ZIP Codes.
-     * If population data is unavailable, outputs an error message.
+     * Starts reloading the input files. Queries are answered from the current data until the
+     * new data has been loaded and swapped in.
      */
-    private void showTotalPopulation() {
-        if (!processor.hasPopulationData()) {
-            printBeginEndOutput(() -> System.out.println("Population data not available."));
+    private void reloadData() {
+        logger.logAction(MenuAction.RELOAD.getNumber(), List.of());
+        boolean started = reloader.requestReload();
+        printBeginEndOutput(() -> System.out.println(started ? "Reload started." : "A reload is already in progress."));
+    }
+
+    /**
+     * Prompts for the answers of an action, logs the completed action and displays its result.
+     * If the loaded data cannot answer the action, outputs an error message instead; options 10 and 12
+     * first ask for the metric, since it decides the data they need.
+     */
+    private void runQuery(MenuAction action) {
+        List<String> answers = new ArrayList<>();
+        if (action == MenuAction.TOP_ZIPS) answers.add(promptForMetric());
+        if (action == MenuAction.CUSTOM_METRIC) answers.add(promptForExpression());
+
+        boolean available = action.isAvailable(processor, answers);
+        if (available) promptForAnswers(action, answers);
+        logger.logAction(action.getNumber(), answers);
+
+        if (!available) {
+            printBeginEndOutput(() -> System.out.println(action.getUnavailableMessage()));
             return;
         }
-        printBeginEndOutput(() -> System.out.println(processor.getTotalPopulation()));
+        List<String> lines = action.run(processor, answers);
+        printBeginEndOutput(() -> lines.forEach(System.out::println));
     }
 
     /**
-     * Displays total vaccinations per capita by ZIP Code for a user-specified date and vaccination type.
-     * Prompts the user for vaccination type and date (validated via promptForDate()).
-     * Outputs the result or an error message if required data is unavailable.
+     * Prompts for the answers an available action still needs, in the order {@link MenuAction} takes them.
      */
-    private void showVaccinationsPerCapita() {
-        if (!processor.hasCovidData() || !processor.hasPopulationData()) {
-            printBeginEndOutput(() -> System.out.println("Vaccination or population data not available."));
-            return;
+    private void promptForAnswers(MenuAction action, List<String> answers) {
+        switch (action) {
+            case VACCINATIONS_PER_CAPITA:
+                answers.add(promptForType());
+                answers.add(promptForDate());
+                break;
+            case AVERAGE_MARKET_VALUE:
+            case AVERAGE_LIVABLE_AREA:
+            case MARKET_VALUE_PER_CAPITA:
+                answers.add(promptForZip());
+                break;
+            case HEALTH_RISK_INDEX:
+                answers.add(promptForDate());
+                break;
+            case PROPERTY_PERCENTILES:
+                answers.add(promptForZip());
+                answers.add(promptForPercentiles());
+                break;
+            case TOP_ZIPS:
+                ZipMetric metric = ZipMetric.values()[Integer.parseInt(answers.get(0)) - 1];
+                if (metric.isDated()) answers.add(promptForDate());
+                answers.add(promptForCount());
+                answers.add(promptForDirection());
+                break;
+            case CUSTOM_METRIC:
+                if (MetricExpression.compile(answers.get(0)).usesVaccinations()) answers.add(promptForDate());
+                break;
+            default:
+                break;
         }
+    }
 
-        // Prompt manually for 'partial' or 'full' (no helper used here)
-        String type;
+    /**
+     * Helper function to prompt the user for 'partial' or 'full'.
+     *
+     * @return the vaccination type, in lower case
+     */
+    private String promptForType() {
         while (true) {
             System.out.println("Enter 'partial' or 'full':");
             System.out.print("> ");
             System.out.flush();
-            type = scanner.nextLine().trim().toLowerCase();
+            String type = readInput().toLowerCase();
             logger.log(type);
             if (type.equals("partial") || type.equals("full")) {
-                break;
+                return type;
             }
             System.out.println("Invalid input.");
         }
+    }
 
-        // Use helper method for validated date input
-        String date = promptForDate();
-
-        // Fetch and print results
-        Map<String, Double> result = processor.getVaccinationPerCapita(type, date);
-        printBeginEndOutput(() -> {
-            if (result.isEmpty()) {
-                System.out.println("0");
-            } else {
-                for (Map.Entry<String, Double> entry : result.entrySet()) {
-                    System.out.printf("%s %.4f%n", entry.getKey(), entry.getValue());
-                }
+    /**
+     * Helper function to prompt the user for a metric expression.
+     * Continues prompting, with the reason, until the expression is valid.
+     *
+     * @return the expression as entered
+     */
+    private String promptForExpression() {
+        while (true) {
+            System.out.println("Enter an expression over population, partial, full and sum|avg|min|max|count"
+                    + " of market_value or total_livable_area:");
+            System.out.print("> ");
+            System.out.flush();
+            String input = readInput();
+            logger.log(input);
+            try {
+                MetricExpression.compile(input);
+                return input;
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid expression: " + e.getMessage() + ".");
             }
-        });
+        }
     }
 
     /**
-     * Displays the average market value of properties for a user-specified ZIP Code.
-     * If property data is missing, outputs an error message.
+     * Helper function to prompt the user to pick a metric by its number.
+     *
+     * @return the number of the chosen metric
      */
-    private void showAverageMarketValue() {
-        if (!processor.hasPropertyData()) {
-            printBeginEndOutput(() -> System.out.println("Property data not available."));
-            return;
+    private String promptForMetric() {
+        ZipMetric[] metrics = ZipMetric.values();
+        while (true) {
+            System.out.println("Enter the number of a metric:");
+            for (int i = 0; i < metrics.length; i++) {
+                System.out.println((i + 1) + ". " + metrics[i].getLabel());
+            }
+            System.out.print("> ");
+            System.out.flush();
+            String input = readInput();
+            logger.log(input);
+            if (input.matches("\\d{1,2}")) {
+                int choice = Integer.parseInt(input);
+                if (choice >= 1 && choice <= metrics.length) {
+                    return String.valueOf(choice);
+                }
+            }
+            System.out.println("Invalid metric.");
         }
-
-        String zip = promptForZip();
-        printBeginEndOutput(() -> System.out.println(processor.calculateAverageMarketValue(zip)));
     }
 
     /**
-     * Displays the average total livable area of properties for a user-specified ZIP Code.
-     * If property data is missing, outputs an error message.
+     * Helper function to prompt the user for the number of ZIP Codes to show.
+     * Continues prompting until a positive whole number is entered.
+     *
+     * @return the number of ZIP Codes
      */
-    private void showAverageLivableArea() {
-        if (!processor.hasPropertyData()) {
-            printBeginEndOutput(() -> System.out.println("Property data not available."));
-            return;
+    private String promptForCount() {
+        while (true) {
+            System.out.println("Enter the number of ZIP Codes to show:");
+            System.out.print("> ");
+            System.out.flush();
+            String input = readInput();
+            logger.log(input);
+            if (input.matches("\\d{1,9}") && Integer.parseInt(input) > 0) {
+                return String.valueOf(Integer.parseInt(input));
+            }
+            System.out.println("Invalid number.");
         }
-
-        String zip = promptForZip();
-        printBeginEndOutput(() -> System.out.println(processor.calculateAverageLivableArea(zip)));
     }
 
     /**
-     * Displays the total market value of properties per capita for a user-specified ZIP Code.
-     * Outputs an error message if required data is missing.
+     * Helper function to prompt the user for 'top' or 'bottom'.
+     *
+     * @return "top" for the highest values, "bottom" for the lowest
      */
-    private void showMarketValuePerCapita() {
-        if (!processor.hasPopulationData() || !processor.hasPropertyData()) {
-            printBeginEndOutput(() -> System.out.println("Required data not available."));
-            return;
+    private String promptForDirection() {
+        while (true) {
+            System.out.println("Enter 'top' or 'bottom':");
+            System.out.print("> ");
+            System.out.flush();
+            String input = readInput().toLowerCase();
+            logger.log(input);
+            if (input.equals("top") || input.equals("bottom")) {
+                return input;
+            }
+            System.out.println("Invalid input.");
         }
-
-        String zip = promptForZip();
-        int result = processor.calculateMarketValuePerCapita(zip);
-        printBeginEndOutput(() -> System.out.println(result));
     }
 
     /**
-     * Displays the health risk index for each ZIP Code on a user-specified date.
-     * Outputs an error message if required data is missing.
+     * Helper function to prompt the user for a comma-separated list of percentiles, e.g. "50,90".
+     * Continues prompting until every entry is a number greater than 0 and at most 100.
+     *
+     * @return the percentiles as entered
      */
-    private void showHealthRiskIndex() {
-        if (!processor.hasPopulationData() || !processor.hasPropertyData() || !processor.hasCovidData()) {
-            printBeginEndOutput(() -> System.out.println("Required data not available."));
-            return;
+    private String promptForPercentiles() {
+        while (true) {
+            System.out.println("Enter percentiles separated by commas (e.g. 50,90):");
+            System.out.print("> ");
+            System.out.flush();
+            String input = readInput();
+            logger.log(input);
+
+            String[] parts = input.split(",");
+            boolean valid = !input.isEmpty();
+            for (int i = 0; i < parts.length && valid; i++) {
+                try {
+                    double percentile = Double.parseDouble(parts[i].trim());
+                    valid = percentile > 0 && percentile <= 100;
+                } catch (NumberFormatException e) {
+                    valid = false;
+                }
+            }
+            if (valid) {
+                return input;
+            }
+            System.out.println("Invalid percentiles.");
         }
+    }
 
-        String date = promptForDate();
-        Map<String, Double> result = processor.getHealthRiskIndex(date);
-        printBeginEndOutput(() -> {
-            for (Map.Entry<String, Double> entry : result.entrySet()) {
-                System.out.printf("%s %.4f%n", entry.getKey(), entry.getValue());
+    /**
+     * Helper function to prompt the user for the name of a dataset in the catalog.
+     * Continues prompting until a registered name is entered.
+     *
+     * @return the dataset name
+     */
+    private String promptForDataset() {
+        while (true) {
+            System.out.println("Enter a dataset name (" + String.join(", ", catalog.getNames()) + "):");
+            System.out.print("> ");
+            System.out.flush();
+            String name = readInput();
+            logger.log(name);
+            if (catalog.getNames().contains(name)) {
+                return name;
             }
-        });
+            System.out.println("Unknown dataset.");
+        }
     }
 
     /**
@@ -227,7 +409,7 @@ public class UserInterface {
             System.out.println("Enter date in format YYYY-MM-DD:");
             System.out.print("> ");
             System.out.flush();
-            String date = scanner.nextLine().trim();
+            String date = readInput();
             logger.log(date);
             if (date.matches("\\d{4}-\\d{2}-\\d{2}")) {
                 return date;
@@ -247,7 +429,7 @@ public class UserInterface {
             System.out.println("Enter a 5-digit ZIP Code:");
             System.out.print("> ");
             System.out.flush();
-            String zip = scanner.nextLine().trim();
+            String zip = readInput();
             logger.log(zip);
             if (zip.matches("\\d{5}")) {
                 return zip;
@@ -263,9 +445,21 @@ public class UserInterface {
      * @param task a Runnable containing the code that prints output
      */
     private void printBeginEndOutput(Runnable task) {
+        long start = QueryTrace.start();
         System.out.println();
         System.out.println("BEGIN OUTPUT");
         task.run();
         System.out.println("END OUTPUT");
+        QueryTrace.record(QueryTrace.Phase.RENDER, start);
+    }
+
+    /**
+     * Reads a line of user input. The wait is not counted in a traced action's time.
+     */
+    private String readInput() {
+        QueryTrace.pause();
+        String input = scanner.nextLine().trim();
+        QueryTrace.resume(input);
+        return input;
     }
 }
\ No newline at end of file